@@ -11,6 +11,11 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,6 +38,14 @@ public class CoolSocket implements ClientHandler {
      */
     public static final int LENGTH_UNSPECIFIED = -1;
 
+    /**
+     * The interval in milliseconds at which the retired connection managers that don't report becoming empty are
+     * checked for connections.
+     *
+     * @see ConnectionManager#setEmptyListener(Runnable)
+     */
+    public static final long RETIRED_MANAGER_POLL_INTERVAL = 1000;
+
     /**
      * The logger.
      */
@@ -41,7 +54,7 @@ public class CoolSocket implements ClientHandler {
     /**
      * @see ConfigFactory
      */
-    private final @NotNull ConfigFactory configFactory;
+    private volatile @NotNull ConfigFactory configFactory;
 
     /**
      * The factory that produces executors for the server.
@@ -189,8 +202,39 @@ public class CoolSocket implements ClientHandler {
         return logger;
     }
 
+    /**
+     * Renew the running session without closing the listening sockets or the connections.
+     * <p>
+     * The new connections are handled by a new connection manager and new server executors created using the current
+     * factories, and are configured using the current config factory, so the changes made with
+     * {@link #setConfigFactory(ConfigFactory)}, {@link #setConnectionManagerFactory(ConnectionManagerFactory)}, and
+     * {@link #setServerExecutorFactory(ServerExecutorFactory)} take effect without an accept gap. The existing
+     * connections stay with the previous connection manager until they exit, and it is closed along with the session
+     * if they are still there when the server stops.
+     * <p>
+     * The addresses are not affected, since the same sockets keep listening. Changing them requires
+     * {@link #restart(int)}.
+     * <p>
+     * A listener from the previous session may still be blocking on its server socket, in which case it hands
+     * the next connection to the previous connection manager before it exits. This won't happen if the accept timeout
+     * is set.
+     *
+     * @throws IllegalStateException If the server is not listening.
+     * @see Session#renew(ConnectionManager)
+     */
+    public void hotRestart() {
+        Session session = getSession();
+
+        if (session == null || !session.isListening())
+            throw new IllegalStateException("The server is not running.");
+
+        session.renew(getConnectionManagerFactory().createConnectionManager());
+    }
+
     /**
      * Restart the server without changing anything.
+     * <p>
+     * This closes the connections and the server sockets. To keep them, use {@link #hotRestart()}.
      *
      * @param timeout Time to wait before giving up.
      * @throws IOException          When something related socket set up goes wrong (e.g., a bind exception).
@@ -220,16 +264,43 @@ public class CoolSocket implements ClientHandler {
         if (isListening())
             throw new IllegalStateException("The server is already running.");
 
+        List<ServerSocket> serverSocketList = new ArrayList<>();
+
+        try {
+            for (SocketAddress socketAddress : getConfigFactory().getSocketAddresses())
+                serverSocketList.add(getConfigFactory().createServer(socketAddress));
+        } catch (IOException | RuntimeException e) {
+            for (ServerSocket serverSocket : serverSocketList) {
+                try {
+                    serverSocket.close();
+                } catch (IOException ignored) {
+                }
+            }
+            throw e;
+        }
+
         ConnectionManager connectionManager = getConnectionManagerFactory().createConnectionManager();
-        ServerSocket serverSocket = getConfigFactory().createServer();
-        ServerExecutor serverExecutor = getServerExecutorFactory().createServerExecutor();
+        Session session = new Session(connectionManager);
+
+        for (ServerSocket serverSocket : serverSocketList)
+            session.addListener(serverSocket, getServerExecutorFactory().createServerExecutor());
 
-        Session session = new Session(connectionManager, serverSocket, serverExecutor);
         session.start();
 
         return session;
     }
 
+    /**
+     * Set the config factory that configures the sockets.
+     * <p>
+     * The sessions that are already running keep using the previous factory until {@link #hotRestart()} is called.
+     *
+     * @param configFactory The config factory.
+     */
+    public void setConfigFactory(@NotNull ConfigFactory configFactory) {
+        this.configFactory = configFactory;
+    }
+
     /**
      * Set the client handler responding to the client requests.
      * <p>
@@ -371,22 +442,33 @@ public class CoolSocket implements ClientHandler {
 
     /**
      * The class that holds the server related data for an active session.
+     * <p>
+     * A session has a {@link Listener} for each address it listens on, and the connections accepted by all of them are
+     * handled by the same connection manager.
+     * <p>
+     * When the session is renewed with {@link #renew(ConnectionManager)}, the listeners and the connection manager
+     * are replaced, and the previous ones are retired without closing the server sockets or the connections.
      */
     public class Session extends Thread {
         /**
          * The connection manager for this session.
          */
-        private final @NotNull ConnectionManager connectionManager;
+        private volatile @NotNull ConnectionManager connectionManager;
+
+        /**
+         * The listeners accepting the connections. This is replaced as a whole when the session is renewed.
+         */
+        private volatile @NotNull List<@NotNull Listener> listenerList = new ArrayList<>();
 
         /**
-         * The server socket.
+         * The connection managers replaced by the renewals which are kept until their connections exit.
          */
-        private final @NotNull ServerSocket serverSocket;
+        private final @NotNull List<@NotNull ConnectionManager> retiredManagerList = new CopyOnWriteArrayList<>();
 
         /**
-         * The executor for the server thread.
+         * The listeners replaced by the renewals which may still be waiting for one last connection.
          */
-        private final @NotNull ServerExecutor serverExecutor;
+        private final @NotNull List<@NotNull Listener> retiredListenerList = new CopyOnWriteArrayList<>();
 
         /**
          * The lock used for synchronizing between changes..
@@ -409,26 +491,171 @@ public class CoolSocket implements ClientHandler {
          */
         public Session(@NotNull ConnectionManager connectionManager, @NotNull ServerSocket serverSocket,
                        @NotNull ServerExecutor serverExecutor) {
+            this(connectionManager);
+            addListener(serverSocket, serverExecutor);
+        }
+
+        /**
+         * Create a session without listeners. The listeners should be added using
+         * {@link #addListener(ServerSocket, ServerExecutor)} before the session starts.
+         *
+         * @param connectionManager The connection manager that handles the connections to the clients.
+         */
+        public Session(@NotNull ConnectionManager connectionManager) {
             super("CoolSocket Server Session");
 
             this.connectionManager = connectionManager;
-            this.serverSocket = serverSocket;
-            this.serverExecutor = serverExecutor;
         }
 
         /**
-         * Safely close the server socket.
+         * Add a listener that will accept connections using the given server socket.
+         *
+         * @param serverSocket   Accepting the connections.
+         * @param serverExecutor Runs the accepting loop for the server socket.
          */
-        private void closeServerSocket() {
-            if (serverSocket.isClosed())
-                return;
+        public void addListener(@NotNull ServerSocket serverSocket, @NotNull ServerExecutor serverExecutor) {
+            if (getState() != State.NEW)
+                throw new IllegalStateException("Listeners cannot be added after the session starts.");
 
-            try {
-                serverSocket.close();
-            } catch (IOException e) {
-                if (!isInterrupted())
-                    CoolSocket.this.getLogger().info("The server socket was already closed ");
+            listenerList.add(new Listener(serverSocket, serverExecutor, connectionManager, getConfigFactory()));
+        }
+
+        /**
+         * Replace the connection manager and the listeners without closing the server sockets.
+         * <p>
+         * A new listener is started with a new server executor for each server socket before the previous listeners
+         * are told to exit, so the connections keep being accepted. The previous connection manager takes no new
+         * connections once its listeners exit, and is closed as soon as its connections exit, or when the session
+         * stops.
+         *
+         * @param connectionManager The connection manager for the new connections.
+         * @throws IllegalStateException If the session is not listening, or its server sockets have channels.
+         * @see CoolSocket#hotRestart()
+         */
+        public void renew(@NotNull ConnectionManager connectionManager) {
+            synchronized (stateLock) {
+                if (!isListening() || isInterrupted())
+                    throw new IllegalStateException("Only a listening session can be renewed.");
+
+                // Retiring a listener interrupts it, which would close a server socket that has a channel.
+                for (Listener listener : listenerList) {
+                    if (listener.getServerSocket().getChannel() != null)
+                        throw new IllegalStateException("Sessions with selectable server sockets cannot be renewed.");
+                }
+
+                replaceListeners(connectionManager);
             }
+
+            closeRetiredManagers(false);
+        }
+
+        /**
+         * Start the new listeners and retire the current ones.
+         *
+         * @param connectionManager The connection manager for the new listeners.
+         */
+        private void replaceListeners(@NotNull ConnectionManager connectionManager) {
+
+            List<Listener> previousList = listenerList;
+            List<Listener> renewedList = new ArrayList<>(previousList.size());
+            ConfigFactory configFactory = getConfigFactory();
+
+            for (Listener listener : previousList) {
+                ServerExecutor serverExecutor = getServerExecutorFactory().createServerExecutor();
+                serverExecutor.takeOver(listener.getServerExecutor());
+                renewedList.add(new Listener(listener.getServerSocket(), serverExecutor, connectionManager,
+                        configFactory));
+            }
+
+            for (Listener listener : renewedList)
+                listener.start();
+
+            ConnectionManager previousManager = this.connectionManager;
+            boolean reportsEmpty = previousManager.setEmptyListener(this::closeRetiredManagersLater);
+            retiredManagerList.add(previousManager);
+
+            if (!reportsEmpty)
+                pollRetiredManager(previousManager);
+            retiredListenerList.addAll(previousList);
+            this.connectionManager = connectionManager;
+
+            // The session thread waits for the current list, so it should be replaced before the previous listeners
+            // exit.
+            listenerList = renewedList;
+
+            for (Listener listener : previousList)
+                listener.retire();
+        }
+
+        /**
+         * Close the retired connection managers that can no longer have connections.
+         *
+         * @param force True to close them regardless of their connections.
+         */
+        private void closeRetiredManagers(boolean force) {
+            retiredListenerList.removeIf(listener -> !listener.isAlive());
+
+            for (ConnectionManager manager : retiredManagerList) {
+                if (!force) {
+                    if (manager.getActiveConnectionCount() > 0)
+                        continue;
+
+                    // A retired listener may still hand a connection over to it.
+                    boolean accepting = false;
+                    for (Listener listener : retiredListenerList) {
+                        if (listener.connectionManager == manager) {
+                            accepting = true;
+                            break;
+                        }
+                    }
+
+                    if (accepting)
+                        continue;
+                }
+
+                // Another thread may be closing the same manager.
+                if (retiredManagerList.remove(manager))
+                    manager.closeAll();
+            }
+        }
+
+        /**
+         * Close the retired connection managers that can no longer have connections on a new thread.
+         * <p>
+         * This is used when a retired manager is emptied, or a retired listener exits, so that the managers are closed
+         * without waiting for a renewal, and a manager isn't closed on one of its own threads, which it would wait for.
+         */
+        private void closeRetiredManagersLater() {
+            Thread thread = new Thread(() -> closeRetiredManagers(false), "CoolSocket Retired Manager Closer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Check a retired connection manager that doesn't report becoming empty for connections periodically, and
+         * close it once it has none, until it is closed.
+         *
+         * @param manager The retired connection manager.
+         */
+        private void pollRetiredManager(@NotNull ConnectionManager manager) {
+            HashedWheelTimer.getDefault().newTimeout(() -> {
+                if (!retiredManagerList.contains(manager))
+                    return;
+
+                if (manager.getActiveConnectionCount() == 0)
+                    closeRetiredManagersLater();
+
+                pollRetiredManager(manager);
+            }, RETIRED_MANAGER_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * @return The connection managers replaced by {@link #renew(ConnectionManager)} which still have
+         * connections, or may still be given one.
+         */
+        public @NotNull List<@NotNull ConnectionManager> getRetiredConnectionManagers() {
+            closeRetiredManagers(false);
+            return Collections.unmodifiableList(retiredManagerList);
         }
 
         /**
@@ -441,17 +668,34 @@ public class CoolSocket implements ClientHandler {
         }
 
         /**
-         * @return The server executor for this session.
+         * @return The listeners of this session where the first one is the listener for the primary address.
+         */
+        public @NotNull List<@NotNull Listener> getListeners() {
+            return Collections.unmodifiableList(listenerList);
+        }
+
+        /**
+         * @return The primary listener.
+         */
+        private @NotNull Listener getPrimaryListener() {
+            if (listenerList.isEmpty())
+                throw new IllegalStateException("The session doesn't have a listener.");
+
+            return listenerList.get(0);
+        }
+
+        /**
+         * @return The server executor for the primary listener.
          */
         public @NotNull ServerExecutor getServerExecutor() {
-            return serverExecutor;
+            return getPrimaryListener().getServerExecutor();
         }
 
         /**
-         * @return The server socket that accepts the connections.
+         * @return The server socket that accepts the connections for the primary listener.
          */
         public @NotNull ServerSocket getServerSocket() {
-            return serverSocket;
+            return getPrimaryListener().getServerSocket();
         }
 
         /**
@@ -465,9 +709,18 @@ public class CoolSocket implements ClientHandler {
 
         @Override
         public void interrupt() {
-            super.interrupt();
+            // Sessions being renewed should finish replacing their listeners first.
+            synchronized (stateLock) {
+                super.interrupt();
+            }
+
+            // Stop accepting first, so that the connection manager doesn't get new connections while closing. The
+            // retired listeners share the server sockets, so they exit too.
+            for (Listener listener : listenerList)
+                listener.interrupt();
+
             getConnectionManager().closeAll();
-            closeServerSocket();
+            closeRetiredManagers(true);
         }
 
         @Override
@@ -481,13 +734,35 @@ public class CoolSocket implements ClientHandler {
             }
 
             try {
-                getServerExecutor().onSession(CoolSocket.this, getConfigFactory(), getConnectionManager(),
-                        serverSocket);
-            } catch (Exception e) {
-                if (!isInterrupted())
-                    CoolSocket.this.getLogger().log(Level.SEVERE, "Server exited with an unexpected error.", e);
+                for (Listener listener : listenerList)
+                    listener.start();
+
+                List<Listener> currentList;
+                do {
+                    currentList = listenerList;
+                    for (Listener listener : currentList)
+                        listener.join();
+                } while (currentList != listenerList);
+            } catch (InterruptedException ignored) {
             } finally {
-                closeServerSocket();
+                boolean interrupted = false;
+                List<Listener> exitingList = new ArrayList<>(listenerList);
+                exitingList.addAll(retiredListenerList);
+
+                for (Listener listener : exitingList) {
+                    listener.closeServerSocket();
+
+                    while (listener.isAlive()) {
+                        try {
+                            listener.join();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                }
+
+                if (interrupted)
+                    super.interrupt();
 
                 CoolSocket.this.serverSession = null;
                 listening = false;
@@ -499,6 +774,7 @@ public class CoolSocket implements ClientHandler {
 
         @Override
         public synchronized void start() {
+            getPrimaryListener();
             super.start();
             CoolSocket.this.serverSession = this;
         }
@@ -528,5 +804,156 @@ public class CoolSocket implements ClientHandler {
                     stateLock.wait(ms);
             }
         }
+
+        /**
+         * The thread accepting the connections on one of the addresses of a session.
+         */
+        public class Listener extends Thread {
+            /**
+             * The server socket.
+             */
+            private final @NotNull ServerSocket serverSocket;
+
+            /**
+             * The executor for the server thread.
+             */
+            private final @NotNull ServerExecutor serverExecutor;
+
+            /**
+             * The connection manager that handles the connections accepted by this listener.
+             */
+            private final @NotNull ConnectionManager connectionManager;
+
+            /**
+             * The config factory that configures the connections accepted by this listener.
+             */
+            private final @NotNull ConfigFactory configFactory;
+
+            /**
+             * Whether this listener was replaced, and should exit without closing the server socket.
+             */
+            private volatile boolean retired;
+
+            /**
+             * Create a new instance.
+             *
+             * @param serverSocket      Accepting the connections.
+             * @param serverExecutor    Runs the accepting loop for the server socket.
+             * @param connectionManager Handles the accepted connections.
+             * @param configFactory     Configures the accepted connections.
+             */
+            private Listener(@NotNull ServerSocket serverSocket, @NotNull ServerExecutor serverExecutor,
+                             @NotNull ConnectionManager connectionManager, @NotNull ConfigFactory configFactory) {
+                super("CoolSocket Listener " + serverSocket.getLocalSocketAddress());
+
+                this.serverSocket = serverSocket;
+                this.serverExecutor = serverExecutor;
+                this.connectionManager = connectionManager;
+                this.configFactory = configFactory;
+            }
+
+            /**
+             * Tell the listener to exit after its current accept call without closing the server socket.
+             */
+            private void retire() {
+                retired = true;
+                super.interrupt();
+            }
+
+            /**
+             * Safely close the server socket.
+             */
+            private void closeServerSocket() {
+                if (serverSocket.isClosed())
+                    return;
+
+                try {
+                    serverSocket.close();
+                } catch (IOException e) {
+                    if (!isInterrupted())
+                        CoolSocket.this.getLogger().info("The server socket was already closed ");
+                }
+            }
+
+            /**
+             * The number of connections accepted by this listener, including the rejected ones.
+             *
+             * @return The accepted connection count.
+             * @see ServerExecutor#getAcceptedCount()
+             */
+            public long getAcceptedCount() {
+                return serverExecutor.getAcceptedCount();
+            }
+
+            /**
+             * The number of connections accepted by this listener and closed before they were handled.
+             *
+             * @return The rejected connection count.
+             * @see ServerExecutor#getRejectedCount()
+             */
+            public long getRejectedCount() {
+                return serverExecutor.getRejectedCount();
+            }
+
+            /**
+             * @return The address this listener is bound to.
+             */
+            public @Nullable SocketAddress getLocalSocketAddress() {
+                return serverSocket.getLocalSocketAddress();
+            }
+
+            /**
+             * @return The connection manager that handles the connections accepted by this listener.
+             */
+            public @NotNull ConnectionManager getConnectionManager() {
+                return connectionManager;
+            }
+
+            /**
+             * @return True if this listener was replaced by a renewal of the session.
+             * @see Session#renew(ConnectionManager)
+             */
+            public boolean isRetired() {
+                return retired;
+            }
+
+            /**
+             * @return The server executor running the accepting loop for this listener.
+             */
+            public @NotNull ServerExecutor getServerExecutor() {
+                return serverExecutor;
+            }
+
+            /**
+             * @return The server socket that accepts the connections.
+             */
+            public @NotNull ServerSocket getServerSocket() {
+                return serverSocket;
+            }
+
+            @Override
+            public void interrupt() {
+                super.interrupt();
+
+                // The server socket of a retired listener belongs to the listener that replaced it.
+                if (!retired)
+                    closeServerSocket();
+            }
+
+            @Override
+            public void run() {
+                try {
+                    serverExecutor.onSession(CoolSocket.this, configFactory, connectionManager, serverSocket);
+                } catch (Exception e) {
+                    if (!isInterrupted())
+                        CoolSocket.this.getLogger().log(Level.SEVERE, "Server exited with an unexpected error.", e);
+                } finally {
+                    if (!retired)
+                        closeServerSocket();
+                    else if (retiredListenerList.remove(this))
+                        closeRetiredManagersLater();
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,22 @@
+package org.monora.coolsocket.core.client;
+
+import org.jetbrains.annotations.NotNull;
+import org.monora.coolsocket.core.session.Channel;
+
+/**
+ * Handles the operations that arrive on a route of a {@link RoutingClientHandler}.
+ */
+public interface RouteHandler {
+    /**
+     * Called on the executor of the route when an operation arrives.
+     * <p>
+     * The operation has already begun, so the handler should continue reading it using the given descriptor. The
+     * channel is roaming, so it should be closed by the handler when it is no longer needed. It is closed for the
+     * handler only if this throws an error.
+     *
+     * @param channel    The channel the operation arrived on.
+     * @param descriptor The descriptor of the operation.
+     * @throws Exception If an error occurs.
+     */
+    void onMessage(@NotNull Channel channel, @NotNull Channel.ReadableDescriptor descriptor) throws Exception;
+}
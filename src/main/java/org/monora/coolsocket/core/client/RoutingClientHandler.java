@@ -0,0 +1,157 @@
+package org.monora.coolsocket.core.client;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.response.Flags;
+import org.monora.coolsocket.core.session.Channel;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A client handler that reads the header of the first operation and hands it over to the handler of its route on the
+ * executor of that route.
+ * <p>
+ * The route is read from the flags (see {@link Flags#FLAG_ROUTE_MASK}) and looked up in a table, so dispatching takes
+ * constant time. Since each route has its own executor, e.g., a small bounded pool for control messages, a route that
+ * is flooded with long transfers cannot take the threads of the others. When the executor of a route rejects an
+ * operation, the channel is closed.
+ * <p>
+ * A routed channel is roaming, because the thread that routed it returns right away, so the route handler should close
+ * it when it is done, unless it throws an error in which case the channel is closed for it. One operation is routed for
+ * each call. To keep routing the operations of a channel, the route handler can pass it to
+ * {@link #onConnected(Channel)} again, or park it using a {@link org.monora.coolsocket.core.server.ChannelSelector}
+ * with this as the handler.
+ */
+public class RoutingClientHandler implements ClientHandler {
+    private static final Logger logger = Logger.getLogger(RoutingClientHandler.class.getName());
+
+    /**
+     * The routes indexed by their numbers.
+     */
+    private final @NotNull AtomicReferenceArray<@Nullable Route> routeTable =
+            new AtomicReferenceArray<>(Flags.ROUTE_COUNT);
+
+    /**
+     * The route for the operations whose routes aren't in the table, or null to close their channels.
+     */
+    private volatile @Nullable Route defaultRoute;
+
+    /**
+     * Create an executor that can be used as a bulkhead for a route.
+     *
+     * @param threadCount   The number of threads.
+     * @param queueCapacity The number of operations that can wait for a thread before they are rejected.
+     * @return The executor.
+     */
+    public static @NotNull ExecutorService newBoundedExecutor(int threadCount, int queueCapacity) {
+        return new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Close a channel without throwing an error.
+     *
+     * @param channel To close.
+     */
+    private static void closeQuietly(@NotNull Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Handle the operations on the given route.
+     *
+     * @param route    The route, between 0 and 255.
+     * @param handler  To handle the operations.
+     * @param executor To run the handler on.
+     * @see Flags#withRoute(long, int)
+     */
+    public void setRoute(int route, @NotNull RouteHandler handler, @NotNull Executor executor) {
+        if (route < 0 || route >= Flags.ROUTE_COUNT)
+            throw new IllegalArgumentException("The route should be between 0 and " + (Flags.ROUTE_COUNT - 1) + ".");
+
+        routeTable.set(route, new Route(handler, executor));
+    }
+
+    /**
+     * Stop handling the operations on the given route. The operations arriving on it will go to the default route.
+     *
+     * @param route The route, between 0 and 255.
+     */
+    public void removeRoute(int route) {
+        routeTable.set(route, null);
+    }
+
+    /**
+     * Handle the operations on the routes that aren't in the table.
+     *
+     * @param handler  To handle the operations, or null to close their channels.
+     * @param executor To run the handler on.
+     */
+    public void setDefaultRoute(@Nullable RouteHandler handler, @NotNull Executor executor) {
+        this.defaultRoute = handler == null ? null : new Route(handler, executor);
+    }
+
+    @Override
+    public void onConnected(@NotNull Channel channel) {
+        try {
+            Channel.ReadableDescriptor descriptor = channel.readBegin();
+            Route route = routeTable.get(descriptor.flags.route());
+            if (route == null)
+                route = defaultRoute;
+
+            if (route == null) {
+                logger.fine("No route for " + descriptor.flags.route() + ", closing the channel.");
+                closeQuietly(channel);
+                return;
+            }
+
+            // The channel now belongs to the route, so the caller shouldn't close it when this returns.
+            channel.setRoaming(true);
+            route.dispatch(channel, descriptor);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "The operation could not be routed.", e);
+        }
+    }
+
+    /**
+     * A handler with the executor it runs on.
+     */
+    private static class Route {
+        private final @NotNull RouteHandler handler;
+
+        private final @NotNull Executor executor;
+
+        Route(@NotNull RouteHandler handler, @NotNull Executor executor) {
+            this.handler = handler;
+            this.executor = executor;
+        }
+
+        void dispatch(@NotNull Channel channel, @NotNull Channel.ReadableDescriptor descriptor) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        handler.onMessage(channel, descriptor);
+                    } catch (Exception e) {
+                        logger.log(Level.SEVERE, "An error occurred during handling of a routed operation", e);
+                        closeQuietly(channel);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                logger.log(Level.FINE, "The route is full, closing the channel.", e);
+                closeQuietly(channel);
+            }
+        }
+    }
+}
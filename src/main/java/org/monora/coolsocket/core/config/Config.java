@@ -7,7 +7,48 @@ public final class Config {
     /**
      * The version number of the protocol.
      */
-    public static final int PROTOCOL_VERSION = 1;
+    public static final int PROTOCOL_VERSION = 6;
+
+    /**
+     * The first protocol version that can answer {@link org.monora.coolsocket.core.response.ProtocolRequest#Ping}.
+     */
+    public static final int PROTOCOL_VERSION_PING = 2;
+
+    /**
+     * The first protocol version that can understand {@link org.monora.coolsocket.core.response.ProtocolRequest#Reject}.
+     */
+    public static final int PROTOCOL_VERSION_REJECT = 3;
+
+    /**
+     * The first protocol version that can understand an urgent cancellation.
+     *
+     * @see #URGENT_CANCELLATION_MARKER
+     */
+    public static final int PROTOCOL_VERSION_URGENT_CANCELLATION = 4;
+
+    /**
+     * The first protocol version that can understand {@link org.monora.coolsocket.core.response.ProtocolRequest#Pause}.
+     */
+    public static final int PROTOCOL_VERSION_PAUSE = 5;
+
+    /**
+     * The first protocol version that can resume a transfer.
+     *
+     * @see org.monora.coolsocket.core.response.Flags#FLAG_RESUMABLE
+     */
+    public static final int PROTOCOL_VERSION_RESUME = 6;
+
+    /**
+     * The value a reader sends in place of the operation id to cancel the operation before its exchange point. It is
+     * followed by the operation id. The value cannot be a valid inverse exchange point or operation id, and the flags
+     * that start with it are reserved.
+     */
+    public static final int URGENT_CANCELLATION_MARKER = -2;
+
+    /**
+     * The maximum length of a rejection reason in bytes when encoded with UTF-8. The longer ones are cut.
+     */
+    public static final int MAX_REJECT_REASON_LENGTH = 1024;
 
     /**
      * The default buffer size used when creating byte arrays that holds the buffer to exchanged data.
@@ -20,4 +61,18 @@ public final class Config {
      * This is the most performant and suitable cycle point for a fast enough connection.
      */
     public static final int DEFAULT_INVERSE_EXCHANGE_POINT = 2048;
+
+    /**
+     * The default time in microseconds the writes of a corked channel can wait before they are sent.
+     *
+     * @see org.monora.coolsocket.core.session.Channel#cork()
+     */
+    public static final long DEFAULT_CORK_FLUSH_DELAY = 500;
+
+    /**
+     * The largest number of bytes a writer asks a rate limiter for at a time.
+     *
+     * @see org.monora.coolsocket.core.session.Channel#addRateLimiter(org.monora.coolsocket.core.util.TokenBucket)
+     */
+    public static final int RATE_LIMIT_QUANTUM = 8192;
 }
@@ -6,6 +6,8 @@ import org.monora.coolsocket.core.session.Channel;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.*;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * This factory class contract configures the sockets when they are created so that extra management can be passed on
@@ -30,6 +32,25 @@ public interface ConfigFactory {
      */
     ServerSocket createServer() throws IOException;
 
+    /**
+     * Produce a preconfigured {@link ServerSocket} instance bound to the given address, which is one of the
+     * addresses returned by {@link #getSocketAddresses()}.
+     * <p>
+     * By default, this only supports the address returned by {@link #getSocketAddress()}, and uses
+     * {@link #createServer()} for it.
+     *
+     * @param socketAddress The address to bind to.
+     * @return A preconfigured server socket instance.
+     * @throws IOException If the factory fails to create the server socket instance due to misconfiguration, or
+     *                     doesn't support the given address.
+     */
+    default ServerSocket createServer(@NotNull SocketAddress socketAddress) throws IOException {
+        if (!socketAddress.equals(getSocketAddress()))
+            throw new IOException("This factory cannot create a server socket on " + socketAddress);
+
+        return createServer();
+    }
+
     /**
      * Configure the socket connection to a client before its actual usage and produce an {@link Channel}
      * instance. The configuration may be different from that of {@link ServerSocket#accept()} assigns.
@@ -48,6 +69,19 @@ public interface ConfigFactory {
      */
     SocketAddress getSocketAddress();
 
+    /**
+     * The addresses that the server will listen on. Each of them gets its own server socket and accepting thread,
+     * while the connections coming from all of them are handled by the same connection manager.
+     * <p>
+     * By default, this only contains the address returned by {@link #getSocketAddress()}.
+     *
+     * @return The addresses to listen on where the first one is {@link #getSocketAddress()}.
+     * @see #createServer(SocketAddress)
+     */
+    default @NotNull List<@NotNull SocketAddress> getSocketAddresses() {
+        return Collections.singletonList(getSocketAddress());
+    }
+
     /**
      * Get the server port assigned to the server sockets coming out of this factory. This does not necessarily reflect
      * the ports assigned previous products.
@@ -7,6 +7,11 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * The default factory implementation.
@@ -17,6 +22,11 @@ public class DefaultConfigFactory implements ConfigFactory {
      */
     private @NotNull SocketAddress socketAddress;
 
+    /**
+     * The addresses to listen on in addition to the socket address.
+     */
+    private final @NotNull List<@NotNull SocketAddress> additionalSocketAddressList = new ArrayList<>();
+
     /**
      * The time window to wait until for a new connection before exiting.
      */
@@ -27,6 +37,21 @@ public class DefaultConfigFactory implements ConfigFactory {
      */
     private int readTimeout;
 
+    /**
+     * The maximum number of connections waiting to be accepted, or 0 to use the system default.
+     */
+    private int backlog;
+
+    /**
+     * Whether the server sockets should allow other sockets to bind to the same address and port.
+     */
+    private boolean reusePort;
+
+    /**
+     * Whether the server sockets should be created from channels.
+     */
+    private boolean selectable;
+
     /**
      * Creates a new instance.
      *
@@ -48,7 +73,22 @@ public class DefaultConfigFactory implements ConfigFactory {
      */
     @Override
     public void configureServer(@NotNull ServerSocket serverSocket) throws IOException {
-        serverSocket.bind(socketAddress);
+        configureServer(serverSocket, socketAddress);
+    }
+
+    /**
+     * Configure the server socket and bind it to the given address.
+     *
+     * @param serverSocket  To be configured.
+     * @param socketAddress To bind to.
+     * @throws IOException If an IO error occurs while configuring.
+     */
+    protected void configureServer(@NotNull ServerSocket serverSocket, @NotNull SocketAddress socketAddress)
+            throws IOException {
+        if (reusePort && serverSocket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT))
+            serverSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+
+        serverSocket.bind(socketAddress, backlog);
         serverSocket.setSoTimeout(acceptTimeout);
     }
 
@@ -73,11 +113,49 @@ public class DefaultConfigFactory implements ConfigFactory {
      */
     @Override
     public @NotNull ServerSocket createServer() throws IOException {
-        ServerSocket serverSocket = new ServerSocket();
-        configureServer(serverSocket);
+        ServerSocket serverSocket = newServerSocket();
+        try {
+            configureServer(serverSocket);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
         return serverSocket;
     }
 
+    /**
+     * Create a pre-configured server socket bound to the given address.
+     *
+     * @param socketAddress The address to bind to.
+     * @return The pre-configured server socket.
+     * @throws IOException If an IO error occurs while creating or configuring the server socket.
+     */
+    @Override
+    public @NotNull ServerSocket createServer(@NotNull SocketAddress socketAddress) throws IOException {
+        if (socketAddress.equals(this.socketAddress))
+            return createServer();
+
+        ServerSocket serverSocket = newServerSocket();
+        try {
+            configureServer(serverSocket, socketAddress);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        return serverSocket;
+    }
+
+    /**
+     * Create an unbound server socket.
+     *
+     * @return The server socket.
+     * @throws IOException If an IO error occurs while creating the server socket.
+     * @see #setSelectable(boolean)
+     */
+    protected @NotNull ServerSocket newServerSocket() throws IOException {
+        return selectable ? ServerSocketChannel.open().socket() : new ServerSocket();
+    }
+
     /**
      * The socket address bind to.
      *
@@ -88,6 +166,31 @@ public class DefaultConfigFactory implements ConfigFactory {
         return socketAddress;
     }
 
+    /**
+     * The socket address followed by the additional addresses.
+     *
+     * @return The addresses to listen on.
+     * @see #addSocketAddress(SocketAddress)
+     */
+    @Override
+    public @NotNull List<@NotNull SocketAddress> getSocketAddresses() {
+        List<SocketAddress> list = new ArrayList<>(additionalSocketAddressList.size() + 1);
+        list.add(socketAddress);
+        list.addAll(additionalSocketAddressList);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Add an address to listen on in addition to the socket address. The connections from all the addresses are
+     * handled by the same connection manager.
+     *
+     * @param socketAddress To listen on.
+     * @see #getSocketAddresses()
+     */
+    public void addSocketAddress(@NotNull SocketAddress socketAddress) {
+        additionalSocketAddressList.add(socketAddress);
+    }
+
     /**
      * Set the accept timeout.
      *
@@ -98,6 +201,20 @@ public class DefaultConfigFactory implements ConfigFactory {
         this.acceptTimeout = milliSeconds;
     }
 
+    /**
+     * Set the maximum number of connections that can wait to be accepted by a server socket. The system may limit
+     * this further.
+     *
+     * @param backlog The backlog, or 0 to use the system default.
+     * @see ServerSocket#bind(SocketAddress, int)
+     */
+    public void setBacklog(int backlog) {
+        if (backlog < 0)
+            throw new IllegalArgumentException("Backlog cannot be a negative number.");
+
+        this.backlog = backlog;
+    }
+
     /**
      * Set the read timeout.
      *
@@ -108,6 +225,32 @@ public class DefaultConfigFactory implements ConfigFactory {
         this.readTimeout = milliSeconds;
     }
 
+    /**
+     * Set whether the server sockets should allow other sockets to bind to the same address and port so that the
+     * incoming connections can be distributed among them by the system. This has no effect on the platforms that
+     * don't support {@link StandardSocketOptions#SO_REUSEPORT}.
+     *
+     * @param reusePort True to enable.
+     * @see org.monora.coolsocket.core.server.MultiAcceptorServerExecutorFactory
+     */
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    /**
+     * Set whether the server sockets should be created from {@link ServerSocketChannel} instances, so that the
+     * sockets they accept have channels which can be parked with
+     * {@link org.monora.coolsocket.core.server.ChannelSelector}.
+     * <p>
+     * Interrupting a thread that is blocked on such a socket closes it, so the sessions using them cannot be renewed
+     * with {@link org.monora.coolsocket.core.CoolSocket#hotRestart()}.
+     *
+     * @param selectable True to enable.
+     */
+    public void setSelectable(boolean selectable) {
+        this.selectable = selectable;
+    }
+
     /**
      * Set the socket address to bind.
      *
@@ -14,6 +14,50 @@ public class Flags {
      */
     public static final int FLAG_DATA_CHUNKED = 1;
 
+    /**
+     * The bit order: 1
+     * <p>
+     * Tells that the data can continue from the offset the reader has committed on an earlier connection. The
+     * transfer id and the offset are exchanged after the states that follow the header.
+     *
+     * @see org.monora.coolsocket.core.session.Channel#writeBeginResumable(long, long, long, long)
+     */
+    public static final int FLAG_RESUMABLE = 1 << 1;
+
+    /**
+     * The bit order: 48 to 55
+     * <p>
+     * The route of the operation which the receiving side may use to decide who should handle it. This is left to the
+     * user, and it has no effect on the protocol.
+     *
+     * @see #withRoute(long, int)
+     * @see org.monora.coolsocket.core.client.RoutingClientHandler
+     */
+    public static final long FLAG_ROUTE_MASK = 0xFFL << 48;
+
+    /**
+     * The position of the lowest bit of the route.
+     *
+     * @see #FLAG_ROUTE_MASK
+     */
+    public static final int FLAG_ROUTE_SHIFT = 48;
+
+    /**
+     * The number of routes that can be represented with the flags.
+     */
+    public static final int ROUTE_COUNT = 256;
+
+    /**
+     * The bit order: 63
+     * <p>
+     * Reserved for the header that is sent instead of an operation when the sender is too busy to serve the remote.
+     * This is never set for a read or write operation, and since it is the sign bit, the remote sees a negative number
+     * if it reads only the first half of it.
+     *
+     * @see org.monora.coolsocket.core.session.Channel#sendBusy(long)
+     */
+    public static final long FLAG_BUSY = 1L << 63;
+
     /**
      * All the flags encapsulated by this instance.
      */
@@ -36,4 +80,46 @@ public class Flags {
     public boolean chunked() {
         return (flags & FLAG_DATA_CHUNKED) != 0;
     }
+
+    /**
+     * Whether the data can continue from where an earlier transfer left off.
+     *
+     * @return True if resumable.
+     */
+    public boolean resumable() {
+        return (flags & FLAG_RESUMABLE) != 0;
+    }
+
+    /**
+     * Put the given route into the flags.
+     *
+     * @param flags The flags to put the route into.
+     * @param route The route, between 0 and 255.
+     * @return The flags with the route.
+     */
+    public static long withRoute(long flags, int route) {
+        if (route < 0 || route >= ROUTE_COUNT)
+            throw new IllegalArgumentException("The route should be between 0 and " + (ROUTE_COUNT - 1) + ".");
+
+        return (flags & ~FLAG_ROUTE_MASK) | ((long) route << FLAG_ROUTE_SHIFT);
+    }
+
+    /**
+     * The route of the operation.
+     *
+     * @return The route, between 0 and 255.
+     * @see #FLAG_ROUTE_MASK
+     */
+    public int route() {
+        return (int) ((flags & FLAG_ROUTE_MASK) >>> FLAG_ROUTE_SHIFT);
+    }
+
+    /**
+     * Whether this is the header of a busy response rather than an operation.
+     *
+     * @return True if the sender was busy.
+     */
+    public boolean busy() {
+        return (flags & FLAG_BUSY) != 0;
+    }
 }
@@ -43,7 +43,62 @@ public enum ProtocolRequest {
     /**
      * Do an information exchange.
      */
-    InfoExchange(8);
+    InfoExchange(8),
+
+    /**
+     * Measure the round-trip time.
+     * <p>
+     * The sender follows this with its clock reading, and the remote answers right away with {@link #Pong} and the
+     * same reading. This is only sent to the remotes that reported a protocol version that supports it.
+     *
+     * @see org.monora.coolsocket.core.config.Config#PROTOCOL_VERSION_PING
+     */
+    Ping(1),
+
+    /**
+     * The answer to {@link #Ping}.
+     */
+    Pong(1),
+
+    /**
+     * The sender is too busy to serve the remote, and the connection will be closed.
+     * <p>
+     * This is not exchanged as a state. It is sent in place of the header of an operation, followed by the time in
+     * milliseconds the remote should wait before retrying.
+     *
+     * @see org.monora.coolsocket.core.session.Channel#sendBusy(long)
+     */
+    Busy(10),
+
+    /**
+     * The reader refuses the operation after seeing its header.
+     * <p>
+     * This is sent by the reader in place of the state that follows the header, and it is followed by the length and
+     * the UTF-8 bytes of the reason. The remotes that reported a protocol version that doesn't support it get
+     * {@link #Cancel} instead.
+     *
+     * @see org.monora.coolsocket.core.config.Config#PROTOCOL_VERSION_REJECT
+     * @see org.monora.coolsocket.core.session.HeaderFilter
+     */
+    Reject(9),
+
+    /**
+     * The reader asks the writer to stop sending data until {@link #Resume} arrives.
+     * <p>
+     * This is sent by the reader at a state exchange, and the writer then waits for the next state without a timeout.
+     * This is only sent to the remotes that reported a protocol version that supports it.
+     *
+     * @see org.monora.coolsocket.core.config.Config#PROTOCOL_VERSION_PAUSE
+     * @see org.monora.coolsocket.core.session.Channel#pause()
+     */
+    Pause(2),
+
+    /**
+     * The reader lets the paused writer continue.
+     *
+     * @see org.monora.coolsocket.core.session.Channel#resume()
+     */
+    Resume(2);
 
     /**
      * The priority that sets the importance of execution.
@@ -0,0 +1,32 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * This class decides whether a newly accepted connection should be handled before any resource (e.g., a
+ * {@link org.monora.coolsocket.core.session.Channel} or a worker thread) is spent on it.
+ * <p>
+ * It is invoked by the {@link ServerExecutor} right after {@link java.net.ServerSocket#accept()} returns, so it
+ * should be quick and must not block.
+ */
+public interface AdmissionController {
+    /**
+     * Decide whether to handle the connection.
+     *
+     * @param address           The remote address of the connection.
+     * @param connectionManager The connection manager that will handle the connection if admitted.
+     * @return True to admit the connection, or false to close it immediately.
+     */
+    boolean admit(@NotNull InetAddress address, @NotNull ConnectionManager connectionManager);
+
+    /**
+     * Called when a connection is not admitted, just before it is closed.
+     *
+     * @param socket That was not admitted.
+     */
+    default void onRejected(@NotNull Socket socket) {
+    }
+}
@@ -0,0 +1,46 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.monora.coolsocket.core.CoolSocket;
+import org.monora.coolsocket.core.session.Channel;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tells the rejected clients to come back later using {@link Channel#sendBusy(long)}.
+ * <p>
+ * A random jitter is added to the hint, so that the clients rejected during the same burst don't all retry at once.
+ */
+public class BusyRejectedConnectionHandler implements RejectedConnectionHandler {
+    /**
+     * The time in milliseconds the clients should wait before retrying.
+     */
+    private final long retryAfter;
+
+    /**
+     * The upper limit of the time in milliseconds added to the hint randomly.
+     */
+    private final long jitter;
+
+    /**
+     * Create a new instance.
+     *
+     * @param retryAfter The time in milliseconds the clients should wait before retrying.
+     * @param jitter     The upper limit of the time in milliseconds added to the hint randomly, or 0 to send the same
+     *                   hint to all the clients.
+     */
+    public BusyRejectedConnectionHandler(long retryAfter, long jitter) {
+        if (retryAfter < 0 || jitter < 0)
+            throw new IllegalArgumentException("The times cannot be negative numbers.");
+
+        this.retryAfter = retryAfter;
+        this.jitter = jitter;
+    }
+
+    @Override
+    public void onRejected(@NotNull CoolSocket coolSocket, @NotNull Channel channel) throws IOException {
+        long hint = jitter == 0 ? retryAfter : retryAfter + ThreadLocalRandom.current().nextLong(jitter + 1);
+        channel.sendBusy(hint);
+    }
+}
@@ -0,0 +1,404 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.session.Channel;
+import org.monora.coolsocket.core.session.PreparedMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A group of channels, e.g., the members of a room, that the same messages are broadcast to.
+ * <p>
+ * A broadcast message is framed once as a {@link PreparedMessage}, and each member is sent the same read-only buffers
+ * without copying them. Each member has a bounded queue that is emptied by a task on the executor, so a slow member
+ * only holds up its own queue. When a queue is full, the overflow policy decides whether the message is dropped for
+ * that member or the member is disconnected, and each write has a deadline after which the member is disconnected, so
+ * a stuck member doesn't hold a thread for long either.
+ * <p>
+ * The group writes to its members on its own threads, so the members should not be written to by anyone else, e.g.,
+ * they should be roaming channels whose handlers have returned, or channels in multichannel mode that are only read by
+ * their owners. The channels parked on a {@link ChannelSelector} cannot be members, because they are in the non-blocking
+ * mode until they are resumed. The members that fail are closed and removed.
+ *
+ * @see ConnectionManager#getChannelGroup(String)
+ */
+public class ChannelGroup {
+    /**
+     * Drop the message for a member whose queue is full.
+     */
+    public static final int POLICY_DROP_NEWEST = 1;
+
+    /**
+     * Drop the oldest waiting message of a member whose queue is full to make room for the new one.
+     */
+    public static final int POLICY_DROP_OLDEST = 2;
+
+    /**
+     * Close and remove a member whose queue is full.
+     */
+    public static final int POLICY_DISCONNECT = 3;
+
+    /**
+     * The default number of messages that can wait for a member.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /**
+     * The default time in milliseconds writing a message to a member can take.
+     */
+    public static final long DEFAULT_WRITE_DEADLINE = 10000;
+
+    private static final Logger logger = Logger.getLogger(ChannelGroup.class.getName());
+
+    /**
+     * The executor shared by the groups that aren't given one.
+     */
+    private static final @NotNull ExecutorService defaultExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "CoolSocket Channel Group");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The groups of the connection managers that don't keep their own, by the managers. The managers are only weakly
+     * referenced, so their groups go away with them.
+     */
+    private static final @NotNull Map<@NotNull ConnectionManager, @NotNull Map<@NotNull String, @NotNull ChannelGroup>>
+            defaultGroupMap = new WeakHashMap<>();
+
+    /**
+     * The name of this group.
+     */
+    private final @NotNull String name;
+
+    /**
+     * The executor emptying the queues of the members.
+     */
+    private final @NotNull Executor executor;
+
+    /**
+     * The number of messages that can wait for a member.
+     */
+    private final int queueCapacity;
+
+    /**
+     * What to do when the queue of a member is full.
+     */
+    private final int overflowPolicy;
+
+    /**
+     * The time in milliseconds writing a message to a member can take.
+     */
+    private final long writeDeadline;
+
+    /**
+     * The members with their queues.
+     */
+    private final @NotNull ConcurrentHashMap<@NotNull Channel, @NotNull Member> memberMap = new ConcurrentHashMap<>();
+
+    /**
+     * The number of messages written to the members.
+     */
+    private final @NotNull LongAdder sentCount = new LongAdder();
+
+    /**
+     * The number of messages dropped for the members that couldn't keep up.
+     */
+    private final @NotNull LongAdder droppedCount = new LongAdder();
+
+    /**
+     * The number of members that were removed after they couldn't keep up or failed.
+     */
+    private final @NotNull LongAdder disconnectedCount = new LongAdder();
+
+    /**
+     * Create a new instance with the default limits that disconnects the members that can't keep up.
+     *
+     * @param name The name of the group.
+     */
+    public ChannelGroup(@NotNull String name) {
+        this(name, defaultExecutor, DEFAULT_QUEUE_CAPACITY, POLICY_DISCONNECT, DEFAULT_WRITE_DEADLINE);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param name           The name of the group.
+     * @param executor       The executor emptying the queues of the members. A task runs for each member that has
+     *                       messages waiting, so it should be able to run many of them at the same time.
+     * @param queueCapacity  The number of messages that can wait for a member.
+     * @param overflowPolicy What to do when the queue of a member is full.
+     * @param writeDeadline  The time in milliseconds writing a message to a member can take, or 0 for no limit.
+     * @see #POLICY_DROP_NEWEST
+     * @see #POLICY_DROP_OLDEST
+     * @see #POLICY_DISCONNECT
+     */
+    public ChannelGroup(@NotNull String name, @NotNull Executor executor, int queueCapacity, int overflowPolicy,
+                        long writeDeadline) {
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("The queue capacity should be larger than 0.");
+
+        if (overflowPolicy < POLICY_DROP_NEWEST || overflowPolicy > POLICY_DISCONNECT)
+            throw new IllegalArgumentException("Unknown overflow policy: " + overflowPolicy);
+
+        if (writeDeadline < 0)
+            throw new IllegalArgumentException("The write deadline cannot be a negative number.");
+
+        this.name = name;
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.writeDeadline = writeDeadline;
+    }
+
+    /**
+     * Get the group with the given name for a connection manager that doesn't keep its own groups, creating it if it
+     * doesn't exist.
+     *
+     * @param connectionManager The connection manager that the group belongs to.
+     * @param name              The name of the group.
+     * @return The group.
+     * @see ConnectionManager#getChannelGroup(String)
+     */
+    static @NotNull ChannelGroup of(@NotNull ConnectionManager connectionManager, @NotNull String name) {
+        synchronized (defaultGroupMap) {
+            return defaultGroupMap.computeIfAbsent(connectionManager, key -> new HashMap<>())
+                    .computeIfAbsent(name, ChannelGroup::new);
+        }
+    }
+
+    /**
+     * Close a channel without throwing an error.
+     *
+     * @param channel To close.
+     */
+    private static void closeQuietly(@NotNull Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Add a member. The channel shouldn't be parked on a {@link ChannelSelector}, or it will fail and be removed on the
+     * first write.
+     *
+     * @param channel To add.
+     * @return True if it wasn't already a member.
+     */
+    public boolean join(@NotNull Channel channel) {
+        return memberMap.putIfAbsent(channel, new Member(channel)) == null;
+    }
+
+    /**
+     * Remove a member. The messages waiting for it are dropped, but the one being written is completed.
+     *
+     * @param channel To remove.
+     * @return True if it was a member.
+     */
+    public boolean leave(@NotNull Channel channel) {
+        Member member = memberMap.remove(channel);
+        if (member == null)
+            return false;
+
+        member.queue.clear();
+        return true;
+    }
+
+    /**
+     * Check whether the given channel is a member.
+     *
+     * @param channel To check.
+     * @return True if it is a member.
+     */
+    public boolean contains(@NotNull Channel channel) {
+        return memberMap.containsKey(channel);
+    }
+
+    /**
+     * See {@link #broadcast(PreparedMessage, Channel)} for more info.
+     *
+     * @param message To send.
+     * @return The number of members the message was queued for.
+     */
+    public int broadcast(@NotNull PreparedMessage message) {
+        return broadcast(message, null);
+    }
+
+    /**
+     * Queue the given message for the members.
+     *
+     * @param message To send.
+     * @param except  The member that shouldn't get the message, e.g., the one it came from, or null to send it to all.
+     * @return The number of members the message was queued for.
+     */
+    public int broadcast(@NotNull PreparedMessage message, @Nullable Channel except) {
+        int count = 0;
+
+        for (Member member : memberMap.values()) {
+            if (member.channel == except)
+                continue;
+
+            if (member.channel.getSocket().isClosed())
+                disconnect(member);
+            else if (member.offer(message))
+                count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * @return The name of this group.
+     */
+    public @NotNull String getName() {
+        return name;
+    }
+
+    /**
+     * @return A copy list of the members.
+     */
+    public @NotNull List<@NotNull Channel> getMembers() {
+        return new ArrayList<>(memberMap.keySet());
+    }
+
+    /**
+     * @return The number of members.
+     */
+    public int size() {
+        return memberMap.size();
+    }
+
+    /**
+     * @return The number of messages written to the members.
+     */
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    /**
+     * @return The number of messages dropped for the members that couldn't keep up.
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * @return The number of members that were removed after they couldn't keep up or failed.
+     */
+    public long getDisconnectedCount() {
+        return disconnectedCount.sum();
+    }
+
+    /**
+     * Remove and close a member that couldn't keep up or failed.
+     *
+     * @param member To disconnect.
+     */
+    private void disconnect(@NotNull Member member) {
+        if (memberMap.remove(member.channel, member)) {
+            member.queue.clear();
+            disconnectedCount.increment();
+        }
+
+        closeQuietly(member.channel);
+    }
+
+    /**
+     * A member with the messages waiting for it.
+     */
+    private final class Member implements Runnable {
+        private final @NotNull Channel channel;
+
+        private final @NotNull ArrayBlockingQueue<@NotNull PreparedMessage> queue =
+                new ArrayBlockingQueue<>(queueCapacity);
+
+        /**
+         * Whether a task is emptying the queue.
+         */
+        private final @NotNull AtomicBoolean scheduled = new AtomicBoolean();
+
+        Member(@NotNull Channel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Queue the message, and apply the overflow policy if the queue is full.
+         *
+         * @param message To queue.
+         * @return True if the message was queued.
+         */
+        boolean offer(@NotNull PreparedMessage message) {
+            while (!queue.offer(message)) {
+                if (overflowPolicy == POLICY_DROP_NEWEST) {
+                    droppedCount.increment();
+                    return false;
+                } else if (overflowPolicy == POLICY_DISCONNECT) {
+                    logger.fine("A member of " + name + " couldn't keep up, disconnecting it.");
+                    disconnect(this);
+                    return false;
+                } else if (queue.poll() != null)
+                    droppedCount.increment();
+            }
+
+            schedule();
+            return true;
+        }
+
+        /**
+         * Start a task to empty the queue unless there is one already.
+         */
+        void schedule() {
+            if (!scheduled.compareAndSet(false, true))
+                return;
+
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                logger.log(Level.FINE, "The queue of a member of " + name + " could not be emptied.", e);
+                disconnect(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean failed = true;
+            try {
+                PreparedMessage message;
+                while ((message = queue.poll()) != null) {
+                    channel.writeAll(message, writeDeadline);
+                    sentCount.increment();
+                }
+                failed = false;
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.FINE, "A member of " + name + " failed, disconnecting it.", e);
+            } finally {
+                scheduled.set(false);
+
+                if (failed)
+                    disconnect(this);
+            }
+
+            // A message may have been queued after the last poll, but before the flag was cleared.
+            if (!failed && !queue.isEmpty())
+                schedule();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.client.ClientHandler;
+import org.monora.coolsocket.core.session.Channel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Waits for the next operation on many idle roaming channels with a single thread.
+ * <p>
+ * A parked channel doesn't hold a thread. When the remote begins its next operation, the channel is taken out of the
+ * selector and its handler is called on a worker as if the channel was newly accepted. The channel is still roaming
+ * when the handler gets it, so the handler should either park it again or close it, unless it throws an error in which
+ * case the channel is closed for it. The handler cannot hand it back by clearing the roaming flag, since the thread
+ * that parked it may be checking the flag at the same time.
+ * <p>
+ * Only the channels wrapping sockets that have a {@link SocketChannel} can be parked, e.g., the ones accepted when
+ * {@link org.monora.coolsocket.core.config.DefaultConfigFactory#setSelectable(boolean)} is enabled. A parked channel
+ * should not be used until its handler is called.
+ */
+public class ChannelSelector implements Closeable {
+    private static final Logger logger = Logger.getLogger(ChannelSelector.class.getName());
+
+    /**
+     * The selector watching the parked channels.
+     */
+    private final @NotNull Selector selector;
+
+    /**
+     * The executor running the handlers.
+     */
+    private final @NotNull Executor executor;
+
+    /**
+     * The executor that was created by this instance and should be shut down along with it, or null if the executor
+     * was provided.
+     */
+    private final @Nullable ExecutorService ownedExecutor;
+
+    /**
+     * The channels waiting for the selector thread to register them.
+     */
+    private final @NotNull Queue<@NotNull Parked> pendingQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The selector thread.
+     */
+    private final @NotNull Thread selectorThread;
+
+    /**
+     * The number of parked channels as seen during the last selection.
+     */
+    private volatile int parkedCount;
+
+    /**
+     * Whether the selector has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Create a new instance that runs the handlers on a pool with a thread for each processor.
+     *
+     * @throws IOException If the selector cannot be opened.
+     */
+    public ChannelSelector() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new instance that runs the handlers on a pool of its own.
+     *
+     * @param threadCount The number of threads running the handlers.
+     * @throws IOException If the selector cannot be opened.
+     */
+    public ChannelSelector(int threadCount) throws IOException {
+        this(new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>()), true);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param executor The executor running the handlers. This is not shut down when this selector is closed.
+     * @throws IOException If the selector cannot be opened.
+     */
+    public ChannelSelector(@NotNull Executor executor) throws IOException {
+        this(executor, false);
+    }
+
+    private ChannelSelector(@NotNull Executor executor, boolean owned) throws IOException {
+        this.selector = Selector.open();
+        this.executor = executor;
+        this.ownedExecutor = owned ? (ExecutorService) executor : null;
+        this.selectorThread = new Thread(this::select, "CoolSocket Channel Selector");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    /**
+     * Close the selector. The parked channels are closed by the selector thread as it exits, and the handlers that are
+     * already running are not affected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+
+        if (ownedExecutor != null)
+            ownedExecutor.shutdown();
+    }
+
+    /**
+     * The number of parked channels.
+     * <p>
+     * This is updated by the selector thread, so the channels that were closed or parked recently may not be counted
+     * correctly yet.
+     *
+     * @return The parked channel count.
+     */
+    public int getParkedCount() {
+        return parkedCount + pendingQueue.size();
+    }
+
+    /**
+     * Check whether the selector is open.
+     *
+     * @return True if it can accept channels.
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Release the channel until the remote begins its next operation.
+     * <p>
+     * The channel becomes roaming, and the part of the next read that the remote waits for is sent using
+     * {@link Channel#readPrepare()}, so the handler should read first.
+     *
+     * @param channel To park.
+     * @param handler To call on a worker when the remote begins its next operation.
+     * @throws IOException              If the read cannot be prepared, or the selector is closed.
+     * @throws IllegalArgumentException If the socket of the channel doesn't have a {@link SocketChannel}.
+     */
+    public void park(@NotNull Channel channel, @NotNull ClientHandler handler) throws IOException {
+        SocketChannel socketChannel = channel.getSocket().getChannel();
+
+        if (socketChannel == null)
+            throw new IllegalArgumentException("The socket of the channel should have been created from a channel.");
+
+        if (!isOpen())
+            throw new IOException("The selector is closed.");
+
+        channel.setRoaming(true);
+        channel.readPrepare();
+
+        pendingQueue.add(new Parked(channel, socketChannel, handler));
+        selector.wakeup();
+    }
+
+    /**
+     * Register the pending channels.
+     */
+    private void registerPending() {
+        Parked parked;
+        while ((parked = pendingQueue.poll()) != null) {
+            try {
+                parked.socketChannel.configureBlocking(false);
+                parked.socketChannel.register(selector, SelectionKey.OP_READ, parked);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.FINE, "The channel could not be parked.", e);
+                closeQuietly(parked.channel);
+            }
+        }
+    }
+
+    /**
+     * Hand the channel over to its handler.
+     *
+     * @param parked The channel with its handler.
+     */
+    private void dispatch(@NotNull Parked parked) {
+        try {
+            parked.socketChannel.configureBlocking(true);
+            executor.execute(parked);
+        } catch (IOException | RejectedExecutionException e) {
+            logger.log(Level.FINE, "The channel could not be handed to its handler.", e);
+            closeQuietly(parked.channel);
+        }
+    }
+
+    /**
+     * The loop of the selector thread.
+     */
+    private void select() {
+        List<Parked> readyList = new ArrayList<>();
+
+        try {
+            while (!closed) {
+                selector.select();
+                registerPending();
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    key.cancel();
+                    readyList.add((Parked) key.attachment());
+                }
+
+                // A channel can only go back to blocking mode after its cancelled key is flushed.
+                if (!readyList.isEmpty()) {
+                    selector.selectNow();
+
+                    for (Parked parked : readyList)
+                        dispatch(parked);
+
+                    readyList.clear();
+                }
+
+                parkedCount = selector.keys().size();
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "The selector exited with an unexpected error.", e);
+        } finally {
+            parkedCount = 0;
+
+            Parked parked;
+            while ((parked = pendingQueue.poll()) != null)
+                closeQuietly(parked.channel);
+
+            for (SelectionKey key : selector.keys())
+                closeQuietly(((Parked) key.attachment()).channel);
+
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void closeQuietly(@NotNull Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * A parked channel with its handler.
+     */
+    private static class Parked implements Runnable {
+        private final @NotNull Channel channel;
+
+        private final @NotNull SocketChannel socketChannel;
+
+        private final @NotNull ClientHandler handler;
+
+        Parked(@NotNull Channel channel, @NotNull SocketChannel socketChannel, @NotNull ClientHandler handler) {
+            this.channel = channel;
+            this.socketChannel = socketChannel;
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            try {
+                handler.onConnected(channel);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "An error occurred during handling of a parked channel", e);
+                closeQuietly(channel);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.monora.coolsocket.core.server;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.monora.coolsocket.core.CoolSocket;
 import org.monora.coolsocket.core.session.Channel;
 
@@ -33,6 +34,15 @@ public interface ConnectionManager {
      */
     int CLOSING_CONTRACT_DO_NOTHING = 8;
 
+    /**
+     * Let the ongoing operations complete, and close the connections using {@link Channel#closeMutuallyWhenIdle()} as
+     * they become idle. The connections that are still open after a deadline are cancelled, and after another deadline,
+     * closed immediately.
+     * <p>
+     * This is suitable for restarts where the clients should not lose the operations that are already underway.
+     */
+    int CLOSING_CONTRACT_DRAIN = 16;
+
     /**
      * Close all the client connections following the contract type that was set.
      *
@@ -56,6 +66,25 @@ public interface ConnectionManager {
      */
     List<@NotNull Channel> getActiveConnectionList();
 
+    /**
+     * Returns the active connections without copying them when the implementation allows it. Unlike
+     * {@link #getActiveConnectionList()}, the result may reflect the changes that happen while it is being iterated.
+     *
+     * @return The active connections.
+     */
+    default @NotNull Iterable<@NotNull Channel> getActiveConnections() {
+        return getActiveConnectionList();
+    }
+
+    /**
+     * Counts the connections that are still alive.
+     *
+     * @return The number of active connections.
+     */
+    default int getActiveConnectionCount() {
+        return getActiveConnectionList().size();
+    }
+
     /**
      * Counts the total connection of a client to the CoolSocket server.
      *
@@ -65,13 +94,40 @@ public interface ConnectionManager {
     default int getConnectionCountByAddress(@NotNull InetAddress address) {
         int returnObject = 0;
 
-        for (Channel channel : getActiveConnectionList())
+        for (Channel channel : getActiveConnections())
             if (channel.getSocket().getInetAddress().equals(address))
                 returnObject++;
 
         return returnObject;
     }
 
+    /**
+     * Get the group with the given name, e.g., a room, creating it if it doesn't exist.
+     * <p>
+     * The groups belong to the connection manager, so the handlers of different connections can broadcast to each
+     * other by using the same name.
+     *
+     * @param name The name of the group.
+     * @return The group.
+     */
+    default @NotNull ChannelGroup getChannelGroup(@NotNull String name) {
+        return ChannelGroup.of(this, name);
+    }
+
+    /**
+     * Set the listener to be invoked each time a connection exits and leaves no active connections behind.
+     * <p>
+     * This is invoked on the thread the connection was handled on, so it should return quickly, and it should not
+     * invoke {@link #closeAll()}, which may wait for that thread to exit.
+     *
+     * @param emptyListener The listener, or null to not report.
+     * @return True if the listener will be invoked, or false if this connection manager doesn't report it, in which
+     * case the active connection count should be checked instead.
+     */
+    default boolean setEmptyListener(@Nullable Runnable emptyListener) {
+        return false;
+    }
+
     /**
      * Set the closing contract for this connection manager.
      * <p>
@@ -84,6 +140,7 @@ public interface ConnectionManager {
      * @see #CLOSING_CONTRACT_CLOSE_SAFELY
      * @see #CLOSING_CONTRACT_CANCEL
      * @see #CLOSING_CONTRACT_DO_NOTHING
+     * @see #CLOSING_CONTRACT_DRAIN
      */
     void setClosingContract(boolean wait, int closingContract);
 }
@@ -0,0 +1,135 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.monora.coolsocket.core.session.Channel;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A concurrent collection of connections that also keeps count of the connections from each remote address.
+ * <p>
+ * Adding, removing and counting by address are constant time operations, and none of them block the others except
+ * when they concern the same address.
+ */
+public class ConnectionRegistry implements Iterable<@NotNull Channel> {
+    /**
+     * The connections mapped to the addresses they were counted under.
+     */
+    private final @NotNull ConcurrentHashMap<@NotNull Channel, @NotNull InetAddress> connectionMap =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The number of connections for each remote address.
+     */
+    private final @NotNull ConcurrentHashMap<@NotNull InetAddress, @NotNull Integer> addressCountMap =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Add a connection.
+     *
+     * @param channel To add.
+     * @return True if the connection was added, or false if it was already in the registry.
+     */
+    public boolean add(@NotNull Channel channel) {
+        InetAddress address = channel.getSocket().getInetAddress();
+
+        if (connectionMap.putIfAbsent(channel, address) != null)
+            return false;
+
+        addressCountMap.merge(address, 1, Integer::sum);
+        return true;
+    }
+
+    /**
+     * Count the connections from the given address.
+     *
+     * @param address The remote address.
+     * @return The number of connections.
+     */
+    public int countByAddress(@NotNull InetAddress address) {
+        Integer count = addressCountMap.get(address);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Check whether the given connection is in the registry.
+     *
+     * @param channel To check.
+     * @return True if it is registered.
+     */
+    public boolean contains(@NotNull Channel channel) {
+        return connectionMap.containsKey(channel);
+    }
+
+    /**
+     * Check whether the registry is empty.
+     *
+     * @return True if there are no connections.
+     */
+    public boolean isEmpty() {
+        return connectionMap.isEmpty();
+    }
+
+    /**
+     * Iterate over the connections without copying them.
+     * <p>
+     * The iterator reflects the state of the registry at some point during or since its creation, and it never
+     * throws {@link java.util.ConcurrentModificationException}.
+     *
+     * @return The iterator.
+     */
+    @Override
+    public @NotNull Iterator<@NotNull Channel> iterator() {
+        return connectionMap.keySet().iterator();
+    }
+
+    /**
+     * Split the connections without copying them, e.g., to go over them in parallel.
+     *
+     * @return The spliterator.
+     * @see #iterator()
+     */
+    @Override
+    public @NotNull Spliterator<@NotNull Channel> spliterator() {
+        return connectionMap.keySet().spliterator();
+    }
+
+    /**
+     * Remove a connection.
+     *
+     * @param channel To remove.
+     * @return True if the connection was removed, or false if it wasn't in the registry.
+     */
+    public boolean remove(@NotNull Channel channel) {
+        InetAddress address = connectionMap.remove(channel);
+
+        if (address == null)
+            return false;
+
+        addressCountMap.computeIfPresent(address, (key, count) -> count == 1 ? null : count - 1);
+        return true;
+    }
+
+    /**
+     * The number of connections.
+     *
+     * @return The connection count.
+     */
+    public int size() {
+        return connectionMap.size();
+    }
+
+    /**
+     * Copy the connections into a list.
+     *
+     * @return The list of connections.
+     */
+    public @NotNull List<@NotNull Channel> toList() {
+        return new ArrayList<>(connectionMap.keySet());
+    }
+}
@@ -0,0 +1,235 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.util.TokenBucket;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The default admission controller implementation.
+ * <p>
+ * It limits the number of concurrent connections from a remote address using
+ * {@link ConnectionManager#getConnectionCountByAddress(InetAddress)}, and the rate at which the connections are
+ * accepted from a remote address or subnet using a {@link TokenBucket} for each of them.
+ */
+public class DefaultAdmissionController implements AdmissionController {
+    /**
+     * Do not limit the number of connections.
+     */
+    public static final int UNLIMITED = 0;
+
+    /**
+     * The number of buckets above which the idle ones are removed.
+     */
+    private static final int MAX_IDLE_BUCKETS = 4096;
+
+    /**
+     * The rate limiters for each address or subnet.
+     */
+    private final @NotNull ConcurrentHashMap<@NotNull InetAddress, @NotNull TokenBucket> bucketMap =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The number of admitted connections.
+     */
+    private final @NotNull LongAdder admittedCount = new LongAdder();
+
+    /**
+     * The number of connections rejected due to the concurrent connection limit.
+     */
+    private final @NotNull LongAdder rejectedByConnectionLimitCount = new LongAdder();
+
+    /**
+     * The number of connections rejected due to the accept rate limit.
+     */
+    private final @NotNull LongAdder rejectedByRateLimitCount = new LongAdder();
+
+    /**
+     * The last time the idle buckets were removed.
+     */
+    private final @NotNull AtomicLong lastCleanupTime = new AtomicLong(System.nanoTime());
+
+    /**
+     * The maximum number of concurrent connections from an address.
+     */
+    private final int maxConnectionsPerAddress;
+
+    /**
+     * The number of connections allowed from an address or subnet each second.
+     */
+    private final double acceptsPerSecond;
+
+    /**
+     * The number of connections allowed in a burst from an address or subnet.
+     */
+    private final int acceptBurst;
+
+    /**
+     * The prefix length to group IPv4 addresses into subnets.
+     */
+    private int ipv4PrefixLength = 32;
+
+    /**
+     * The prefix length to group IPv6 addresses into subnets.
+     */
+    private int ipv6PrefixLength = 128;
+
+    /**
+     * Create a new instance.
+     *
+     * @param maxConnectionsPerAddress The maximum number of concurrent connections from an address, or
+     *                                 {@link #UNLIMITED}.
+     * @param acceptsPerSecond         The number of connections allowed from an address or subnet each second, or
+     *                                 {@link #UNLIMITED}.
+     * @param acceptBurst              The number of connections allowed in a burst before the rate applies.
+     */
+    public DefaultAdmissionController(int maxConnectionsPerAddress, double acceptsPerSecond, int acceptBurst) {
+        if (maxConnectionsPerAddress < 0 || acceptsPerSecond < 0)
+            throw new IllegalArgumentException("The limits cannot be negative numbers.");
+
+        if (acceptsPerSecond > 0 && acceptBurst < 1)
+            throw new IllegalArgumentException("The burst should be at least 1 when the rate is limited.");
+
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+        this.acceptsPerSecond = acceptsPerSecond;
+        this.acceptBurst = acceptBurst;
+    }
+
+    @Override
+    public boolean admit(@NotNull InetAddress address, @NotNull ConnectionManager connectionManager) {
+        if (maxConnectionsPerAddress != UNLIMITED
+                && connectionManager.getConnectionCountByAddress(address) >= maxConnectionsPerAddress) {
+            rejectedByConnectionLimitCount.increment();
+            return false;
+        }
+
+        if (acceptsPerSecond != UNLIMITED) {
+            TokenBucket bucket = getBucket(address);
+            if (bucket != null && !bucket.tryAcquire(1)) {
+                rejectedByRateLimitCount.increment();
+                return false;
+            }
+        }
+
+        admittedCount.increment();
+        return true;
+    }
+
+    /**
+     * Get the bucket for the subnet that the given address belongs to.
+     *
+     * @param address The remote address.
+     * @return The bucket, or null if the address could not be grouped.
+     */
+    private @Nullable TokenBucket getBucket(@NotNull InetAddress address) {
+        InetAddress key = subnetOf(address);
+        if (key == null)
+            return null;
+
+        TokenBucket bucket = bucketMap.get(key);
+        if (bucket == null) {
+            removeIdleBuckets();
+            bucket = bucketMap.computeIfAbsent(key, k -> new TokenBucket(acceptsPerSecond, acceptBurst));
+        }
+
+        return bucket;
+    }
+
+    /**
+     * The number of connections admitted so far.
+     *
+     * @return The admitted connection count.
+     */
+    public long getAdmittedCount() {
+        return admittedCount.sum();
+    }
+
+    /**
+     * The number of connections rejected because the address had too many connections.
+     *
+     * @return The rejected connection count.
+     */
+    public long getRejectedByConnectionLimitCount() {
+        return rejectedByConnectionLimitCount.sum();
+    }
+
+    /**
+     * The number of connections rejected because the address or subnet connected too often.
+     *
+     * @return The rejected connection count.
+     */
+    public long getRejectedByRateLimitCount() {
+        return rejectedByRateLimitCount.sum();
+    }
+
+    /**
+     * The total number of rejected connections.
+     *
+     * @return The rejected connection count.
+     */
+    public long getRejectedCount() {
+        return getRejectedByConnectionLimitCount() + getRejectedByRateLimitCount();
+    }
+
+    /**
+     * Remove the buckets that are full, meaning their addresses haven't connected for a while, when there are too
+     * many of them. This runs at most once a second.
+     */
+    private void removeIdleBuckets() {
+        long now = System.nanoTime();
+        long last = lastCleanupTime.get();
+
+        if (bucketMap.size() < MAX_IDLE_BUCKETS || now - last < TimeUnit.SECONDS.toNanos(1)
+                || !lastCleanupTime.compareAndSet(last, now))
+            return;
+
+        bucketMap.values().removeIf(TokenBucket::isFull);
+    }
+
+    /**
+     * Set the prefix lengths used to group the addresses into subnets for rate limiting. By default, each address is
+     * limited on its own.
+     *
+     * @param ipv4PrefixLength The prefix length for IPv4 addresses, between 0 and 32.
+     * @param ipv6PrefixLength The prefix length for IPv6 addresses, between 0 and 128.
+     */
+    public void setSubnetPrefixLength(int ipv4PrefixLength, int ipv6PrefixLength) {
+        if (ipv4PrefixLength < 0 || ipv4PrefixLength > 32 || ipv6PrefixLength < 0 || ipv6PrefixLength > 128)
+            throw new IllegalArgumentException("The prefix lengths are out of range.");
+
+        this.ipv4PrefixLength = ipv4PrefixLength;
+        this.ipv6PrefixLength = ipv6PrefixLength;
+    }
+
+    /**
+     * Find the subnet the given address belongs to.
+     *
+     * @param address The address.
+     * @return The address with the host bits cleared, or null if it cannot be produced.
+     */
+    private @Nullable InetAddress subnetOf(@NotNull InetAddress address) {
+        int prefixLength = address instanceof Inet4Address ? ipv4PrefixLength : ipv6PrefixLength;
+        byte[] bytes = address.getAddress();
+
+        if (prefixLength >= bytes.length * 8)
+            return address;
+
+        for (int i = 0; i < bytes.length; i++) {
+            int bits = Math.min(8, Math.max(0, prefixLength - i * 8));
+            bytes[i] &= (byte) (0xff << (8 - bits));
+        }
+
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+}
@@ -1,30 +1,121 @@
 package org.monora.coolsocket.core.server;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.monora.coolsocket.core.CoolSocket;
 import org.monora.coolsocket.core.session.Channel;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.net.InetAddress;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 
 /**
  * The default connection manager implementation.
+ * <p>
+ * The connections are handled by a bounded thread pool. When all the threads are busy, the connections wait in a
+ * bounded queue, and if that is also full, they are handed over to the {@link RejectedConnectionHandler} and closed
+ * immediately instead of waiting until they time out.
+ * <p>
+ * The roaming connections that outlive their client handlers can be closed after they stay idle for a while using
+ * {@link #setIdleTimeout(long)}. The ones whose pings go unanswered for longer than their round-trip time measurements
+ * allow are closed earlier (see {@link Channel#isPeerUnresponsive()}).
  */
 public class DefaultConnectionManager implements ConnectionManager {
     /**
-     * The list of managed connections.
+     * The default number of threads kept alive even when they are idle.
      */
-    private final @NotNull List<@NotNull Channel> connectionList = new ArrayList<>();
+    public static final int DEFAULT_CORE_POOL_SIZE = 10;
+
+    /**
+     * The default maximum number of threads.
+     */
+    public static final int DEFAULT_MAXIMUM_POOL_SIZE = 64;
+
+    /**
+     * The default number of connections that can wait for a thread.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /**
+     * The default time in milliseconds that the threads above the core pool size can stay idle before exiting.
+     */
+    public static final long DEFAULT_KEEP_ALIVE_TIME = 60000;
+
+    /**
+     * The default time in milliseconds after which the connections that are still draining are cancelled.
+     */
+    public static final long DEFAULT_CANCEL_TIMEOUT = 5000;
+
+    /**
+     * The default time in milliseconds after which the connections that are still open are closed immediately.
+     */
+    public static final long DEFAULT_CLOSE_TIMEOUT = 10000;
+
+    /**
+     * The time in milliseconds to wait between the checks while draining.
+     */
+    private static final long DRAIN_CHECK_INTERVAL = 50;
+
+    /**
+     * The maximum number of threads applying the closing contract to the connections at the same time.
+     */
+    private static final int CLOSER_POOL_SIZE = 16;
+
+    /**
+     * The managed connections.
+     */
+    private final @NotNull ConnectionRegistry connectionRegistry = new ConnectionRegistry();
 
     /**
      * The executor service that offloads new connections to another thread.
      */
-    private final @NotNull ExecutorService executorService = Executors.newFixedThreadPool(10);
+    private final @NotNull ThreadPoolExecutor executorService;
+
+    /**
+     * The executor service that applies the closing contract to the connections in parallel. This is kept apart from
+     * the shared pools since closing a connection may block on its socket.
+     */
+    private final @NotNull ThreadPoolExecutor closerService;
+
+    /**
+     * The handler that answers the connections that could not be handled.
+     */
+    private final @Nullable RejectedConnectionHandler rejectedConnectionHandler;
+
+    /**
+     * The number of connections rejected so far.
+     */
+    private final @NotNull LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * The number of connections that reached the client handler.
+     */
+    private final @NotNull LongAdder handoffCount = new LongAdder();
+
+    /**
+     * The total time in nanoseconds the connections spent between arriving and reaching the client handler.
+     */
+    private final @NotNull LongAdder handoffTimeTotal = new LongAdder();
+
+    /**
+     * The longest time in nanoseconds a connection spent between arriving and reaching the client handler.
+     */
+    private final @NotNull AtomicLong handoffTimeMax = new AtomicLong();
+
+    /**
+     * The number of roaming connections closed for being idle or unresponsive.
+     */
+    private final @NotNull LongAdder idleClosedCount = new LongAdder();
+
+    /**
+     * The time in milliseconds a roaming connection can stay idle before it is closed, or 0 to never close it.
+     */
+    private volatile long idleTimeout = 0;
 
     /**
      * Whether close functions will wait for all connections to close before returning.
@@ -36,46 +127,211 @@ public class DefaultConnectionManager implements ConnectionManager {
      */
     private int closingContract = CLOSING_CONTRACT_DO_NOTHING;
 
+    /**
+     * The time in milliseconds after which the draining connections are cancelled.
+     */
+    private long cancelTimeout = DEFAULT_CANCEL_TIMEOUT;
+
+    /**
+     * The time in milliseconds after which the remaining connections are closed immediately, and the most that
+     * {@link #closeAll()} waits for the threads to exit.
+     */
+    private long closeTimeout = DEFAULT_CLOSE_TIMEOUT;
+
+    /**
+     * The listener to report the progress of draining to.
+     */
+    private @Nullable DrainListener drainListener;
+
+    /**
+     * The listener to invoke when the last active connection exits.
+     */
+    private volatile @Nullable Runnable emptyListener;
+
+    /**
+     * The shaper limiting the rate the data is written to the clients at, or null if there are no limits.
+     */
+    private volatile @Nullable TrafficShaper trafficShaper;
+
+    /**
+     * The groups of channels by their names.
+     */
+    private final @NotNull ConcurrentHashMap<@NotNull String, @NotNull ChannelGroup> channelGroupMap =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Create a new instance with the default settings.
+     */
+    public DefaultConnectionManager() {
+        this(DEFAULT_CORE_POOL_SIZE, DEFAULT_MAXIMUM_POOL_SIZE, DEFAULT_QUEUE_CAPACITY, DEFAULT_KEEP_ALIVE_TIME,
+                null);
+    }
+
+    /**
+     * Create a new instance.
+     * <p>
+     * Like {@link ThreadPoolExecutor}, the threads above the core pool size are only started when the queue is full.
+     *
+     * @param corePoolSize              The number of threads to keep alive even when they are idle.
+     * @param maximumPoolSize           The maximum number of threads.
+     * @param queueCapacity             The number of connections that can wait for a thread. Zero will mean the
+     *                                  connections are either handed to a thread directly or rejected.
+     * @param keepAliveTime             The time in milliseconds that the threads above the core pool size can stay
+     *                                  idle before exiting.
+     * @param rejectedConnectionHandler The handler to answer the rejected connections before they are closed, or null
+     *                                  to close them without an answer.
+     */
+    public DefaultConnectionManager(int corePoolSize, int maximumPoolSize, int queueCapacity, long keepAliveTime,
+                                    @Nullable RejectedConnectionHandler rejectedConnectionHandler) {
+        if (queueCapacity < 0)
+            throw new IllegalArgumentException("Queue capacity cannot be a negative number.");
+
+        BlockingQueue<Runnable> queue = queueCapacity == 0 ? new SynchronousQueue<>()
+                : new LinkedBlockingQueue<>(queueCapacity);
+
+        this.executorService = new ThreadPoolExecutor(corePoolSize, maximumPoolSize, keepAliveTime,
+                TimeUnit.MILLISECONDS, queue, new ThreadPoolExecutor.AbortPolicy());
+        this.rejectedConnectionHandler = rejectedConnectionHandler;
+        this.closerService = new ThreadPoolExecutor(CLOSER_POOL_SIZE, CLOSER_POOL_SIZE, DEFAULT_KEEP_ALIVE_TIME,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "CoolSocket Connection Closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.closerService.allowCoreThreadTimeOut(true);
+    }
+
     /**
      * Close all the connections.
+     * <p>
+     * The new connections are rejected from this point on. The contract is applied to the connections in parallel.
      */
     @Override
     public void closeAll() {
-        if (connectionList.size() == 0 || executorService.isShutdown())
+        if (connectionRegistry.isEmpty() && executorService.isShutdown())
             return;
 
+        // Stop taking new connections, so that the ones in the registry are all that is left to close.
+        executorService.shutdown();
+
         int contract = closingContract;
-        boolean wait = waitForExit;
 
-        if (closingContract != CLOSING_CONTRACT_DO_NOTHING) {
-            synchronized (connectionList) {
-                for (Channel connection : connectionList) {
+        switch (contract) {
+            case CLOSING_CONTRACT_DO_NOTHING:
+                break;
+            case CLOSING_CONTRACT_DRAIN:
+                drain();
+                break;
+            case CLOSING_CONTRACT_CANCEL:
+                forEachConnection(Channel::cancel);
+                break;
+            case CLOSING_CONTRACT_CLOSE_SAFELY:
+                forEachConnection(Channel::closeMutually);
+                break;
+            case CLOSING_CONTRACT_CLOSE_IMMEDIATELY:
+            default:
+                forEachConnection(Channel::close);
+        }
+
+        if (waitForExit) {
+            try {
+                executorService.awaitTermination(closeTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Close the connections following {@link #CLOSING_CONTRACT_DRAIN}.
+     * <p>
+     * The connections are closed mutually when they begin their next operations, so the ongoing operations can
+     * complete until the cancel timeout, after which they are cancelled. The ones that are still open after the close
+     * timeout are closed immediately.
+     */
+    private void drain() {
+        final DrainListener listener = drainListener;
+        final long startTime = System.nanoTime();
+        final int totalCount = connectionRegistry.size();
+        int phase = DrainListener.PHASE_DRAIN;
+        long elapsedTime = 0;
+
+        // An idle connection gets the close request with its next operation, the same as with closeMutually(), but
+        // without a check for being idle, an operation beginning in between would be closed in the middle.
+        forEachConnection(Channel::closeMutuallyWhenIdle);
+
+        while (!connectionRegistry.isEmpty()) {
+            elapsedTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+            if (elapsedTime >= closeTimeout || Thread.currentThread().isInterrupted()) {
+                phase = DrainListener.PHASE_CLOSE;
+                forEachConnection(Channel::close);
+                break;
+            }
+
+            if (phase == DrainListener.PHASE_DRAIN && elapsedTime >= cancelTimeout) {
+                phase = DrainListener.PHASE_CANCEL;
+                forEachConnection(channel -> {
+                    if (channel.isBusy())
+                        channel.cancel();
+                });
+            }
+
+            if (listener != null)
+                listener.onProgress(phase, connectionRegistry.size(), totalCount, elapsedTime);
+
+            try {
+                Thread.sleep(DRAIN_CHECK_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (listener != null) {
+            listener.onProgress(phase, connectionRegistry.size(), totalCount, elapsedTime);
+            listener.onProgress(DrainListener.PHASE_DONE, connectionRegistry.size(), totalCount,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        }
+    }
+
+    /**
+     * Apply the given operation to all the connections in parallel, ignoring the errors.
+     * <p>
+     * The connections are shared between the closer threads and the calling thread, which returns when all of them
+     * are done.
+     *
+     * @param operation To apply.
+     */
+    private void forEachConnection(@NotNull ChannelOperation operation) {
+        final List<Channel> channelList = connectionRegistry.toList();
+        final AtomicInteger nextIndex = new AtomicInteger();
+        final int threadCount = Math.min(channelList.size(), CLOSER_POOL_SIZE);
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+
+        Runnable worker = () -> {
+            try {
+                int index;
+                while ((index = nextIndex.getAndIncrement()) < channelList.size()) {
                     try {
-                        switch (contract) {
-                            case CLOSING_CONTRACT_CANCEL:
-                                connection.cancel();
-                                break;
-                            case CLOSING_CONTRACT_CLOSE_SAFELY:
-                                connection.closeMutually();
-                                break;
-                            case CLOSING_CONTRACT_CLOSE_IMMEDIATELY:
-                            default:
-                                connection.close();
-                        }
+                        operation.apply(channelList.get(index));
                     } catch (IOException ignored) {
                     }
                 }
+            } finally {
+                latch.countDown();
             }
-        }
+        };
 
-        if (wait) {
-            try {
-                // Shutdown the threads.
-                executorService.shutdown();
-                // Wait for them to quit for 10 seconds at most.
-                executorService.awaitTermination(10, TimeUnit.SECONDS);
-            } catch (InterruptedException ignored) {
-            }
+        // The calling thread takes a share too.
+        for (int i = 1; i < threadCount; i++)
+            closerService.execute(worker);
+
+        if (threadCount > 0)
+            worker.run();
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -87,28 +343,121 @@ public class DefaultConnectionManager implements ConnectionManager {
      */
     @Override
     public void handleClient(@NotNull CoolSocket coolSocket, final @NotNull Channel channel) {
-        synchronized (connectionList) {
-            connectionList.add(channel);
-        }
+        final long arrivalTime = System.nanoTime();
 
-        executorService.submit(() -> {
-            try {
-                coolSocket.getClientHandler().onConnected(channel);
-            } catch (Exception e) {
-                coolSocket.getLogger().log(Level.SEVERE, "An error occurred during handling of a client", e);
-            } finally {
-                if (!channel.isRoaming()) {
-                    try {
-                        channel.close();
-                    } catch (IOException ignored) {
+        connectionRegistry.add(channel);
+
+        TrafficShaper shaper = trafficShaper;
+        if (shaper != null)
+            shaper.attach(channel);
+
+        try {
+            executorService.execute(() -> {
+                recordHandoff(System.nanoTime() - arrivalTime);
+
+                try {
+                    coolSocket.getClientHandler().onConnected(channel);
+                } catch (Exception e) {
+                    coolSocket.getLogger().log(Level.SEVERE, "An error occurred during handling of a client", e);
+                } finally {
+                    if (!channel.isRoaming()) {
+                        try {
+                            channel.close();
+                        } catch (IOException ignored) {
+                        }
+                    } else {
+                        long timeout = idleTimeout;
+                        if (timeout > 0)
+                            watchIdle(channel, timeout, timeout);
                     }
-                }
 
-                synchronized (connectionList) {
-                    connectionList.remove(channel);
+                    connectionRegistry.remove(channel);
+                    notifyIfEmpty();
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            connectionRegistry.remove(channel);
+
+            reject(coolSocket, channel);
+            notifyIfEmpty();
+        }
+    }
+
+    /**
+     * Invoke the empty listener if there are no active connections left.
+     */
+    private void notifyIfEmpty() {
+        Runnable listener = emptyListener;
+        if (listener != null && connectionRegistry.isEmpty())
+            listener.run();
+    }
+
+    /**
+     * Answer and close a connection that could not be handled.
+     *
+     * @param coolSocket The calling CoolSocket instance.
+     * @param channel    That was rejected.
+     */
+    private void reject(@NotNull CoolSocket coolSocket, @NotNull Channel channel) {
+        rejectedCount.increment();
+
+        try {
+            if (rejectedConnectionHandler != null)
+                rejectedConnectionHandler.onRejected(coolSocket, channel);
+        } catch (Exception e) {
+            coolSocket.getLogger().log(Level.FINE, "The rejected connection could not be answered", e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
             }
-        });
+        }
+    }
+
+    /**
+     * Check the given roaming channel after the delay and close it if it has been idle for longer than allowed or the
+     * remote looks unresponsive, or check it again when it may be.
+     *
+     * @param channel     To watch.
+     * @param idleTimeout The time in milliseconds the channel can stay idle.
+     * @param delay       The time in milliseconds to wait before checking.
+     */
+    private void watchIdle(@NotNull Channel channel, long idleTimeout, long delay) {
+        HashedWheelTimer.getDefault().newTimeout(() -> {
+            if (channel.getSocket().isClosed())
+                return;
+
+            long idleTime = channel.getIdleTime();
+            if (idleTime < idleTimeout && !channel.isPeerUnresponsive()) {
+                long nextCheck = idleTimeout - idleTime;
+                long rttTimeout = channel.getSuggestedTimeout();
+
+                watchIdle(channel, idleTimeout, rttTimeout > 0 ? Math.min(rttTimeout, nextCheck) : nextCheck);
+                return;
+            }
+
+            idleClosedCount.increment();
+
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record the time a connection waited before reaching the client handler.
+     *
+     * @param time In nanoseconds.
+     */
+    private void recordHandoff(long time) {
+        handoffCount.increment();
+        handoffTimeTotal.add(time);
+
+        long max;
+        while ((max = handoffTimeMax.get()) < time && !handoffTimeMax.compareAndSet(max, time)) {
+            Thread.onSpinWait();
+        }
     }
 
     /**
@@ -118,7 +467,126 @@ public class DefaultConnectionManager implements ConnectionManager {
      */
     @Override
     public @NotNull List<@NotNull Channel> getActiveConnectionList() {
-        return new ArrayList<>(connectionList);
+        return connectionRegistry.toList();
+    }
+
+    /**
+     * The connections without copying them.
+     *
+     * @return The connection registry.
+     */
+    @Override
+    public @NotNull Iterable<@NotNull Channel> getActiveConnections() {
+        return connectionRegistry;
+    }
+
+    /**
+     * The number of connections.
+     *
+     * @return The number of connections.
+     */
+    @Override
+    public int getActiveConnectionCount() {
+        return connectionRegistry.size();
+    }
+
+    /**
+     * Count the connections from the given address in constant time.
+     *
+     * @param address Client address.
+     * @return The number of connections.
+     */
+    @Override
+    public int getConnectionCountByAddress(@NotNull InetAddress address) {
+        return connectionRegistry.countByAddress(address);
+    }
+
+    @Override
+    public @NotNull ChannelGroup getChannelGroup(@NotNull String name) {
+        return channelGroupMap.computeIfAbsent(name, ChannelGroup::new);
+    }
+
+    /**
+     * The number of threads that are currently handling a connection.
+     *
+     * @return The number of busy threads.
+     */
+    public int getActiveThreadCount() {
+        return executorService.getActiveCount();
+    }
+
+    /**
+     * The average time the connections waited between arriving and reaching the client handler.
+     *
+     * @return The average time in nanoseconds, or 0 if there is no connection handled yet.
+     */
+    public long getAverageHandoffTime() {
+        long count = handoffCount.sum();
+        return count == 0 ? 0 : handoffTimeTotal.sum() / count;
+    }
+
+    /**
+     * The number of connections that reached the client handler so far.
+     *
+     * @return The number of handled connections.
+     */
+    public long getHandledCount() {
+        return handoffCount.sum();
+    }
+
+    /**
+     * The longest time a connection waited between arriving and reaching the client handler.
+     *
+     * @return The longest time in nanoseconds.
+     */
+    public long getMaxHandoffTime() {
+        return handoffTimeMax.get();
+    }
+
+    /**
+     * The number of roaming connections that were closed for being idle or unresponsive.
+     *
+     * @return The number of closed connections.
+     */
+    public long getIdleClosedCount() {
+        return idleClosedCount.sum();
+    }
+
+    /**
+     * The time a roaming connection can stay idle before it is closed.
+     *
+     * @return The time in milliseconds, or 0 if the connections are never closed for being idle.
+     * @see #setIdleTimeout(long)
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * The number of threads that currently exist, including the idle ones.
+     *
+     * @return The number of threads.
+     */
+    public int getPoolSize() {
+        return executorService.getPoolSize();
+    }
+
+    /**
+     * The number of connections waiting for a thread.
+     *
+     * @return The queue depth.
+     */
+    public int getQueueDepth() {
+        return executorService.getQueue().size();
+    }
+
+    /**
+     * The number of connections that were rejected because they could not be handled.
+     *
+     * @return The number of rejected connections.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
     }
 
     /**
@@ -133,4 +601,69 @@ public class DefaultConnectionManager implements ConnectionManager {
         this.waitForExit = wait;
         this.closingContract = closingContract;
     }
+
+    /**
+     * Set the listener to report the progress of draining to.
+     *
+     * @param drainListener The listener, or null to not report.
+     * @see #CLOSING_CONTRACT_DRAIN
+     */
+    public void setDrainListener(@Nullable DrainListener drainListener) {
+        this.drainListener = drainListener;
+    }
+
+    @Override
+    public boolean setEmptyListener(@Nullable Runnable emptyListener) {
+        this.emptyListener = emptyListener;
+        return true;
+    }
+
+    /**
+     * Set the deadlines for closing the connections.
+     * <p>
+     * Both are measured from the point {@link #closeAll()} is invoked. The close timeout also limits how long it waits
+     * for the threads to exit.
+     *
+     * @param cancelTimeout The time in milliseconds after which the draining connections are cancelled.
+     * @param closeTimeout  The time in milliseconds after which the remaining connections are closed immediately.
+     * @see #CLOSING_CONTRACT_DRAIN
+     */
+    public void setDrainTimeouts(long cancelTimeout, long closeTimeout) {
+        if (cancelTimeout < 0 || closeTimeout < cancelTimeout)
+            throw new IllegalArgumentException("The timeouts are not valid.");
+        this.cancelTimeout = cancelTimeout;
+        this.closeTimeout = closeTimeout;
+    }
+
+    /**
+     * Set the shaper that limits the rate the data is written to the clients at. This applies to the connections
+     * handled after it is set.
+     *
+     * @param trafficShaper The shaper, or null to not limit the connections.
+     */
+    public void setTrafficShaper(@Nullable TrafficShaper trafficShaper) {
+        this.trafficShaper = trafficShaper;
+    }
+
+    /**
+     * Set the time a roaming connection can stay idle before it is closed.
+     * <p>
+     * The connections are watched after their client handlers return, and they are considered idle when no data is
+     * read from or written to them. This applies to the connections handled after it is set.
+     *
+     * @param idleTimeout The time in milliseconds, or 0 to never close the connections for being idle.
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        if (idleTimeout < 0)
+            throw new IllegalArgumentException("Idle timeout cannot be a negative number.");
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * An operation on a connection.
+     */
+    @FunctionalInterface
+    private interface ChannelOperation {
+        void apply(@NotNull Channel channel) throws IOException;
+    }
 }
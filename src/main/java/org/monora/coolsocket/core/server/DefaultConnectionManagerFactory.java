@@ -1,11 +1,89 @@
 package org.monora.coolsocket.core.server;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static org.monora.coolsocket.core.server.DefaultConnectionManager.*;
 
 /**
  * The default connection manager factory implementation.
+ * <p>
+ * The settings are applied to the connection managers created after they are changed.
  */
 public class DefaultConnectionManagerFactory implements ConnectionManagerFactory {
+    /**
+     * The number of threads to keep alive even when they are idle.
+     */
+    private int corePoolSize;
+
+    /**
+     * The maximum number of threads.
+     */
+    private int maximumPoolSize;
+
+    /**
+     * The number of connections that can wait for a thread.
+     */
+    private int queueCapacity;
+
+    /**
+     * The time in milliseconds that the threads above the core pool size can stay idle.
+     */
+    private long keepAliveTime;
+
+    /**
+     * The time in milliseconds a roaming connection can stay idle before it is closed.
+     */
+    private long idleTimeout;
+
+    /**
+     * The time in milliseconds after which the draining connections are cancelled.
+     */
+    private long cancelTimeout = DEFAULT_CANCEL_TIMEOUT;
+
+    /**
+     * The time in milliseconds after which the remaining connections are closed immediately.
+     */
+    private long closeTimeout = DEFAULT_CLOSE_TIMEOUT;
+
+    /**
+     * The listener to report the progress of draining to.
+     */
+    private @Nullable DrainListener drainListener;
+
+    /**
+     * The shaper shared by the connection managers.
+     */
+    private @Nullable TrafficShaper trafficShaper;
+
+    /**
+     * The handler to answer the rejected connections.
+     */
+    private @Nullable RejectedConnectionHandler rejectedConnectionHandler;
+
+    /**
+     * Create a new instance with the default settings.
+     */
+    public DefaultConnectionManagerFactory() {
+        this(DEFAULT_CORE_POOL_SIZE, DEFAULT_MAXIMUM_POOL_SIZE, DEFAULT_QUEUE_CAPACITY, DEFAULT_KEEP_ALIVE_TIME);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param corePoolSize    The number of threads to keep alive even when they are idle.
+     * @param maximumPoolSize The maximum number of threads.
+     * @param queueCapacity   The number of connections that can wait for a thread.
+     * @param keepAliveTime   The time in milliseconds that the threads above the core pool size can stay idle.
+     * @see DefaultConnectionManager#DefaultConnectionManager(int, int, int, long, RejectedConnectionHandler)
+     */
+    public DefaultConnectionManagerFactory(int corePoolSize, int maximumPoolSize, int queueCapacity,
+                                           long keepAliveTime) {
+        setPoolSize(corePoolSize, maximumPoolSize);
+        setQueueCapacity(queueCapacity);
+        setKeepAliveTime(keepAliveTime);
+    }
+
     /**
      * Create a new connection manager.
      *
@@ -13,6 +91,103 @@ public class DefaultConnectionManagerFactory implements ConnectionManagerFactory
      */
     @Override
     public @NotNull ConnectionManager createConnectionManager() {
-        return new DefaultConnectionManager();
+        DefaultConnectionManager connectionManager = new DefaultConnectionManager(corePoolSize, maximumPoolSize,
+                queueCapacity, keepAliveTime, rejectedConnectionHandler);
+        connectionManager.setIdleTimeout(idleTimeout);
+        connectionManager.setDrainTimeouts(cancelTimeout, closeTimeout);
+        connectionManager.setDrainListener(drainListener);
+        connectionManager.setTrafficShaper(trafficShaper);
+        return connectionManager;
+    }
+
+    /**
+     * Set the listener to report the progress of draining to.
+     *
+     * @param drainListener The listener, or null to not report.
+     * @see DefaultConnectionManager#setDrainListener(DrainListener)
+     */
+    public void setDrainListener(@Nullable DrainListener drainListener) {
+        this.drainListener = drainListener;
+    }
+
+    /**
+     * Set the deadlines for closing the connections.
+     *
+     * @param cancelTimeout The time in milliseconds after which the draining connections are cancelled.
+     * @param closeTimeout  The time in milliseconds after which the remaining connections are closed immediately.
+     * @see DefaultConnectionManager#setDrainTimeouts(long, long)
+     */
+    public void setDrainTimeouts(long cancelTimeout, long closeTimeout) {
+        if (cancelTimeout < 0 || closeTimeout < cancelTimeout)
+            throw new IllegalArgumentException("The timeouts are not valid.");
+        this.cancelTimeout = cancelTimeout;
+        this.closeTimeout = closeTimeout;
+    }
+
+    /**
+     * Set the time a roaming connection can stay idle before it is closed.
+     *
+     * @param idleTimeout The time in milliseconds, or 0 to never close the connections for being idle.
+     * @see DefaultConnectionManager#setIdleTimeout(long)
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        if (idleTimeout < 0)
+            throw new IllegalArgumentException("Idle timeout cannot be a negative number.");
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Set the shaper that limits the rate the data is written to the clients at. The same instance is given to all
+     * the connection managers this creates, so the limits apply to them together.
+     *
+     * @param trafficShaper The shaper, or null to not limit the connections.
+     * @see DefaultConnectionManager#setTrafficShaper(TrafficShaper)
+     */
+    public void setTrafficShaper(@Nullable TrafficShaper trafficShaper) {
+        this.trafficShaper = trafficShaper;
+    }
+
+    /**
+     * Set the time that the threads above the core pool size can stay idle before exiting.
+     *
+     * @param keepAliveTime In milliseconds.
+     */
+    public void setKeepAliveTime(long keepAliveTime) {
+        if (keepAliveTime < 0)
+            throw new IllegalArgumentException("Keep alive time cannot be a negative number.");
+        this.keepAliveTime = keepAliveTime;
+    }
+
+    /**
+     * Set the thread counts.
+     *
+     * @param corePoolSize    The number of threads to keep alive even when they are idle.
+     * @param maximumPoolSize The maximum number of threads.
+     */
+    public void setPoolSize(int corePoolSize, int maximumPoolSize) {
+        if (corePoolSize < 0 || maximumPoolSize < 1 || maximumPoolSize < corePoolSize)
+            throw new IllegalArgumentException("The pool sizes are not valid.");
+        this.corePoolSize = corePoolSize;
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    /**
+     * Set the number of connections that can wait for a thread before the new ones are rejected.
+     *
+     * @param queueCapacity The queue capacity, or zero to hand the connections to threads directly.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 0)
+            throw new IllegalArgumentException("Queue capacity cannot be a negative number.");
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Set the handler that answers the connections which are rejected due to overload before they are closed.
+     *
+     * @param rejectedConnectionHandler The handler, or null to close the connections without an answer.
+     */
+    public void setRejectedConnectionHandler(@Nullable RejectedConnectionHandler rejectedConnectionHandler) {
+        this.rejectedConnectionHandler = rejectedConnectionHandler;
     }
 }
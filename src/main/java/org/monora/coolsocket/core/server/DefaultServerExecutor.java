@@ -1,35 +1,149 @@
 package org.monora.coolsocket.core.server;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.monora.coolsocket.core.CoolSocket;
 import org.monora.coolsocket.core.config.ConfigFactory;
 import org.monora.coolsocket.core.session.Channel;
 
+import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.channels.AsynchronousCloseException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 
 /**
  * The default server executor implementation.
  */
 public class DefaultServerExecutor implements ServerExecutor {
+    /**
+     * The admission controller that filters the connections before they are handled.
+     */
+    private final @Nullable AdmissionController admissionController;
+
+    /**
+     * The number of accepted connections.
+     */
+    private final @NotNull LongAdder acceptedCount = new LongAdder();
+
+    /**
+     * The number of connections closed without being handled.
+     */
+    private final @NotNull LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * Create a new instance that handles every connection it accepts.
+     */
+    public DefaultServerExecutor() {
+        this(null);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param admissionController The controller that decides whether an accepted connection should be handled, or
+     *                            null to handle all of them.
+     */
+    public DefaultServerExecutor(@Nullable AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * Check whether the connection is admitted, and close it right away if it isn't.
+     *
+     * @param connectionManager The connection manager that will handle the connection.
+     * @param socket            The accepted socket.
+     * @return True if the connection should be handled.
+     */
+    protected boolean admit(@NotNull ConnectionManager connectionManager, @NotNull Socket socket) {
+        AdmissionController controller = admissionController;
+        if (controller == null || controller.admit(socket.getInetAddress(), connectionManager))
+            return true;
+
+        rejectedCount.increment();
+
+        try {
+            controller.onRejected(socket);
+        } finally {
+            try {
+                // Reset the connection so that it doesn't linger on our side.
+                socket.setSoLinger(true, 0);
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        return false;
+    }
+
     @Override
-    public void onSession(@NotNull CoolSocket coolSocket, @NotNull ConfigFactory configFactory,
-                          @NotNull ConnectionManager connectionManager, @NotNull ServerSocket serverSocket) {
+    public long getAcceptedCount() {
+        return acceptedCount.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * @return The admission controller, or null if there is none.
+     */
+    public @Nullable AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * Accept the connections from the given server socket until the calling thread is interrupted or the server
+     * socket is closed.
+     *
+     * @param coolSocket        That owns the session.
+     * @param configFactory     That configures the client sockets.
+     * @param connectionManager That will handle the connections.
+     * @param serverSocket      To accept the connections from.
+     */
+    protected void acceptLoop(@NotNull CoolSocket coolSocket, @NotNull ConfigFactory configFactory,
+                              @NotNull ConnectionManager connectionManager, @NotNull ServerSocket serverSocket) {
         do {
             try {
                 Socket clientSocket = serverSocket.accept();
-                Channel channel = configFactory.configureClient(clientSocket);
-                connectionManager.handleClient(coolSocket, channel);
-            } catch (SocketException e) {
+                acceptedCount.increment();
+
+                if (admit(connectionManager, clientSocket))
+                    handleAccepted(coolSocket, configFactory, connectionManager, clientSocket);
+            } catch (SocketException | AsynchronousCloseException e) {
+                // The latter is thrown instead of the former when the server socket has a channel.
                 coolSocket.getLogger().fine("Server socket exited.");
             } catch (SocketTimeoutException ignored) {
             } catch (Exception e) {
                 coolSocket.getLogger().log(Level.SEVERE, "Caught a severe error.", e);
             }
         }
-        while (!Thread.currentThread().isInterrupted());
+        while (!Thread.currentThread().isInterrupted() && !serverSocket.isClosed());
+    }
+
+    /**
+     * Configure an admitted client socket and pass it to the connection manager.
+     *
+     * @param coolSocket        That owns the session.
+     * @param configFactory     That configures the client socket.
+     * @param connectionManager That will handle the connection.
+     * @param socket            The admitted socket.
+     * @throws IOException If the socket cannot be configured.
+     */
+    protected void handleAccepted(@NotNull CoolSocket coolSocket, @NotNull ConfigFactory configFactory,
+                                  @NotNull ConnectionManager connectionManager, @NotNull Socket socket)
+            throws IOException {
+        Channel channel = configFactory.configureClient(socket);
+        connectionManager.handleClient(coolSocket, channel);
+    }
+
+    @Override
+    public void onSession(@NotNull CoolSocket coolSocket, @NotNull ConfigFactory configFactory,
+                          @NotNull ConnectionManager connectionManager, @NotNull ServerSocket serverSocket) {
+        acceptLoop(coolSocket, configFactory, connectionManager, serverSocket);
     }
 }
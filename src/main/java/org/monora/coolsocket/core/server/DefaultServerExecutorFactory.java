@@ -1,13 +1,36 @@
 package org.monora.coolsocket.core.server;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * The default server executor factory implementation.
  */
 public class DefaultServerExecutorFactory implements ServerExecutorFactory {
+    /**
+     * The admission controller shared by the produced executors.
+     */
+    private @Nullable AdmissionController admissionController;
+
     @Override
     public @NotNull ServerExecutor createServerExecutor() {
-        return new DefaultServerExecutor();
+        return new DefaultServerExecutor(admissionController);
+    }
+
+    /**
+     * @return The admission controller given to the produced executors, or null if there is none.
+     */
+    public @Nullable AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * Set the admission controller that will filter the connections right after they are accepted. The controller
+     * is shared by all the executors produced after this call, so its limits and counters span the sessions.
+     *
+     * @param admissionController The admission controller, or null to admit every connection.
+     */
+    public void setAdmissionController(@Nullable AdmissionController admissionController) {
+        this.admissionController = admissionController;
     }
 }
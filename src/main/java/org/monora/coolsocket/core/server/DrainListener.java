@@ -0,0 +1,42 @@
+package org.monora.coolsocket.core.server;
+
+/**
+ * Reports the progress of closing the connections with {@link ConnectionManager#CLOSING_CONTRACT_DRAIN}.
+ * <p>
+ * This is invoked on the thread that called {@link ConnectionManager#closeAll()}, so it should return quickly.
+ */
+public interface DrainListener {
+    /**
+     * The connections are given the time to complete their operations, and the idle ones are closed mutually.
+     */
+    int PHASE_DRAIN = 1;
+
+    /**
+     * The cancel deadline has passed, and the ongoing operations are cancelled.
+     */
+    int PHASE_CANCEL = 2;
+
+    /**
+     * The close deadline has passed, and the remaining connections are closed immediately.
+     */
+    int PHASE_CLOSE = 3;
+
+    /**
+     * All the connections are closed.
+     */
+    int PHASE_DONE = 4;
+
+    /**
+     * Called periodically while the connections are being closed, and once more when it is done.
+     *
+     * @param phase          The current phase.
+     * @param remainingCount The number of connections that are still open.
+     * @param totalCount     The number of connections there were when closing started.
+     * @param elapsedTime    The time in milliseconds since closing started.
+     * @see #PHASE_DRAIN
+     * @see #PHASE_CANCEL
+     * @see #PHASE_CLOSE
+     * @see #PHASE_DONE
+     */
+    void onProgress(int phase, int remainingCount, int totalCount, long elapsedTime);
+}
@@ -0,0 +1,399 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A timer that can hold a very large number of timeouts, e.g., one for each connection or transfer, with a single
+ * thread.
+ * <p>
+ * The timeouts are kept in a wheel of buckets where each bucket covers one tick. Adding and cancelling a timeout takes
+ * constant time, and each tick only visits the timeouts that are in the current bucket. The trade-off is precision:
+ * a timeout fires at most one tick later than it was asked to.
+ * <p>
+ * The tasks run on the timer thread, so they should be short, e.g., closing a socket or handing the work over to
+ * another executor. The timer thread is started with the first timeout and parks while there is nothing to wait for.
+ */
+public class HashedWheelTimer {
+    /**
+     * The default duration of a tick in milliseconds.
+     */
+    public static final long DEFAULT_TICK_DURATION = 100;
+
+    /**
+     * The default number of buckets in the wheel.
+     */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final int STATE_INIT = 0;
+
+    private static final int STATE_STARTED = 1;
+
+    private static final int STATE_STOPPED = 2;
+
+    private static final Logger logger = Logger.getLogger(HashedWheelTimer.class.getName());
+
+    /**
+     * The buckets of the wheel. The length is a power of two, so the index can be found using {@link #mask}.
+     */
+    private final @NotNull Bucket @NotNull [] wheel;
+
+    /**
+     * The mask to find a bucket index from a tick.
+     */
+    private final int mask;
+
+    /**
+     * The duration of a tick in nanoseconds.
+     */
+    private final long tickDuration;
+
+    /**
+     * The timeouts waiting for the timer thread to put them into their buckets.
+     */
+    private final @NotNull Queue<@NotNull Timeout> pendingQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The timeouts waiting for the timer thread to remove them from their buckets.
+     */
+    private final @NotNull Queue<@NotNull Timeout> cancelledQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of timeouts that haven't expired or been removed yet.
+     */
+    private final @NotNull AtomicLong timeoutCount = new AtomicLong();
+
+    /**
+     * The state of the timer thread.
+     */
+    private final @NotNull AtomicInteger state = new AtomicInteger(STATE_INIT);
+
+    /**
+     * The timer thread.
+     */
+    private final @NotNull Thread workerThread;
+
+    /**
+     * The time the current round of ticks started at in nanoseconds. This is only accessed by the timer thread.
+     */
+    private long startTime;
+
+    /**
+     * The current tick. This is only accessed by the timer thread.
+     */
+    private long tick;
+
+    /**
+     * Create a new instance with the default settings.
+     */
+    public HashedWheelTimer() {
+        this(DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param tickDuration The duration of a tick. Smaller values are more precise but wake the timer thread more
+     *                     often.
+     * @param unit         The unit of the tick duration.
+     * @param wheelSize    The number of buckets. This will be rounded up to a power of two. Timeouts that are further
+     *                     than a full turn of the wheel will wait in their buckets for more rounds.
+     */
+    public HashedWheelTimer(long tickDuration, @NotNull TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException("Tick duration should be a positive number.");
+
+        if (wheelSize <= 0 || wheelSize > 1 << 30)
+            throw new IllegalArgumentException("Wheel size should be a positive number that is at most 2^30.");
+
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize)
+            size <<= 1;
+
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+            wheel[i] = new Bucket();
+
+        this.mask = size - 1;
+        this.tickDuration = unit.toNanos(tickDuration);
+        this.workerThread = new Thread(this::work, "CoolSocket Timer");
+        this.workerThread.setDaemon(true);
+    }
+
+    /**
+     * The shared timer instance which is used when a timer is not provided.
+     *
+     * @return The shared timer.
+     */
+    public static @NotNull HashedWheelTimer getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Schedule the given task.
+     *
+     * @param task  To run on the timer thread when the delay passes.
+     * @param delay The time to wait before running the task.
+     * @param unit  The unit of the delay.
+     * @return The handle to cancel the task.
+     * @throws IllegalStateException If the timer has been stopped.
+     */
+    public @NotNull Timeout newTimeout(@NotNull Runnable task, long delay, @NotNull TimeUnit unit) {
+        if (state.get() == STATE_INIT && state.compareAndSet(STATE_INIT, STATE_STARTED))
+            workerThread.start();
+        else if (state.get() == STATE_STOPPED)
+            throw new IllegalStateException("The timer has been stopped.");
+
+        Timeout timeout = new Timeout(task, System.nanoTime() + Math.max(0, unit.toNanos(delay)));
+        timeoutCount.incrementAndGet();
+        pendingQueue.add(timeout);
+        LockSupport.unpark(workerThread);
+        return timeout;
+    }
+
+    /**
+     * The number of timeouts that are waiting to expire.
+     *
+     * @return The timeout count.
+     */
+    public long getPendingTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Stop the timer thread. The remaining timeouts will not run.
+     *
+     * @throws IllegalStateException If this is the shared instance.
+     */
+    public void stop() {
+        if (this == DefaultHolder.INSTANCE)
+            throw new IllegalStateException("The shared timer cannot be stopped.");
+
+        if (state.getAndSet(STATE_STOPPED) == STATE_STARTED) {
+            workerThread.interrupt();
+
+            boolean interrupted = false;
+            while (workerThread.isAlive()) {
+                try {
+                    workerThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The loop of the timer thread.
+     */
+    private void work() {
+        startTime = System.nanoTime();
+
+        while (state.get() == STATE_STARTED) {
+            if (timeoutCount.get() == 0) {
+                LockSupport.park(this);
+
+                // The wheel is empty, so it is safe to start a new round instead of catching up with the ticks
+                // that passed while parking.
+                startTime = System.nanoTime();
+                tick = 0;
+                continue;
+            }
+
+            long deadline = startTime + (tick + 1) * tickDuration;
+            long waitTime;
+            while ((waitTime = deadline - System.nanoTime()) > 0 && state.get() == STATE_STARTED)
+                LockSupport.parkNanos(this, waitTime);
+
+            removeCancelled();
+            transferPending();
+
+            Bucket bucket = wheel[(int) (tick & mask)];
+            bucket.expire();
+            tick++;
+        }
+    }
+
+    /**
+     * Remove the cancelled timeouts from their buckets.
+     */
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelledQueue.poll()) != null) {
+            // If the bucket is null, the timeout is still pending, and it will be dropped while transferring it.
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+        }
+    }
+
+    /**
+     * Put the new timeouts into their buckets.
+     */
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pendingQueue.poll()) != null) {
+            if (timeout.state.get() != Timeout.STATE_INIT) {
+                timeoutCount.decrementAndGet();
+                continue;
+            }
+
+            long calculated = (timeout.deadline - startTime) / tickDuration;
+            long ticks = Math.max(calculated, tick);
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Lazily created shared instance.
+     */
+    private static class DefaultHolder {
+        private static final HashedWheelTimer INSTANCE = new HashedWheelTimer();
+    }
+
+    /**
+     * A doubly linked list of timeouts that is only accessed by the timer thread.
+     */
+    private final class Bucket {
+        private @Nullable Timeout head;
+
+        private @Nullable Timeout tail;
+
+        void add(@NotNull Timeout timeout) {
+            timeout.bucket = this;
+
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                assert tail != null;
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        /**
+         * Run the timeouts that are due, and count down the rounds of the others.
+         */
+        void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+
+                timeout = next;
+            }
+        }
+
+        void remove(@NotNull Timeout timeout) {
+            if (timeout.prev != null)
+                timeout.prev.next = timeout.next;
+            if (timeout.next != null)
+                timeout.next.prev = timeout.prev;
+            if (timeout == head)
+                head = timeout.next;
+            if (timeout == tail)
+                tail = timeout.prev;
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            timeoutCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * The handle for a scheduled task.
+     */
+    public final class Timeout {
+        private static final int STATE_INIT = 0;
+
+        private static final int STATE_CANCELLED = 1;
+
+        private static final int STATE_EXPIRED = 2;
+
+        private final @NotNull Runnable task;
+
+        private final long deadline;
+
+        private final @NotNull AtomicInteger state = new AtomicInteger(STATE_INIT);
+
+        private long remainingRounds;
+
+        private @Nullable Bucket bucket;
+
+        private @Nullable Timeout next;
+
+        private @Nullable Timeout prev;
+
+        private Timeout(@NotNull Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel the task if it hasn't run yet.
+         *
+         * @return True if the task will not run, or false if it has already run or been cancelled.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(STATE_INIT, STATE_CANCELLED))
+                return false;
+
+            cancelledQueue.add(this);
+            return true;
+        }
+
+        /**
+         * Run the task unless it was cancelled.
+         */
+        private void expire() {
+            if (!state.compareAndSet(STATE_INIT, STATE_EXPIRED))
+                return;
+
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.log(Level.WARNING, "A timer task failed", e);
+            }
+        }
+
+        /**
+         * Whether the task has been cancelled.
+         *
+         * @return True if cancelled.
+         */
+        public boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        /**
+         * Whether the task has run.
+         *
+         * @return True if expired.
+         */
+        public boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+    }
+}
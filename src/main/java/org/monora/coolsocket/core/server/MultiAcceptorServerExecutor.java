@@ -0,0 +1,331 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.CoolSocket;
+import org.monora.coolsocket.core.config.ConfigFactory;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * A server executor that accepts connections on multiple threads and configures the client sockets on a separate
+ * pool so that the accepting threads only accept.
+ * <p>
+ * When the server socket has {@link StandardSocketOptions#SO_REUSEPORT} enabled (see
+ * {@link org.monora.coolsocket.core.config.DefaultConfigFactory#setReusePort(boolean)}), each additional accepting
+ * thread gets its own server socket bound to the same address, and the system distributes the connections among them.
+ * Otherwise, all the accepting threads share the same server socket.
+ * <p>
+ * The additional server sockets are opened with the config factory, so they get the same backlog as the server socket.
+ * When the session is renewed with {@link CoolSocket#hotRestart()}, they are handed over to the replacing executor,
+ * which accepts from them too instead of the connections waiting in their backlogs being reset. They are closed when
+ * the session ends.
+ * <p>
+ * The accept timeouts of the server sockets are limited to {@link #ACCEPT_CHECK_INTERVAL}, so that the accepting
+ * threads of a replaced executor exit without waiting for a connection. The accepting loop ignores the timeouts.
+ * <p>
+ * The connections are counted by the connection manager only after they are configured, so an admission controller
+ * limiting concurrent connections may let a burst from an address slightly exceed its limit.
+ */
+public class MultiAcceptorServerExecutor extends DefaultServerExecutor {
+    /**
+     * The longest time in milliseconds the accepting threads wait in {@link ServerSocket#accept()} before they check
+     * whether they should stop.
+     */
+    public static final int ACCEPT_CHECK_INTERVAL = 100;
+
+    /**
+     * The number of threads accepting connections.
+     */
+    private final int acceptorCount;
+
+    /**
+     * The number of threads configuring the client sockets.
+     */
+    private final int configuratorCount;
+
+    /**
+     * Whether to open a server socket for each accepting thread when possible.
+     */
+    private final boolean reusePort;
+
+    /**
+     * The pool configuring the client sockets during a session.
+     */
+    private @Nullable ThreadPoolExecutor configuratorPool;
+
+    /**
+     * The lock for the additional server sockets, which are also reached by the replacing executor.
+     */
+    private final @NotNull Object siblingLock = new Object();
+
+    /**
+     * The additional server sockets, which are the ones handed over by the replaced executor until the session
+     * starts.
+     */
+    private @NotNull List<@NotNull ServerSocket> siblingList = new ArrayList<>();
+
+    /**
+     * The additional server sockets handed over to the replacing executor, which this one shouldn't close.
+     */
+    private @NotNull List<@NotNull ServerSocket> handedOverList = Collections.emptyList();
+
+    /**
+     * Whether the session ended, and the additional server sockets that weren't handed over were closed.
+     */
+    private boolean released;
+
+    /**
+     * Create a new instance.
+     *
+     * @param admissionController The controller that decides whether an accepted connection should be handled, or
+     *                            null to handle all of them.
+     * @param acceptorCount       The number of threads accepting connections.
+     * @param configuratorCount   The number of threads configuring the client sockets.
+     * @param reusePort           True to open a server socket for each accepting thread when the server socket
+     *                            allows it.
+     */
+    public MultiAcceptorServerExecutor(@Nullable AdmissionController admissionController, int acceptorCount,
+                                       int configuratorCount, boolean reusePort) {
+        super(admissionController);
+
+        if (acceptorCount < 1 || configuratorCount < 1)
+            throw new IllegalArgumentException("There should be at least one thread for each job.");
+
+        this.acceptorCount = acceptorCount;
+        this.configuratorCount = configuratorCount;
+        this.reusePort = reusePort;
+    }
+
+    /**
+     * Close a server socket without throwing an error.
+     *
+     * @param serverSocket To close.
+     */
+    private static void closeQuietly(@NotNull ServerSocket serverSocket) {
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Open another server socket on the same address if the given one allows it.
+     *
+     * @param coolSocket    That owns the session.
+     * @param configFactory That produced the server socket.
+     * @param serverSocket  The server socket to share the address with.
+     * @return The new server socket, or null if the address cannot be shared.
+     */
+    private static @Nullable ServerSocket openSibling(@NotNull CoolSocket coolSocket,
+                                                      @NotNull ConfigFactory configFactory,
+                                                      @NotNull ServerSocket serverSocket) {
+        try {
+            SocketAddress socketAddress = serverSocket.getLocalSocketAddress();
+            if (socketAddress == null || !serverSocket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)
+                    || !serverSocket.getOption(StandardSocketOptions.SO_REUSEPORT))
+                return null;
+
+            ServerSocket sibling = configFactory.createServer(socketAddress);
+            if (sibling.getOption(StandardSocketOptions.SO_REUSEPORT))
+                return sibling;
+
+            closeQuietly(sibling);
+            return null;
+        } catch (IOException e) {
+            coolSocket.getLogger().log(Level.FINE, "Could not open a server socket on the same port.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Limit how long the accepting threads wait in {@link ServerSocket#accept()}, so that they see that they should
+     * stop without waiting for a connection.
+     *
+     * @param coolSocket   That owns the session.
+     * @param serverSocket To limit.
+     */
+    private static void limitAcceptTimeout(@NotNull CoolSocket coolSocket, @NotNull ServerSocket serverSocket) {
+        try {
+            int timeout = serverSocket.getSoTimeout();
+            if (timeout == 0 || timeout > ACCEPT_CHECK_INTERVAL)
+                serverSocket.setSoTimeout(ACCEPT_CHECK_INTERVAL);
+        } catch (IOException e) {
+            coolSocket.getLogger().log(Level.FINE, "Could not limit the accept timeout.", e);
+        }
+    }
+
+    /**
+     * Take the additional server sockets for the session, reusing the ones handed over by the replaced executor, and
+     * opening the rest.
+     *
+     * @param coolSocket    That owns the session.
+     * @param configFactory That produced the server socket.
+     * @param serverSocket  The server socket of the session.
+     * @param count         The number of server sockets to take.
+     * @return The server sockets, which may be fewer than requested if no more can be opened.
+     */
+    private @NotNull List<@NotNull ServerSocket> acquireSiblings(@NotNull CoolSocket coolSocket,
+                                                                 @NotNull ConfigFactory configFactory,
+                                                                 @NotNull ServerSocket serverSocket, int count) {
+        synchronized (siblingLock) {
+            List<ServerSocket> acquiredList = new ArrayList<>(count);
+
+            for (ServerSocket sibling : siblingList) {
+                if (acquiredList.size() < count && !sibling.isClosed())
+                    acquiredList.add(sibling);
+                else {
+                    // Fewer accepting threads than before, so nothing would accept from this one.
+                    closeQuietly(sibling);
+                }
+            }
+
+            while (acquiredList.size() < count) {
+                ServerSocket opened = openSibling(coolSocket, configFactory, serverSocket);
+                if (opened == null)
+                    break;
+
+                acquiredList.add(opened);
+            }
+
+            siblingList = acquiredList;
+            return acquiredList;
+        }
+    }
+
+    /**
+     * Close the additional server sockets taken for the session, except for the ones handed over to the replacing
+     * executor.
+     */
+    private void releaseSiblings() {
+        synchronized (siblingLock) {
+            released = true;
+
+            for (ServerSocket sibling : siblingList) {
+                if (!handedOverList.contains(sibling))
+                    closeQuietly(sibling);
+            }
+        }
+    }
+
+    /**
+     * Give the additional server sockets to the executor replacing this one, so that it accepts from them too, and
+     * they are not closed when this one exits.
+     *
+     * @return The server sockets that are handed over.
+     */
+    private @NotNull List<@NotNull ServerSocket> handOverSiblings() {
+        synchronized (siblingLock) {
+            if (released)
+                return Collections.emptyList();
+
+            handedOverList = new ArrayList<>(siblingList);
+            return handedOverList;
+        }
+    }
+
+    @Override
+    public void takeOver(@NotNull ServerExecutor previousExecutor) {
+        if (!reusePort || !(previousExecutor instanceof MultiAcceptorServerExecutor))
+            return;
+
+        List<ServerSocket> handedOverList = ((MultiAcceptorServerExecutor) previousExecutor).handOverSiblings();
+
+        synchronized (siblingLock) {
+            siblingList = new ArrayList<>(handedOverList);
+        }
+    }
+
+    @Override
+    protected void handleAccepted(@NotNull CoolSocket coolSocket, @NotNull ConfigFactory configFactory,
+                                  @NotNull ConnectionManager connectionManager, @NotNull Socket socket) {
+        ThreadPoolExecutor pool = configuratorPool;
+        if (pool == null)
+            throw new IllegalStateException("The executor is not in a session.");
+
+        pool.execute(() -> {
+            try {
+                super.handleAccepted(coolSocket, configFactory, connectionManager, socket);
+            } catch (Exception e) {
+                coolSocket.getLogger().log(Level.FINE, "Could not configure the client socket.", e);
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onSession(@NotNull CoolSocket coolSocket, @NotNull ConfigFactory configFactory,
+                          @NotNull ConnectionManager connectionManager, @NotNull ServerSocket serverSocket) {
+        // When the configurators fall behind, the accepting threads configure the sockets themselves which slows
+        // down accepting instead of piling up unconfigured sockets. Unlike CallerRunsPolicy, this also covers the
+        // connections a replaced executor accepts after its pool shuts down, which would otherwise be dropped.
+        configuratorPool = new ThreadPoolExecutor(configuratorCount, configuratorCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(configuratorCount * 64), (runnable, executor) -> runnable.run());
+
+        List<ServerSocket> siblingList = reusePort ? acquireSiblings(coolSocket, configFactory, serverSocket,
+                acceptorCount - 1) : Collections.emptyList();
+        List<Thread> acceptorList = new ArrayList<>();
+
+        // The accepting threads are stopped with interrupts, which don't wake them from accept().
+        limitAcceptTimeout(coolSocket, serverSocket);
+        for (ServerSocket sibling : siblingList)
+            limitAcceptTimeout(coolSocket, sibling);
+
+        try {
+            for (int i = 1; i < acceptorCount; i++) {
+                final ServerSocket acceptorSocket = i <= siblingList.size() ? siblingList.get(i - 1) : serverSocket;
+
+                Thread thread = new Thread(() -> acceptLoop(coolSocket, configFactory, connectionManager,
+                        acceptorSocket), "CoolSocket Acceptor " + i);
+                acceptorList.add(thread);
+                thread.start();
+            }
+
+            acceptLoop(coolSocket, configFactory, connectionManager, serverSocket);
+        } finally {
+            for (Thread thread : acceptorList)
+                thread.interrupt();
+
+            releaseSiblings();
+
+            // The threads see the interrupt within the accept check interval, or after handling a connection.
+            boolean interrupted = false;
+            for (Thread thread : acceptorList) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+
+            // The connection manager may be closed once this returns, so the accepted connections should reach it.
+            configuratorPool.shutdown();
+            while (!configuratorPool.isTerminated()) {
+                try {
+                    configuratorPool.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The factory producing {@link MultiAcceptorServerExecutor} instances.
+ */
+public class MultiAcceptorServerExecutorFactory extends DefaultServerExecutorFactory {
+    /**
+     * The number of threads accepting connections.
+     */
+    private final int acceptorCount;
+
+    /**
+     * The number of threads configuring the client sockets.
+     */
+    private final int configuratorCount;
+
+    /**
+     * Whether to open a server socket for each accepting thread when possible.
+     */
+    private boolean reusePort = true;
+
+    /**
+     * Create a new instance.
+     *
+     * @param acceptorCount     The number of threads accepting connections.
+     * @param configuratorCount The number of threads configuring the client sockets.
+     */
+    public MultiAcceptorServerExecutorFactory(int acceptorCount, int configuratorCount) {
+        if (acceptorCount < 1 || configuratorCount < 1)
+            throw new IllegalArgumentException("There should be at least one thread for each job.");
+
+        this.acceptorCount = acceptorCount;
+        this.configuratorCount = configuratorCount;
+    }
+
+    @Override
+    public @NotNull ServerExecutor createServerExecutor() {
+        return new MultiAcceptorServerExecutor(getAdmissionController(), acceptorCount, configuratorCount,
+                reusePort);
+    }
+
+    /**
+     * Set whether each accepting thread should get its own server socket when the server socket has
+     * {@link java.net.StandardSocketOptions#SO_REUSEPORT} enabled. When disabled, or when it is not possible, the
+     * accepting threads share the same server socket.
+     *
+     * @param reusePort True to open a server socket for each accepting thread when possible.
+     */
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+}
@@ -0,0 +1,216 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.session.PreparedMessage;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Function;
+
+/**
+ * Keeps the prepared replies to the requests that are answered with the same data every time, so that they are framed
+ * once and sent with {@link org.monora.coolsocket.core.session.Channel#writeAll(PreparedMessage)}.
+ * <p>
+ * The replies are looked up by the bytes of their requests. When there are too many of them, or their payloads take
+ * too much memory, the least recently used ones are removed.
+ */
+public class PreparedMessageCache {
+    /**
+     * The value that disables a limit.
+     */
+    public static final long UNLIMITED = 0;
+
+    /**
+     * The replies in the order they were last used, the least recent first.
+     */
+    private final @NotNull LinkedHashMap<@NotNull Key, @NotNull PreparedMessage> messageMap =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The number of replies to keep.
+     */
+    private final int maxEntries;
+
+    /**
+     * The total payload length of the replies to keep.
+     */
+    private final long maxLength;
+
+    /**
+     * The total payload length of the replies.
+     */
+    private long length;
+
+    /**
+     * The number of lookups that found a reply.
+     */
+    private long hitCount;
+
+    /**
+     * The number of lookups that didn't find a reply.
+     */
+    private long missCount;
+
+    /**
+     * Create a new instance.
+     *
+     * @param maxEntries The number of replies to keep, or {@link #UNLIMITED}.
+     * @param maxLength  The total payload length of the replies to keep, or {@link #UNLIMITED}.
+     */
+    public PreparedMessageCache(int maxEntries, long maxLength) {
+        if (maxEntries < 0 || maxLength < 0)
+            throw new IllegalArgumentException("The limits cannot be negative numbers.");
+
+        this.maxEntries = maxEntries;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Get the reply to the given request.
+     *
+     * @param request The bytes of the request.
+     * @return The reply, or null if there is none.
+     */
+    public synchronized @Nullable PreparedMessage get(byte @NotNull [] request) {
+        PreparedMessage message = messageMap.get(new Key(request));
+        if (message == null)
+            missCount++;
+        else
+            hitCount++;
+
+        return message;
+    }
+
+    /**
+     * Get the reply to the given request, preparing it if there is none.
+     * <p>
+     * The reply is prepared outside the lock, so two threads asking for the same reply at once may both prepare it.
+     *
+     * @param request  The bytes of the request.
+     * @param function To prepare the reply with.
+     * @return The reply.
+     */
+    public @NotNull PreparedMessage get(byte @NotNull [] request,
+                                        @NotNull Function<byte @NotNull [], @NotNull PreparedMessage> function) {
+        PreparedMessage message = get(request);
+        if (message == null) {
+            message = function.apply(request);
+            put(request, message);
+        }
+
+        return message;
+    }
+
+    /**
+     * Keep the reply to the given request, replacing the existing one.
+     * <p>
+     * A reply longer than the total payload length limit is not kept, since it would remove all the others and then
+     * itself. The existing reply is still removed, so that it isn't given in place of the new one.
+     *
+     * @param request The bytes of the request. This is copied, so it can be reused.
+     * @param message The reply.
+     * @return True if the reply is kept.
+     */
+    public synchronized boolean put(byte @NotNull [] request, @NotNull PreparedMessage message) {
+        if (maxLength != UNLIMITED && message.length > maxLength) {
+            remove(request);
+            return false;
+        }
+
+        PreparedMessage previous = messageMap.put(new Key(request.clone()), message);
+        if (previous != null)
+            length -= previous.length;
+
+        length += message.length;
+        removeEldest();
+        return true;
+    }
+
+    /**
+     * Remove the reply to the given request.
+     *
+     * @param request The bytes of the request.
+     * @return The removed reply, or null if there was none.
+     */
+    public synchronized @Nullable PreparedMessage remove(byte @NotNull [] request) {
+        PreparedMessage message = messageMap.remove(new Key(request));
+        if (message != null)
+            length -= message.length;
+
+        return message;
+    }
+
+    /**
+     * Remove all the replies.
+     */
+    public synchronized void clear() {
+        messageMap.clear();
+        length = 0;
+    }
+
+    /**
+     * @return The number of replies.
+     */
+    public synchronized int size() {
+        return messageMap.size();
+    }
+
+    /**
+     * @return The total payload length of the replies.
+     */
+    public synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * @return The number of lookups that found a reply.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of lookups that didn't find a reply.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Remove the least recently used replies until the limits are met.
+     */
+    private void removeEldest() {
+        Iterator<PreparedMessage> iterator = messageMap.values().iterator();
+        while (iterator.hasNext() && ((maxEntries != UNLIMITED && messageMap.size() > maxEntries)
+                || (maxLength != UNLIMITED && length > maxLength))) {
+            length -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * The bytes of a request compared by their content.
+     */
+    private static final class Key {
+        private final byte @NotNull [] bytes;
+
+        private final int hashCode;
+
+        Key(byte @NotNull [] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(bytes, ((Key) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
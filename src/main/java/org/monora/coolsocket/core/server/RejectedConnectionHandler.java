@@ -0,0 +1,25 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.monora.coolsocket.core.CoolSocket;
+import org.monora.coolsocket.core.session.Channel;
+
+import java.io.IOException;
+
+/**
+ * This class decides what happens to a client connection when the {@link ConnectionManager} cannot take it, e.g.,
+ * when all the worker threads are busy and the queue is full, or when the manager is shutting down.
+ * <p>
+ * This is invoked on the thread that handed the connection over (usually the thread accepting connections), so it
+ * should return as soon as possible. Whatever happens, the channel will be closed after this returns.
+ */
+public interface RejectedConnectionHandler {
+    /**
+     * Called when a client connection is rejected.
+     *
+     * @param coolSocket The calling CoolSocket instance.
+     * @param channel    That was rejected.
+     * @throws IOException If an IO error occurs while answering the client.
+     */
+    void onRejected(@NotNull CoolSocket coolSocket, @NotNull Channel channel) throws IOException;
+}
@@ -29,4 +29,33 @@ public interface ServerExecutor {
      */
     void onSession(@NotNull CoolSocket coolSocket, @NotNull ConfigFactory configFactory,
                    @NotNull ConnectionManager connectionManager, @NotNull ServerSocket serverSocket) throws Exception;
+
+    /**
+     * Take over what should outlive the executor that is being replaced by this one for the same server socket when
+     * the session is renewed. This is called before {@link #onSession}, while the previous executor is still
+     * accepting.
+     *
+     * @param previousExecutor The executor being replaced.
+     * @see CoolSocket#hotRestart()
+     */
+    default void takeOver(@NotNull ServerExecutor previousExecutor) {
+    }
+
+    /**
+     * The number of connections this executor has accepted, including the rejected ones.
+     *
+     * @return The accepted connection count, or 0 if the implementation doesn't keep count.
+     */
+    default long getAcceptedCount() {
+        return 0;
+    }
+
+    /**
+     * The number of connections this executor has accepted but closed before handing them to the connection manager.
+     *
+     * @return The rejected connection count, or 0 if the implementation doesn't keep count.
+     */
+    default long getRejectedCount() {
+        return 0;
+    }
 }
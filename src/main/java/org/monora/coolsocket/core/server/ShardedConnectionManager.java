@@ -0,0 +1,199 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.CoolSocket;
+import org.monora.coolsocket.core.session.Channel;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.StreamSupport;
+
+/**
+ * A connection manager that spreads the connections over independent connection managers (shards), each with its own
+ * registry and worker pool, so that they don't contend for the same locks and queues.
+ * <p>
+ * The operations that concern all the connections, such as {@link #closeAll()}, are applied to every shard.
+ */
+public class ShardedConnectionManager implements ConnectionManager {
+    /**
+     * Assign the connections to the shards in turns.
+     */
+    public static final int SHARD_BY_ROUND_ROBIN = 1;
+
+    /**
+     * Assign the connections to the shards by their remote addresses, so the connections from the same address end up
+     * in the same shard.
+     */
+    public static final int SHARD_BY_ADDRESS = 2;
+
+    /**
+     * The shards.
+     */
+    private final @NotNull ConnectionManager @NotNull [] shards;
+
+    /**
+     * How the connections are assigned to the shards.
+     */
+    private final int shardingMethod;
+
+    /**
+     * The counter used for round-robin assignment.
+     */
+    private final @NotNull AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * Create a new instance.
+     *
+     * @param shards         The connection managers to spread the connections over.
+     * @param shardingMethod How the connections are assigned to the shards.
+     * @see #SHARD_BY_ROUND_ROBIN
+     * @see #SHARD_BY_ADDRESS
+     */
+    public ShardedConnectionManager(@NotNull List<@NotNull ConnectionManager> shards, int shardingMethod) {
+        if (shards.isEmpty())
+            throw new IllegalArgumentException("There should be at least one shard.");
+
+        if (shardingMethod != SHARD_BY_ROUND_ROBIN && shardingMethod != SHARD_BY_ADDRESS)
+            throw new IllegalArgumentException("Unknown sharding method: " + shardingMethod);
+
+        this.shards = shards.toArray(new ConnectionManager[0]);
+        this.shardingMethod = shardingMethod;
+    }
+
+    /**
+     * Close the connections of all the shards at the same time.
+     */
+    @Override
+    public void closeAll() {
+        if (shards.length == 1) {
+            shards[0].closeAll();
+            return;
+        }
+
+        List<Thread> threadList = new ArrayList<>(shards.length);
+        for (ConnectionManager shard : shards) {
+            Thread thread = new Thread(shard::closeAll, "CoolSocket Shard Closer");
+            threadList.add(thread);
+            thread.start();
+        }
+
+        boolean interrupted = false;
+        for (Thread thread : threadList) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    @Override
+    public void handleClient(@NotNull CoolSocket coolSocket, @NotNull Channel channel) {
+        ConnectionManager shard;
+
+        if (shardingMethod == SHARD_BY_ADDRESS)
+            shard = shardOf(channel.getSocket().getInetAddress());
+        else
+            shard = shards[Math.floorMod(nextShard.getAndIncrement(), shards.length)];
+
+        shard.handleClient(coolSocket, channel);
+    }
+
+    @Override
+    public @NotNull List<@NotNull Channel> getActiveConnectionList() {
+        List<Channel> list = new ArrayList<>();
+        for (ConnectionManager shard : shards)
+            list.addAll(shard.getActiveConnectionList());
+        return list;
+    }
+
+    @Override
+    public @NotNull Iterable<@NotNull Channel> getActiveConnections() {
+        return () -> Arrays.stream(shards)
+                .flatMap(shard -> StreamSupport.stream(shard.getActiveConnections().spliterator(), false))
+                .iterator();
+    }
+
+    @Override
+    public int getActiveConnectionCount() {
+        int count = 0;
+        for (ConnectionManager shard : shards)
+            count += shard.getActiveConnectionCount();
+        return count;
+    }
+
+    @Override
+    public int getConnectionCountByAddress(@NotNull InetAddress address) {
+        if (shardingMethod == SHARD_BY_ADDRESS)
+            return shardOf(address).getConnectionCountByAddress(address);
+
+        int count = 0;
+        for (ConnectionManager shard : shards)
+            count += shard.getConnectionCountByAddress(address);
+        return count;
+    }
+
+    /**
+     * Get the group with the given name from the first shard, so that the groups span all the shards.
+     *
+     * @param name The name of the group.
+     * @return The group.
+     */
+    @Override
+    public @NotNull ChannelGroup getChannelGroup(@NotNull String name) {
+        return shards[0].getChannelGroup(name);
+    }
+
+    /**
+     * Set the listener on every shard, which is invoked when the last active connection of all the shards exits.
+     *
+     * @param emptyListener The listener, or null to not report.
+     * @return True if every shard reports it.
+     */
+    @Override
+    public boolean setEmptyListener(@Nullable Runnable emptyListener) {
+        Runnable listener = emptyListener == null ? null : () -> {
+            if (getActiveConnectionCount() == 0)
+                emptyListener.run();
+        };
+
+        boolean reported = true;
+        for (ConnectionManager shard : shards)
+            reported &= shard.setEmptyListener(listener);
+        return reported;
+    }
+
+    /**
+     * @return The shards of this connection manager.
+     */
+    public @NotNull List<@NotNull ConnectionManager> getShards() {
+        return Collections.unmodifiableList(Arrays.asList(shards));
+    }
+
+    @Override
+    public void setClosingContract(boolean wait, int closingContract) {
+        for (ConnectionManager shard : shards)
+            shard.setClosingContract(wait, closingContract);
+    }
+
+    /**
+     * Find the shard for the given address.
+     *
+     * @param address The remote address.
+     * @return The shard that the connections from the address are assigned to.
+     */
+    private @NotNull ConnectionManager shardOf(@NotNull InetAddress address) {
+        int hash = address.hashCode();
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+}
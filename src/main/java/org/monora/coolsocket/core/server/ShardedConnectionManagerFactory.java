@@ -0,0 +1,64 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The factory producing {@link ShardedConnectionManager} instances.
+ */
+public class ShardedConnectionManagerFactory implements ConnectionManagerFactory {
+    /**
+     * The number of shards.
+     */
+    private final int shardCount;
+
+    /**
+     * How the connections are assigned to the shards.
+     */
+    private final int shardingMethod;
+
+    /**
+     * The factory producing the shards.
+     */
+    private final @NotNull ConnectionManagerFactory shardFactory;
+
+    /**
+     * Create a new instance that produces a shard for each available processor using the default connection manager
+     * factory.
+     */
+    public ShardedConnectionManagerFactory() {
+        this(Runtime.getRuntime().availableProcessors(), ShardedConnectionManager.SHARD_BY_ROUND_ROBIN,
+                new DefaultConnectionManagerFactory());
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param shardCount     The number of shards.
+     * @param shardingMethod How the connections are assigned to the shards.
+     * @param shardFactory   The factory producing the shards. The settings of the factory (e.g., the pool sizes)
+     *                       apply to each shard.
+     * @see ShardedConnectionManager#SHARD_BY_ROUND_ROBIN
+     * @see ShardedConnectionManager#SHARD_BY_ADDRESS
+     */
+    public ShardedConnectionManagerFactory(int shardCount, int shardingMethod,
+                                           @NotNull ConnectionManagerFactory shardFactory) {
+        if (shardCount < 1)
+            throw new IllegalArgumentException("There should be at least one shard.");
+
+        this.shardCount = shardCount;
+        this.shardingMethod = shardingMethod;
+        this.shardFactory = shardFactory;
+    }
+
+    @Override
+    public @NotNull ConnectionManager createConnectionManager() {
+        List<ConnectionManager> shardList = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++)
+            shardList.add(shardFactory.createConnectionManager());
+
+        return new ShardedConnectionManager(shardList, shardingMethod);
+    }
+}
@@ -0,0 +1,136 @@
+package org.monora.coolsocket.core.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.config.Config;
+import org.monora.coolsocket.core.session.Channel;
+import org.monora.coolsocket.core.util.TokenBucket;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rate the data is written to the clients at, in total and for each remote address.
+ * <p>
+ * The limits are applied by adding shared {@link TokenBucket} instances to the channels using
+ * {@link Channel#addRateLimiter(TokenBucket)}, so the active writers share the bandwidth fairly, and the channels that
+ * aren't writing don't take a share. An instance can be shared by many connection managers, e.g., the shards of a
+ * {@link ShardedConnectionManager}, to apply the limits to all of them together.
+ *
+ * @see DefaultConnectionManager#setTrafficShaper(TrafficShaper)
+ */
+public class TrafficShaper {
+    /**
+     * The value that disables a limit.
+     */
+    public static final long UNLIMITED = 0;
+
+    /**
+     * The number of address buckets to keep before removing the idle ones.
+     */
+    private static final int MAX_IDLE_BUCKETS = 4096;
+
+    /**
+     * The bucket shared by all the channels, or null if the total is unlimited.
+     */
+    private final @Nullable TokenBucket globalBucket;
+
+    /**
+     * The bytes per second allowed for each address.
+     */
+    private final long bytesPerSecondPerAddress;
+
+    /**
+     * The buckets shared by the channels from the same address.
+     */
+    private final @NotNull ConcurrentHashMap<@NotNull InetAddress, @NotNull TokenBucket> bucketMap =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The last time in nanoseconds the idle buckets were removed.
+     */
+    private final @NotNull AtomicLong lastCleanupTime = new AtomicLong(System.nanoTime());
+
+    /**
+     * Create a new instance.
+     *
+     * @param bytesPerSecond           The bytes per second allowed for all the channels together, or
+     *                                 {@link #UNLIMITED}.
+     * @param bytesPerSecondPerAddress The bytes per second allowed for the channels from the same address, or
+     *                                 {@link #UNLIMITED}.
+     */
+    public TrafficShaper(long bytesPerSecond, long bytesPerSecondPerAddress) {
+        if (bytesPerSecond < 0 || bytesPerSecondPerAddress < 0)
+            throw new IllegalArgumentException("The rates cannot be negative numbers.");
+
+        this.globalBucket = bytesPerSecond == UNLIMITED ? null : newBucket(bytesPerSecond);
+        this.bytesPerSecondPerAddress = bytesPerSecondPerAddress;
+    }
+
+    /**
+     * Create a bucket that allows a burst of a tenth of a second, but not less than a quantum.
+     *
+     * @param bytesPerSecond The rate.
+     * @return The bucket.
+     */
+    private static @NotNull TokenBucket newBucket(long bytesPerSecond) {
+        return new TokenBucket(bytesPerSecond, Math.max(Config.RATE_LIMIT_QUANTUM, bytesPerSecond / 10));
+    }
+
+    /**
+     * Apply the limits to the given channel.
+     *
+     * @param channel To limit.
+     */
+    public void attach(@NotNull Channel channel) {
+        if (globalBucket != null)
+            channel.addRateLimiter(globalBucket);
+
+        if (bytesPerSecondPerAddress != UNLIMITED) {
+            InetAddress address = channel.getSocket().getInetAddress();
+            if (address != null)
+                channel.addRateLimiter(getBucket(address));
+        }
+    }
+
+    /**
+     * Get the bucket for the given address.
+     *
+     * @param address The remote address.
+     * @return The bucket.
+     */
+    private @NotNull TokenBucket getBucket(@NotNull InetAddress address) {
+        TokenBucket bucket = bucketMap.get(address);
+        if (bucket == null) {
+            removeIdleBuckets();
+            bucket = bucketMap.computeIfAbsent(address, k -> newBucket(bytesPerSecondPerAddress));
+        }
+
+        return bucket;
+    }
+
+    /**
+     * @return The bucket shared by all the channels, or null if the total is unlimited.
+     */
+    public @Nullable TokenBucket getGlobalBucket() {
+        return globalBucket;
+    }
+
+    /**
+     * Remove the buckets that are full, meaning their addresses haven't written for a while, when there are too many
+     * of them. This runs at most once a second. A channel that starts writing again after its bucket is removed keeps
+     * the old bucket, so its address may briefly get twice its share.
+     */
+    private void removeIdleBuckets() {
+        long now = System.nanoTime();
+        long last = lastCleanupTime.get();
+
+        if (bucketMap.size() < MAX_IDLE_BUCKETS || now - last < TimeUnit.SECONDS.toNanos(1)
+                || !lastCleanupTime.compareAndSet(last, now))
+            return;
+
+        bucketMap.values().removeIf(TokenBucket::isFull);
+    }
+}
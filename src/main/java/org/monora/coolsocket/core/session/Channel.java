@@ -1,19 +1,34 @@
 package org.monora.coolsocket.core.session;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.monora.coolsocket.core.CoolSocket;
 import org.monora.coolsocket.core.config.Config;
+import org.monora.coolsocket.core.protocol.ProtocolException;
 import org.monora.coolsocket.core.response.*;
+import org.monora.coolsocket.core.server.HashedWheelTimer;
+import org.monora.coolsocket.core.util.TokenBucket;
 
 import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.net.Socket;
 import java.net.SocketException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import static org.monora.coolsocket.core.CoolSocket.LENGTH_UNSPECIFIED;
 import static org.monora.coolsocket.core.config.Config.DEFAULT_BUFFER_SIZE;
@@ -23,19 +38,77 @@ import static org.monora.coolsocket.core.config.Config.DEFAULT_INVERSE_EXCHANGE_
  * The wrapper that transforms messages into CoolSocket packets.
  * <p>
  * This class doesn't require a CoolSocket server to function. It can wrap any valid {@link Socket} instance.
+ * <p>
+ * An instance can be used by one reading thread and one writing thread at the same time when multichannel mode is
+ * enabled, and by one thread at a time otherwise. The control requests, e.g., {@link #cancel()}, {@link #ping()}, and
+ * {@link #closeMutually()}, can be made from any thread, and they are seen by the next state exchange without locking.
  *
  * @see Channel#wrap(Socket)
  */
 public class Channel implements Closeable {
+    /**
+     * The request to cancel the next operation.
+     */
+    private static final int REQUEST_CANCEL = 1;
+
+    /**
+     * The request to close the channel with the next operation.
+     */
+    private static final int REQUEST_CLOSE = 1 << 1;
+
+    /**
+     * The request to close the channel when the next operation begins.
+     */
+    private static final int REQUEST_IDLE_CLOSE = 1 << 2;
+
+    /**
+     * The request to send a ping with the next state exchange.
+     */
+    private static final int REQUEST_PING = 1 << 3;
+
+    /**
+     * The request to pause the writer at the next state exchange of a read operation.
+     */
+    private static final int REQUEST_PAUSE = 1 << 4;
+
+    /**
+     * The request to let the paused writer continue.
+     */
+    private static final int REQUEST_RESUME = 1 << 5;
+
+    /**
+     * The time in nanoseconds a paused reader waits before checking whether the socket is closed.
+     */
+    private static final long PAUSE_CHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final VarHandle NEXT_OPERATION_ID;
+
+    private static final VarHandle PENDING_REQUESTS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            NEXT_OPERATION_ID = lookup.findVarHandle(Channel.class, "nextOperationId", int.class);
+            PENDING_REQUESTS = lookup.findVarHandle(Channel.class, "pendingRequests", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     /**
      * The wrapped socket.
      */
     private final Socket socket;
 
     /**
-     * The output stream of the socket.
+     * The input stream of the socket.
      */
-    private final OutputStream outputStream;
+    private final InputStream inputStream;
+
+    /**
+     * The output stream of the socket, which collects the writes when corked.
+     */
+    private final CorkedOutputStream outputStream;
 
     /**
      * The writable channel for the socket.
@@ -53,36 +126,111 @@ public class Channel implements Closeable {
     private int defaultBufferSize = DEFAULT_BUFFER_SIZE;
 
     /**
-     * The next descriptor id.
+     * The id of the last operation. The writers increment it, and in the single channel mode, the readers set it to the
+     * id the remote sends, so that both sides agree on the next one. Accessed with {@link #NEXT_OPERATION_ID}.
      */
-    private int nextOperationId = 0;
+    private volatile int nextOperationId = 0;
 
     /**
      * The protocol version reported by the remote. This will not be available until the first communication.
      */
-    private int protocolVersion;
+    private volatile int protocolVersion;
+
+    /**
+     * The bits of the requests that need sending to the remote, e.g., {@link #REQUEST_CANCEL}. Accessed with
+     * {@link #PENDING_REQUESTS}, so that a request made from another thread is neither lost nor sent twice.
+     */
+    private volatile int pendingRequests;
 
     /**
-     * Whether there is a pending cancellation request that needs sending to the remote.
+     * The thread waiting for {@link #resume()} after pausing the writer, or null if there is none.
      */
-    private boolean pendingCancellation;
+    private volatile @Nullable Thread pausedThread;
 
     /**
-     * Whether there is a pending close request that needs sending to the remote.
+     * Whether the cancellations are sent and watched for as soon as possible rather than at the exchange points.
      */
-    private boolean pendingClose;
+    private volatile boolean urgentCancellation;
+
+    /**
+     * The TCP_NODELAY option of the socket before it was corked.
+     */
+    private boolean tcpNoDelayBeforeCork;
 
     /**
      * Whether multichannel mode is enabled. When enabled, read and write pipelines are separated.
      */
-    private boolean multichannel = false;
+    private volatile boolean multichannel = false;
 
     /**
      * Whether this channel is roaming.
      * <p>
      * If roaming, it will not be closed when the server goes out of scope and the channel will need closing explicitly.
      */
-    private boolean roaming = false;
+    private volatile boolean roaming = false;
+
+    /**
+     * The filter deciding whether the incoming operations should be read, or null to read all of them.
+     */
+    private volatile @Nullable HeaderFilter headerFilter;
+
+    /**
+     * The store telling where the resumable transfers continue from, or null to receive them from the start.
+     */
+    private volatile @Nullable ResumeStore resumeStore;
+
+    /**
+     * The inverse exchange point that has been sent to the remote ahead of the next read, or 0 if there is none. This
+     * is only used by the reading thread.
+     */
+    private int preparedInverseExchangePoint;
+
+    /**
+     * The last time in nanoseconds data was read from or written to this channel.
+     */
+    private volatile long lastActivityTime = System.nanoTime();
+
+    /**
+     * The number of read/write operations that have started but not completed yet.
+     */
+    private final @NotNull AtomicInteger activeDescriptorCount = new AtomicInteger();
+
+    /**
+     * The interval in nanoseconds to send pings at, or 0 to only send them when requested.
+     */
+    private volatile long pingInterval;
+
+    /**
+     * The last time in nanoseconds a ping was sent.
+     */
+    private long lastPingTime = System.nanoTime();
+
+    /**
+     * The time in nanoseconds the unanswered ping was sent at, or 0 if there is none.
+     */
+    private volatile long pingSentTime;
+
+    /**
+     * The smoothed round-trip time in nanoseconds, or 0 if it hasn't been measured yet.
+     */
+    private volatile long smoothedRtt;
+
+    /**
+     * The round-trip time variance in nanoseconds.
+     */
+    private volatile long rttVariance;
+
+    /**
+     * The limiters that the written data is paid for with, one token for each byte. This is replaced as a whole when
+     * changed, so the writers can read it without locking.
+     */
+    private volatile @NotNull TokenBucket @NotNull [] rateLimiters = new TokenBucket[0];
+
+    /**
+     * The buffer the data without an accessible array is copied into when it cannot be written to the
+     * {@link SocketChannel} of the socket, created on first use. Only the writing thread uses it.
+     */
+    private byte @Nullable [] quantumBuffer;
 
     /**
      * Create a new instance.
@@ -93,9 +241,10 @@ public class Channel implements Closeable {
      */
     Channel(@NotNull Socket socket, @NotNull InputStream inputStream, @NotNull OutputStream outputStream) {
         this.socket = socket;
-        this.outputStream = outputStream;
+        this.inputStream = inputStream;
+        this.outputStream = new CorkedOutputStream(outputStream);
         this.readableByteChannel = Channels.newChannel(inputStream);
-        this.writableByteChannel = Channels.newChannel(outputStream);
+        this.writableByteChannel = Channels.newChannel(this.outputStream);
     }
 
     /**
@@ -143,6 +292,10 @@ public class Channel implements Closeable {
      */
     @Override
     public void close() throws IOException {
+        // Send what was held back, unless a writer is stuck, which is probably why this is being closed.
+        if (outputStream.hasPending())
+            outputStream.tryDrain();
+
         socket.close();
     }
 
@@ -156,20 +309,111 @@ public class Channel implements Closeable {
     public void closeMutually() throws IOException {
         if (getSocket().isClosed())
             throw new IOException("Socket is already closed.");
-        pendingClose = true;
+        request(REQUEST_CLOSE);
+    }
+
+    /**
+     * Schedule the closing of the socket by reporting to the remote when the next read/write operation begins.
+     * <p>
+     * Unlike {@link #closeMutually()}, this lets the ongoing operations complete.
+     *
+     * @throws IOException If the socket is already closed.
+     * @see #isBusy()
+     */
+    public void closeMutuallyWhenIdle() throws IOException {
+        if (getSocket().isClosed())
+            throw new IOException("Socket is already closed.");
+        request(REQUEST_IDLE_CLOSE);
     }
 
     /**
      * Schedule the cancellation of the next read/write operation.
      * <p>
-     * This will need another read/write operation to report the request to the remote.
+     * This will need another read/write operation to report the request to the remote. A reader usually reports it
+     * at the next exchange point, which may be many chunks away, unless urgent cancellation is enabled.
      *
      * @throws IOException If the socket is already closed.
+     * @see #setUrgentCancellation(boolean)
      */
     public void cancel() throws IOException {
         if (getSocket().isClosed())
             throw new IOException("Socket is closed.");
-        pendingCancellation = true;
+        request(REQUEST_CANCEL);
+    }
+
+    /**
+     * Schedule a ping to measure the round-trip time.
+     * <p>
+     * The ping is sent with the next state exchange of a read/write operation, and it is skipped if the remote
+     * doesn't support it, or when multichannel mode is enabled.
+     *
+     * @throws IOException If the socket is already closed.
+     * @see #getSmoothedRtt()
+     * @see #setPingInterval(long)
+     */
+    public void ping() throws IOException {
+        if (getSocket().isClosed())
+            throw new IOException("Socket is closed.");
+        request(REQUEST_PING);
+    }
+
+    /**
+     * Ask the writer to stop sending data at the next state exchange of the current or next read operation.
+     * <p>
+     * The reader sends the request at its next exchange point, and then waits in its read call until
+     * {@link #resume()} is called from another thread, or the operation is cancelled or closed. The writer waits for
+     * the reader without a timeout, while the socket buffers between them stay empty, so a receiver writing to a slow
+     * disk can throttle a transfer without breaking it.
+     * <p>
+     * This is skipped if the remote doesn't support it, or when multichannel mode is enabled.
+     *
+     * @throws IOException If the socket is already closed.
+     * @see ProtocolRequest#Pause
+     */
+    public void pause() throws IOException {
+        if (getSocket().isClosed())
+            throw new IOException("Socket is closed.");
+        request(REQUEST_PAUSE);
+    }
+
+    /**
+     * Let the writer continue after {@link #pause()}, or drop the pause request if it hasn't been sent yet.
+     */
+    public void resume() {
+        if (takeRequest(REQUEST_PAUSE))
+            return;
+
+        request(REQUEST_RESUME);
+
+        Thread thread = pausedThread;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Tell the remote that this side is too busy to serve it in place of beginning the next operation.
+     * <p>
+     * Whether the remote is about to read or write, its pending or next call to {@link #readBegin} or
+     * {@link #writeBegin} will throw {@link ServerBusyException} carrying the given hint. The channel should be closed
+     * afterwards since no operation can follow this.
+     * <p>
+     * This is not seen by a remote that is writing in multichannel mode, and it cannot be sent after
+     * {@link #readPrepare()} since the remote may have started writing already.
+     *
+     * @param retryAfter The time in milliseconds the remote should wait before retrying.
+     * @throws IOException If an IO error occurs.
+     * @see Flags#FLAG_BUSY
+     */
+    public void sendBusy(long retryAfter) throws IOException {
+        if (retryAfter < 0)
+            throw new IllegalArgumentException("The time to retry after cannot be a negative number.");
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate(Long.BYTES * 2 + Integer.BYTES);
+        byteBuffer.putLong(Flags.FLAG_BUSY)
+                .putInt(ProtocolRequest.Busy.ordinal())
+                .putLong(retryAfter)
+                .flip();
+        writableByteChannel.write(byteBuffer);
     }
 
     /**
@@ -179,20 +423,68 @@ public class Channel implements Closeable {
      * @return True if there is a pending cancellation request.
      */
     public boolean isWaitingCancellation(boolean clear) {
-        if (pendingCancellation) {
-            if (clear) pendingCancellation = false;
-            return true;
-        }
-        return false;
+        return clear ? takeRequest(REQUEST_CANCEL) : hasRequest(REQUEST_CANCEL);
+    }
+
+    /**
+     * Add a request to send to the remote.
+     *
+     * @param request The request bit.
+     */
+    private void request(int request) {
+        PENDING_REQUESTS.getAndBitwiseOr(this, request);
+    }
+
+    /**
+     * Check whether any of the given requests is pending.
+     *
+     * @param requests The request bits.
+     * @return True if any of them is pending.
+     */
+    private boolean hasRequest(int requests) {
+        return (pendingRequests & requests) != 0;
+    }
+
+    /**
+     * Clear the pause request along with an earlier resume request, which is no longer meaningful.
+     *
+     * @return True if the pause request was pending and this call cleared it.
+     */
+    private boolean takePauseRequest() {
+        return ((int) PENDING_REQUESTS.getAndBitwiseAnd(this, ~(REQUEST_PAUSE | REQUEST_RESUME)) & REQUEST_PAUSE) != 0;
+    }
+
+    /**
+     * Clear the given request, so that only one thread sends it.
+     *
+     * @param request The request bit.
+     * @return True if the request was pending and this call cleared it.
+     */
+    private boolean takeRequest(int request) {
+        return ((int) PENDING_REQUESTS.getAndBitwiseAnd(this, ~request) & request) != 0;
+    }
+
+    /**
+     * Whether there is a read/write operation that has started but not completed yet.
+     * <p>
+     * An operation completes when all of its data is moved, or when it fails. Waiting for an operation to begin, e.g.,
+     * in {@link #readBegin()}, doesn't count.
+     *
+     * @return True if busy.
+     */
+    public boolean isBusy() {
+        return activeDescriptorCount.get() > 0;
     }
 
     /**
      * Whether there is a pending close request.
      *
      * @return If there is one.
+     * @see #closeMutually()
+     * @see #closeMutuallyWhenIdle()
      */
     public boolean isWaitingToCloseMutually() {
-        return pendingClose;
+        return hasRequest(REQUEST_CLOSE | REQUEST_IDLE_CLOSE);
     }
 
     /**
@@ -217,6 +509,111 @@ public class Channel implements Closeable {
         this.defaultBufferSize = defaultBufferSize;
     }
 
+    /**
+     * The interval that the pings are sent at.
+     *
+     * @return The interval in milliseconds, or 0 if the pings are only sent when requested.
+     * @see #setPingInterval(long)
+     */
+    public long getPingInterval() {
+        return TimeUnit.NANOSECONDS.toMillis(pingInterval);
+    }
+
+    /**
+     * Set the interval that the pings are sent at.
+     * <p>
+     * The pings are sent with the state exchanges of the read/write operations, so this is the minimum time between
+     * two pings rather than an exact period.
+     *
+     * @param pingInterval The interval in milliseconds, or 0 to only send the pings when requested.
+     * @see #ping()
+     */
+    public void setPingInterval(long pingInterval) {
+        if (pingInterval < 0)
+            throw new IllegalArgumentException("Ping interval cannot be a negative number.");
+        this.pingInterval = TimeUnit.MILLISECONDS.toNanos(pingInterval);
+    }
+
+    /**
+     * The smoothed round-trip time measured using the pings as described in RFC 6298.
+     * <p>
+     * Note that the remote answers a ping when it reads the state it came with, so the measurement includes the delay
+     * of the remote in moving on with the operation.
+     *
+     * @return The round-trip time in nanoseconds, or 0 if it hasn't been measured yet.
+     * @see #ping()
+     */
+    public long getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    /**
+     * The variance of the round-trip time measured using the pings as described in RFC 6298.
+     *
+     * @return The variance in nanoseconds, or 0 if it hasn't been measured yet.
+     * @see #getSmoothedRtt()
+     */
+    public long getRttVariance() {
+        return rttVariance;
+    }
+
+    /**
+     * The time to wait for the remote before considering it unresponsive, calculated from the round-trip time
+     * measurements as described in RFC 6298. This can be used to tune the socket timeouts.
+     *
+     * @return The timeout in milliseconds, which is at least 1 second, or 0 if the round-trip time hasn't been
+     * measured yet.
+     */
+    public long getSuggestedTimeout() {
+        long rtt = smoothedRtt;
+        if (rtt == 0)
+            return 0;
+
+        return Math.max(1000, TimeUnit.NANOSECONDS.toMillis(rtt + 4 * rttVariance));
+    }
+
+    /**
+     * Whether a ping has been waiting for its answer for longer than {@link #getSuggestedTimeout()}.
+     *
+     * @return True if the remote looks unresponsive.
+     */
+    public boolean isPeerUnresponsive() {
+        long sentTime = pingSentTime;
+        long timeout = getSuggestedTimeout();
+        return sentTime != 0 && timeout != 0
+                && System.nanoTime() - sentTime > TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Whether a ping should be sent with the current state exchange.
+     *
+     * @return True if it should be sent.
+     */
+    private boolean isPingDue() {
+        if (multichannel || protocolVersion < Config.PROTOCOL_VERSION_PING)
+            return false;
+
+        long interval = pingInterval;
+        return hasRequest(REQUEST_PING) || (interval > 0 && System.nanoTime() - lastPingTime >= interval);
+    }
+
+    /**
+     * Update the round-trip time measurements with a new sample.
+     *
+     * @param sample The round-trip time in nanoseconds.
+     */
+    private void recordRtt(long sample) {
+        sample = Math.max(1, sample);
+
+        if (smoothedRtt == 0) {
+            smoothedRtt = sample;
+            rttVariance = sample / 2;
+        } else {
+            rttVariance = (3 * rttVariance + Math.abs(smoothedRtt - sample)) / 4;
+            smoothedRtt = (7 * smoothedRtt + sample) / 8;
+        }
+    }
+
     /**
      * The protocol version reported by remote.
      *
@@ -226,6 +623,147 @@ public class Channel implements Closeable {
         return protocolVersion;
     }
 
+    /**
+     * The time that passed since data was last read from or written to this channel.
+     *
+     * @return The idle time in milliseconds.
+     * @see #getLastActivityTime()
+     */
+    public long getIdleTime() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivityTime);
+    }
+
+    /**
+     * The last time data was read from or written to this channel.
+     *
+     * @return The time in nanoseconds as returned by {@link System#nanoTime()}.
+     */
+    public long getLastActivityTime() {
+        return lastActivityTime;
+    }
+
+    /**
+     * Set the filter deciding whether the incoming operations should be read.
+     * <p>
+     * The filter sees the header of each operation before the writer sends any data. When it rejects one, the
+     * pending read throws a {@link RejectedException} here, and so does the pending write on the remote.
+     *
+     * @param headerFilter The filter, or null to read every operation.
+     * @see #readBegin(int, int, long, HeaderFilter)
+     */
+    public void setHeaderFilter(@Nullable HeaderFilter headerFilter) {
+        this.headerFilter = headerFilter;
+    }
+
+    /**
+     * Set the store telling where the incoming resumable transfers should continue from.
+     *
+     * @param resumeStore The store, or null to receive every transfer from the start.
+     * @see #writeBeginResumable(long, long, long, long)
+     */
+    public void setResumeStore(@Nullable ResumeStore resumeStore) {
+        this.resumeStore = resumeStore;
+    }
+
+    /**
+     * Limit the rate the data is written at using the given bucket, one token for each byte.
+     * <p>
+     * A bucket can be shared by many channels, e.g., the ones from the same address, in which case the writers take
+     * turns in the order they asked for their share. Since a writer asks for at most
+     * {@link Config#RATE_LIMIT_QUANTUM} bytes at a time, large writes cannot starve small ones, which is the same
+     * fairness deficit round-robin gives with the quantum as its deficit. When there are no limiters, the writes are
+     * not affected.
+     *
+     * @param rateLimiter To limit the writes with.
+     * @see #removeRateLimiter(TokenBucket)
+     */
+    public synchronized void addRateLimiter(@NotNull TokenBucket rateLimiter) {
+        TokenBucket[] current = rateLimiters;
+        for (TokenBucket limiter : current) {
+            if (limiter == rateLimiter)
+                return;
+        }
+
+        TokenBucket[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = rateLimiter;
+        rateLimiters = next;
+    }
+
+    /**
+     * Remove a rate limiter added with {@link #addRateLimiter(TokenBucket)}.
+     *
+     * @param rateLimiter To remove.
+     * @return True if it was removed, or false if it wasn't added.
+     */
+    public synchronized boolean removeRateLimiter(@NotNull TokenBucket rateLimiter) {
+        TokenBucket[] current = rateLimiters;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] != rateLimiter)
+                continue;
+
+            TokenBucket[] next = new TokenBucket[current.length - 1];
+            System.arraycopy(current, 0, next, 0, i);
+            System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+            rateLimiters = next;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return The rate limiters of this channel.
+     * @see #addRateLimiter(TokenBucket)
+     */
+    public @NotNull List<@NotNull TokenBucket> getRateLimiters() {
+        return Collections.unmodifiableList(Arrays.asList(rateLimiters));
+    }
+
+    /**
+     * Write the data to the socket at the rate the limiters allow.
+     *
+     * @param bytes  To write.
+     * @param offset Where the data starts.
+     * @param length The length of the data.
+     * @throws IOException If an IO error occurs, or the thread is interrupted while waiting.
+     */
+    private void writeLimited(byte[] bytes, int offset, int length) throws IOException {
+        TokenBucket[] limiters = rateLimiters;
+
+        if (limiters.length == 0) {
+            outputStream.write(bytes, offset, length);
+            return;
+        }
+
+        while (length > 0) {
+            int quantum = Math.min(length, Config.RATE_LIMIT_QUANTUM);
+            long wait = 0;
+
+            for (TokenBucket limiter : limiters)
+                wait = Math.max(wait, limiter.reserve(quantum));
+
+            if (wait > 0) {
+                long deadline = System.nanoTime() + wait;
+                while ((wait = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    if (Thread.currentThread().isInterrupted())
+                        throw new InterruptedIOException("Interrupted while waiting for the rate limiter.");
+                }
+            }
+
+            outputStream.write(bytes, offset, quantum);
+            offset += quantum;
+            length -= quantum;
+        }
+    }
+
+    /**
+     * Record that data has just been moved.
+     */
+    private void markActive() {
+        lastActivityTime = System.nanoTime();
+    }
+
     /**
      * The socket instance used for messaging.
      *
@@ -260,6 +798,106 @@ public class Channel implements Closeable {
         this.multichannel = multichannel;
     }
 
+    /**
+     * Whether urgent cancellation is enabled.
+     *
+     * @return True if enabled.
+     * @see #setUrgentCancellation(boolean)
+     */
+    public boolean isUrgentCancellation() {
+        return urgentCancellation;
+    }
+
+    /**
+     * Set whether the cancellations should reach the remote within a chunk.
+     * <p>
+     * When enabled, a reader sends the cancellation with the next chunk it reads instead of waiting for the exchange
+     * point, and a writer checks whether one has arrived before writing each chunk. The reader keeps receiving the
+     * data that is already on its way until the writer acknowledges it, and the channel remains usable afterwards.
+     * <p>
+     * Both sides should enable this to get the shortest delay. A writer that doesn't watch for it still sees it at its
+     * next exchange point. This has no effect when the remote is too old or when multichannel mode is enabled, and the
+     * writer cannot see it early on a socket that cannot tell the readable byte count, e.g., an SSL socket.
+     *
+     * @param urgentCancellation True to enable.
+     * @see #cancel()
+     */
+    public void setUrgentCancellation(boolean urgentCancellation) {
+        this.urgentCancellation = urgentCancellation;
+    }
+
+    /**
+     * See {@link #cork(int, long)} for more info.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    public void cork() throws IOException {
+        cork(DEFAULT_BUFFER_SIZE, Config.DEFAULT_CORK_FLUSH_DELAY);
+    }
+
+    /**
+     * Collect the writes and send them together rather than one small packet at a time.
+     * <p>
+     * The collected data is sent when the given length of it is reached, when the oldest of it has waited for the
+     * flush delay, when {@link #flush()} is called, or before a read that would wait for the remote, so an operation
+     * never waits for an answer to something that hasn't been sent. The end of a write operation doesn't force the
+     * data out, so many small operations in multichannel mode can share packets, and a single operation sends its
+     * header, states and data together. The delay is watched for with a millisecond precision.
+     * <p>
+     * Since the writes are now coalesced by the channel, the Nagle's algorithm of the socket is disabled until
+     * {@link #uncork()} is called.
+     *
+     * @param bufferSize The length of the data to collect before sending it.
+     * @param flushDelay The time in microseconds the data can wait before it is sent.
+     * @throws IOException If an IO error occurs.
+     * @see #isCorked()
+     */
+    public void cork(int bufferSize, long flushDelay) throws IOException {
+        if (bufferSize <= 0 || flushDelay < 0)
+            throw new IllegalArgumentException("The buffer size or the flush delay is not valid.");
+
+        if (!outputStream.isCorked()) {
+            tcpNoDelayBeforeCork = socket.getTcpNoDelay();
+            socket.setTcpNoDelay(true);
+        }
+
+        outputStream.cork(bufferSize, TimeUnit.MICROSECONDS.toNanos(flushDelay));
+    }
+
+    /**
+     * Send the collected data, and stop collecting the writes.
+     *
+     * @throws IOException If an IO error occurs.
+     * @see #cork(int, long)
+     */
+    public void uncork() throws IOException {
+        if (!outputStream.isCorked())
+            return;
+
+        outputStream.uncork();
+        socket.setTcpNoDelay(tcpNoDelayBeforeCork);
+    }
+
+    /**
+     * Whether the writes are collected before they are sent.
+     *
+     * @return True if corked.
+     * @see #cork(int, long)
+     */
+    public boolean isCorked() {
+        return outputStream.isCorked();
+    }
+
+    /**
+     * Send the data collected while corked now.
+     *
+     * @throws IOException If an IO error occurs.
+     * @see #cork(int, long)
+     */
+    public void flush() throws IOException {
+        outputStream.drain();
+    }
+
     /**
      * Whether this channel is roaming.
      *
@@ -282,54 +920,213 @@ public class Channel implements Closeable {
      *
      * @param roaming True to enable roaming.
      */
-    public void setRoaming(boolean roaming) {
-        this.roaming = roaming;
+    public void setRoaming(boolean roaming) {
+        this.roaming = roaming;
+    }
+
+    /**
+     * See {@link #readPrepare(int)} for more info.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    public void readPrepare() throws IOException {
+        readPrepare(DEFAULT_INVERSE_EXCHANGE_POINT);
+    }
+
+    /**
+     * Send the part of the next read operation that the remote waits for before it starts writing.
+     * <p>
+     * The reader speaks first, so the remote doesn't send anything for the next operation until the read begins. After
+     * this, it can send its header right away, and whoever waits for the socket to become readable will see it, e.g.,
+     * {@link org.monora.coolsocket.core.server.ChannelSelector}. The next {@link #readBegin} will use the given
+     * inverse exchange point instead of its own.
+     * <p>
+     * This does nothing when multichannel mode is enabled, or when there is already a prepared read.
+     *
+     * @param inverseExchangePoint After how many operations to exchange pending requests.
+     * @throws IOException If an IO error occurs.
+     */
+    public void readPrepare(int inverseExchangePoint) throws IOException {
+        if (inverseExchangePoint < 1)
+            throw new IllegalArgumentException("Inverse exchange point should be a positive number.");
+
+        if (multichannel || preparedInverseExchangePoint != 0)
+            return;
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate(Integer.BYTES);
+        byteBuffer.putInt(inverseExchangePoint).flip();
+        writableByteChannel.write(byteBuffer);
+        preparedInverseExchangePoint = inverseExchangePoint;
+    }
+
+    /**
+     * See {@link #readBegin(int, int)} for more info.
+     *
+     * @return To read from.
+     * @throws IOException If an IO error occurs.
+     */
+    public @NotNull ReadableDescriptor readBegin() throws IOException {
+        return readBegin(DEFAULT_BUFFER_SIZE, DEFAULT_INVERSE_EXCHANGE_POINT);
+    }
+
+    /**
+     * Begin reading from remote.
+     * <p>
+     * The consecutive reads should be performed using {@link ReadableDescriptor#read()}.
+     * <p>
+     * The remote should be ready to call {@link #writeBegin} for this to work.
+     *
+     * @param bufferSize           The size of the buffer.
+     * @param inverseExchangePoint After how many operations to exchange pending requests.
+     * @return To read from.
+     * @throws IOException If an IO error occurs while preparing the read operation.
+     * @see #writeBegin
+     */
+    public @NotNull ReadableDescriptor readBegin(int bufferSize, int inverseExchangePoint) throws IOException {
+        return readBegin(bufferSize, inverseExchangePoint, 0);
     }
 
     /**
-     * See {@link #readBegin(int, int)} for more info.
+     * Begin reading from remote with a deadline.
+     * <p>
+     * If the whole data isn't read before the deadline, the channel will be closed, and the pending or next call will
+     * throw a {@link DeadlineExceededException}.
      *
+     * @param bufferSize           The size of the buffer.
+     * @param inverseExchangePoint After how many operations to exchange pending requests.
+     * @param deadline             The time in milliseconds the operation is allowed to take, or 0 for no limit.
      * @return To read from.
-     * @throws IOException If an IO error occurs.
+     * @throws IOException If an IO error occurs while preparing the read operation.
+     * @see Descriptor#clearDeadline()
      */
-    public @NotNull ReadableDescriptor readBegin() throws IOException {
-        return readBegin(DEFAULT_BUFFER_SIZE, DEFAULT_INVERSE_EXCHANGE_POINT);
+    public @NotNull ReadableDescriptor readBegin(int bufferSize, int inverseExchangePoint, long deadline)
+            throws IOException {
+        return readBegin(bufferSize, inverseExchangePoint, deadline, headerFilter);
     }
 
     /**
-     * Begin reading from remote.
+     * Begin reading from remote with a deadline, and refuse the operation if the given filter rejects its header.
      * <p>
-     * The consecutive reads should be performed using {@link ReadableDescriptor#read()}.
-     * <p>
-     * The remote should be ready to call {@link #writeBegin} for this to work.
+     * The rejection is sent before the writer sends any data, so both sides throw a {@link RejectedException} right
+     * away, and the channel can be used for the next operation.
      *
      * @param bufferSize           The size of the buffer.
      * @param inverseExchangePoint After how many operations to exchange pending requests.
+     * @param deadline             The time in milliseconds the operation is allowed to take, or 0 for no limit.
+     * @param headerFilter         The filter to check the header with, or null to accept every operation. This is used
+     *                             instead of the one set with {@link #setHeaderFilter(HeaderFilter)}.
      * @return To read from.
-     * @throws IOException If an IO error occurs while preparing the read operation.
-     * @see #writeBegin
+     * @throws IOException If an IO error occurs while preparing the read operation, or the operation is rejected.
      */
-    public @NotNull ReadableDescriptor readBegin(int bufferSize, int inverseExchangePoint) throws IOException {
+    public @NotNull ReadableDescriptor readBegin(int bufferSize, int inverseExchangePoint, long deadline,
+                                                 @Nullable HeaderFilter headerFilter) throws IOException {
         ByteBuffer byteBuffer = ByteBuffer.allocate(bufferSize);
+        Deadline timer = deadline > 0 ? new Deadline(deadline) : null;
+        ReadableDescriptor descriptor = null;
+
+        try {
+            if (multichannel) {
+                inverseExchangePoint = DEFAULT_INVERSE_EXCHANGE_POINT;
+            } else if (preparedInverseExchangePoint != 0) {
+                inverseExchangePoint = preparedInverseExchangePoint;
+                preparedInverseExchangePoint = 0;
+            } else {
+                byteBuffer.putInt(inverseExchangePoint).flip();
+                writableByteChannel.write(byteBuffer);
+            }
 
-        if (multichannel) {
-            inverseExchangePoint = DEFAULT_INVERSE_EXCHANGE_POINT;
-        } else {
-            byteBuffer.putInt(inverseExchangePoint).flip();
-            writableByteChannel.write(byteBuffer);
+            readOrFail(byteBuffer, Long.BYTES * 2 + Integer.BYTES);
+            skipUrgentCancellation(byteBuffer);
+
+            Flags flags = new Flags(byteBuffer.getLong());
+            if (flags.busy()) {
+                byteBuffer.getInt();
+                throw new ServerBusyException("The remote is busy.", byteBuffer.getLong());
+            }
+
+            descriptor = new ReadableDescriptor(flags, byteBuffer.getInt(), byteBuffer.getLong(),
+                    inverseExchangePoint, byteBuffer);
+            descriptor.deadline = timer;
+
+            if (!multichannel)
+                nextOperationId = descriptor.operationId;
+
+            descriptor.readState();
+            if (!multichannel) {
+                if (headerFilter != null)
+                    descriptor.rejectionReason = headerFilter.onHeader(this, flags, descriptor.totalLength);
+
+                descriptor.writeState();
+
+                if (flags.resumable() && protocolVersion >= Config.PROTOCOL_VERSION_RESUME)
+                    descriptor.answerResume(resumeStore);
+            }
+
+            descriptor.began = true;
+            descriptor.onProgress();
+            return descriptor;
+        } catch (IOException e) {
+            if (descriptor != null)
+                throw descriptor.onFailure(e);
+            else if (timer == null)
+                throw e;
+
+            timer.cancel();
+            throw timer.translate(e);
+        } catch (RuntimeException e) {
+            // A failing header filter or resume store shouldn't leave the channel busy.
+            if (descriptor != null)
+                descriptor.finish();
+            else if (timer != null)
+                timer.cancel();
+
+            throw e;
         }
+    }
+
+    /**
+     * Skip the urgent cancellations that arrived after the operations they cancelled were complete, and read the same
+     * length of data in their place.
+     *
+     * @param byteBuffer The buffer holding the beginning of the operation that has been read with
+     *                   {@link #readOrFail(ByteBuffer, int)}.
+     * @throws IOException If an IO error occurs.
+     */
+    private void skipUrgentCancellation(@NotNull ByteBuffer byteBuffer) throws IOException {
+        int length = byteBuffer.limit();
+
+        while (byteBuffer.getInt(0) == Config.URGENT_CANCELLATION_MARKER) {
+            byteBuffer.position(Integer.BYTES * 2);
+            byteBuffer.compact();
+            byteBuffer.limit(length);
 
-        readOrFail(byteBuffer, Long.BYTES * 2 + Integer.BYTES);
+            while (byteBuffer.hasRemaining())
+                if (readSocket(byteBuffer) == -1)
+                    throw new SocketException("Socket is closed or could not read " + length + " data in length.");
 
-        ReadableDescriptor descriptor = new ReadableDescriptor(new Flags(byteBuffer.getLong()), byteBuffer.getInt(), byteBuffer.getLong(),
-                inverseExchangePoint, byteBuffer);
+            byteBuffer.flip();
+        }
+    }
 
-        nextOperationId = descriptor.operationId;
+    /**
+     * Read from the socket, sending the data collected while corked first if the read would wait for the remote.
+     * <p>
+     * A direct buffer is read into from the {@link SocketChannel} of the socket when there is one, so that the data
+     * isn't copied through the heap. Note that the read timeout of the socket doesn't apply to such reads.
+     *
+     * @param byteBuffer To read into.
+     * @return The length of the data read, or -1 if the socket has reached its end.
+     * @throws IOException If an IO error occurs.
+     */
+    private int readSocket(@NotNull ByteBuffer byteBuffer) throws IOException {
+        if (outputStream.hasPending() && inputStream.available() == 0)
+            outputStream.drain();
 
-        descriptor.readState();
-        if (!multichannel) descriptor.writeState();
+        SocketChannel socketChannel = socket.getChannel();
+        if (byteBuffer.isDirect() && socketChannel != null)
+            return socketChannel.read(byteBuffer);
 
-        return descriptor;
+        return readableByteChannel.read(byteBuffer);
     }
 
     /**
@@ -346,13 +1143,14 @@ public class Channel implements Closeable {
         byteBuffer.limit(length);
 
         while (byteBuffer.hasRemaining())
-            if (readableByteChannel.read(byteBuffer) == -1)
+            if (readSocket(byteBuffer) == -1)
                 break;
 
         if (byteBuffer.hasRemaining())
             throw new SocketException("Socket is closed or could not read " + length + " data in length.");
 
         byteBuffer.flip();
+        markActive();
     }
 
     /**
@@ -377,14 +1175,38 @@ public class Channel implements Closeable {
         int len;
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         WritableByteChannel writableByteChannel = Channels.newChannel(outputStream);
-        ReadableDescriptor descriptor = readBegin();
+        ReadableDescriptor descriptor;
+
+        if (maxLength > 0) {
+            // Refuse the data that is known to be too long before it is sent.
+            final HeaderFilter filter = headerFilter;
+            final long[] refusedLength = {LENGTH_UNSPECIFIED};
+
+            try {
+                descriptor = readBegin(DEFAULT_BUFFER_SIZE, DEFAULT_INVERSE_EXCHANGE_POINT, 0,
+                        (channel, flags, totalLength) -> {
+                            if (!flags.chunked() && totalLength > maxLength) {
+                                refusedLength[0] = totalLength;
+                                return "The length of the data exceeds the maximum length.";
+                            }
+
+                            return filter == null ? null : filter.onHeader(channel, flags, totalLength);
+                        });
+            } catch (RejectedException e) {
+                if (refusedLength[0] == LENGTH_UNSPECIFIED)
+                    throw e;
+
+                throw new SizeOverflowException(e.reason, maxLength, refusedLength[0]);
+            }
+        } else
+            descriptor = readBegin();
 
         do {
             len = descriptor.read();
 
             if (maxLength > 0 && descriptor.consumedLength > maxLength)
-                throw new SizeOverflowException("The length of the data exceeds the maximum length.", maxLength,
-                        descriptor.consumedLength);
+                throw descriptor.onFailure(new SizeOverflowException("The length of the data exceeds the maximum " +
+                        "length.", maxLength, descriptor.consumedLength));
 
             if (len > 0)
                 writableByteChannel.write(descriptor.byteBuffer);
@@ -419,32 +1241,130 @@ public class Channel implements Closeable {
      * @see #writeBegin
      */
     public @NotNull WritableDescriptor writeBegin(long flags, long totalLength) throws IOException {
+        return writeBegin(flags, totalLength, 0);
+    }
+
+    /**
+     * Begin writing to remote with a deadline.
+     * <p>
+     * If the whole data isn't written before the deadline, the channel will be closed, and the pending or next call
+     * will throw a {@link DeadlineExceededException}.
+     *
+     * @param flags       The flags valid for this operation. See {@link Flags}.
+     * @param totalLength The total length of the operation or {@link CoolSocket#LENGTH_UNSPECIFIED} if unknown.
+     * @param deadline    The time in milliseconds the operation is allowed to take, or 0 for no limit.
+     * @return The descriptor to write to.
+     * @throws IOException If an IO error occurs while preparing the read operation.
+     * @see Descriptor#clearDeadline()
+     */
+    public @NotNull WritableDescriptor writeBegin(long flags, long totalLength, long deadline) throws IOException {
+        return beginWrite(flags & ~Flags.FLAG_RESUMABLE, totalLength, deadline, 0);
+    }
+
+    /**
+     * Begin a write operation that can continue where an earlier one with the same transfer id left off.
+     * <p>
+     * The reader looks up the transfer id with its {@link ResumeStore}, and the offset it returns is available with
+     * {@link Descriptor#startOffset()} on both sides. The writer should skip that much of its data before writing the
+     * rest, e.g., by seeking its file. If the remote doesn't support resuming, the offset is 0.
+     *
+     * @param flags       The flags valid for this operation. See {@link Flags}.
+     * @param totalLength The total length of the data, which should be the same for every attempt.
+     * @param deadline    The time in milliseconds the operation is allowed to take, or 0 for no limit.
+     * @param transferId  The id that stays the same for every attempt to send the same data.
+     * @return The descriptor to write to.
+     * @throws IOException              If an IO error occurs, or the remote sends an invalid offset.
+     * @throws IllegalArgumentException If the data is chunked.
+     * @throws IllegalStateException    If multichannel mode is enabled.
+     * @see #writeAll(InputStream, long, long)
+     * @see #writeAll(FileChannel, long)
+     */
+    public @NotNull WritableDescriptor writeBeginResumable(long flags, long totalLength, long deadline,
+                                                           long transferId) throws IOException {
+        if ((flags & Flags.FLAG_DATA_CHUNKED) != 0 || totalLength < 0)
+            throw new IllegalArgumentException("A resumable transfer should have a known length.");
+
+        if (multichannel)
+            throw new IllegalStateException("A transfer cannot be resumed when multichannel mode is enabled.");
+
+        return beginWrite(flags | Flags.FLAG_RESUMABLE, totalLength, deadline, transferId);
+    }
+
+    /**
+     * Begin writing to remote.
+     *
+     * @param flags       The flags valid for this operation.
+     * @param totalLength The total length of the operation or {@link CoolSocket#LENGTH_UNSPECIFIED} if unknown.
+     * @param deadline    The time in milliseconds the operation is allowed to take, or 0 for no limit.
+     * @param transferId  The id of the transfer if it is resumable.
+     * @return The descriptor to write to.
+     * @throws IOException If an IO error occurs while preparing the read operation.
+     */
+    private @NotNull WritableDescriptor beginWrite(long flags, long totalLength, long deadline, long transferId)
+            throws IOException {
         ByteBuffer byteBuffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
-        int operationId = ++nextOperationId;
+        Deadline timer = deadline > 0 ? new Deadline(deadline) : null;
+        int operationId = (int) NEXT_OPERATION_ID.getAndAdd(this, 1) + 1;
 
         int inverseExchangePoint;
+        WritableDescriptor descriptor = null;
 
-        if (multichannel) {
-            inverseExchangePoint = DEFAULT_INVERSE_EXCHANGE_POINT;
-        } else {
-            readOrFail(byteBuffer, Integer.BYTES);
-            inverseExchangePoint = byteBuffer.getInt();
-            byteBuffer.clear();
-        }
+        try {
+            if (multichannel) {
+                inverseExchangePoint = DEFAULT_INVERSE_EXCHANGE_POINT;
+            } else {
+                readOrFail(byteBuffer, Integer.BYTES);
+                inverseExchangePoint = byteBuffer.getInt();
 
-        WritableDescriptor descriptor = new WritableDescriptor(new Flags(flags), operationId, totalLength, inverseExchangePoint, byteBuffer);
-        byteBuffer.putLong(flags)
-                .putInt(operationId)
-                .putLong(totalLength)
-                .flip();
+                // The remote cancelled the previous operation after it was complete.
+                while (inverseExchangePoint == Config.URGENT_CANCELLATION_MARKER) {
+                    readOrFail(byteBuffer, Integer.BYTES * 2);
+                    byteBuffer.position(Integer.BYTES);
+                    inverseExchangePoint = byteBuffer.getInt();
+                }
 
-        writableByteChannel.write(byteBuffer);
-        byteBuffer.clear();
+                // A valid inverse exchange point is positive, so this is the first half of a busy header.
+                if (inverseExchangePoint < 0) {
+                    readOrFail(byteBuffer, Integer.BYTES * 2 + Long.BYTES);
+                    byteBuffer.position(Integer.BYTES * 2);
+                    throw new ServerBusyException("The remote is busy.", byteBuffer.getLong());
+                }
+
+                byteBuffer.clear();
+            }
+
+            descriptor = new WritableDescriptor(new Flags(flags), operationId, totalLength,
+                    inverseExchangePoint, byteBuffer);
+            descriptor.deadline = timer;
+
+            byteBuffer.putLong(flags)
+                    .putInt(operationId)
+                    .putLong(totalLength)
+                    .flip();
+
+            writableByteChannel.write(byteBuffer);
+            byteBuffer.clear();
+
+            descriptor.writeState();
+            if (!multichannel) {
+                descriptor.readState();
 
-        descriptor.writeState();
-        if (!multichannel) descriptor.readState();
+                if (descriptor.flags.resumable() && protocolVersion >= Config.PROTOCOL_VERSION_RESUME)
+                    descriptor.requestResume(transferId);
+            }
 
-        return descriptor;
+            descriptor.began = true;
+            descriptor.onProgress();
+            return descriptor;
+        } catch (IOException e) {
+            if (descriptor != null)
+                throw descriptor.onFailure(e);
+            else if (timer == null)
+                throw e;
+
+            timer.cancel();
+            throw timer.translate(e);
+        }
     }
 
     /**
@@ -476,6 +1396,176 @@ public class Channel implements Closeable {
         descriptor.writeEnd();
     }
 
+    /**
+     * Write the given prepared message.
+     *
+     * @param message To write.
+     * @throws IOException If an IO error occurs.
+     * @see #writeAll(PreparedMessage, long)
+     */
+    public void writeAll(@NotNull PreparedMessage message) throws IOException {
+        writeAll(message, 0);
+    }
+
+    /**
+     * Write the given prepared message within the given time.
+     *
+     * @param message  To write.
+     * @param deadline The time in milliseconds the operation is allowed to take, or 0 for no limit.
+     * @throws IOException If an IO error occurs, or the deadline passes.
+     */
+    public void writeAll(@NotNull PreparedMessage message, long deadline) throws IOException {
+        WritableDescriptor descriptor = writeBegin(message.flags, message.length, deadline);
+
+        try {
+            descriptor.writePrepared(message);
+            descriptor.onProgress();
+        } catch (IOException e) {
+            throw descriptor.onFailure(e);
+        }
+    }
+
+    /**
+     * Forward the operation being read from a channel to another channel as it arrives.
+     * <p>
+     * The operation is written with the same flags, and with the same length unless it is chunked. Each chunk is written
+     * as soon as it is read from the same buffer. When both sockets have a {@link SocketChannel}, the source doesn't
+     * have a read timeout, and the target is neither corked nor rate-limited, that buffer is a direct one, so the data
+     * doesn't pass through the heap. Otherwise, the data is read into the heap buffer of the source, and a corked target
+     * copies it into its cork buffer. A target that is corked or rate-limited after the relay starts copies each chunk
+     * through a reusable heap buffer of its own.
+     * <p>
+     * A cancellation or a mutual close on either side is passed on to the other. When the target fails, the source is
+     * asked to cancel, and its data is read and dropped until the writer there sees the request, so enabling urgent
+     * cancellation on both ends of the source shortens this. The channels in multichannel mode, which cannot carry the
+     * requests, are closed instead.
+     *
+     * @param in  The operation to forward.
+     * @param out The channel to forward to. Its remote should be ready to call {@link #readBegin()}.
+     * @return The length of the data that was forwarded.
+     * @throws IOException If an IO error occurs on either side, or either side cancels or closes.
+     */
+    public static long relay(@NotNull ReadableDescriptor in, @NotNull Channel out) throws IOException {
+        Channel source = in.channel();
+        boolean direct = source.socket.getChannel() != null && out.socket.getChannel() != null
+                && source.socket.getSoTimeout() == 0 && !out.outputStream.isCorked() && out.rateLimiters.length == 0;
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(in.byteBuffer.capacity()) : in.byteBuffer;
+
+        WritableDescriptor descriptor;
+        try {
+            // A zero-length operation has nothing left, but reports no data available either.
+            descriptor = out.writeBegin(in.flags.flags,
+                    in.flags.chunked() ? 0 : Math.max(0, in.totalLength - in.consumedLength));
+        } catch (IOException e) {
+            throw abortRelaySource(in, e);
+        }
+
+        long length = 0;
+        while (in.hasAvailable()) {
+            int len;
+            try {
+                len = in.read(buffer);
+            } catch (IOException e) {
+                throw abortRelayTarget(descriptor, e);
+            }
+
+            if (len <= 0)
+                continue;
+
+            try {
+                descriptor.write(buffer);
+            } catch (IOException e) {
+                throw abortRelaySource(in, e);
+            }
+
+            length += len;
+        }
+
+        try {
+            descriptor.writeEnd();
+        } catch (IOException e) {
+            throw abortRelaySource(in, e);
+        }
+
+        return length;
+    }
+
+    /**
+     * Pass the failure of the target of a relay on to its source.
+     *
+     * @param in The operation being forwarded.
+     * @param e  The error the target failed with.
+     * @return The error to throw.
+     */
+    private static @NotNull IOException abortRelaySource(@NotNull ReadableDescriptor in, @NotNull IOException e) {
+        Channel source = in.channel();
+        boolean close = e instanceof ClosedException;
+
+        if (!in.hasAvailable())
+            return e;
+
+        if (source.multichannel) {
+            closeQuietly(source);
+            return e;
+        }
+
+        source.request(close ? REQUEST_CLOSE : REQUEST_CANCEL);
+
+        try {
+            while (in.hasAvailable())
+                in.read();
+
+            // The source ended before it saw the request, which shouldn't cancel its next operation.
+            if (!close)
+                source.takeRequest(REQUEST_CANCEL);
+        } catch (IOException ignored) {
+        }
+
+        return e;
+    }
+
+    /**
+     * Pass the failure of the source of a relay on to its target.
+     *
+     * @param descriptor The operation the data is forwarded to.
+     * @param e          The error the source failed with.
+     * @return The error to throw.
+     */
+    private static @NotNull IOException abortRelayTarget(@NotNull WritableDescriptor descriptor,
+                                                         @NotNull IOException e) {
+        Channel target = descriptor.channel();
+
+        // The request can only go with the end of the operation when the writer is the one to send the state there.
+        if (target.multichannel || descriptor.transactionCount == descriptor.inverseExchangePoint) {
+            closeQuietly(target);
+            return e;
+        }
+
+        target.request(e instanceof ClosedException ? REQUEST_CLOSE : REQUEST_CANCEL);
+
+        try {
+            descriptor.writeEnd();
+        } catch (CancelledException ignored) {
+            return e;
+        } catch (IOException ignored) {
+        }
+
+        closeQuietly(target);
+        return e;
+    }
+
+    /**
+     * Close a channel without throwing an error.
+     *
+     * @param channel To close.
+     */
+    private static void closeQuietly(@NotNull Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
     /**
      * Write the all data read from the given input stream.
      *
@@ -502,6 +1592,103 @@ public class Channel implements Closeable {
         descriptor.writeEnd();
     }
 
+    /**
+     * Write the data read from the given input stream, skipping the part the remote has committed on an earlier
+     * attempt with the same transfer id.
+     *
+     * @param inputStream To read from, positioned at the start of the data.
+     * @param fixedSize   The exact length of data to read from the input stream.
+     * @param transferId  The id that stays the same for every attempt to send the same data.
+     * @throws IOException If an IO error occurs, or if the input stream has fewer data than requested to write.
+     * @see #writeBeginResumable(long, long, long, long)
+     */
+    public void writeAll(@NotNull InputStream inputStream, long fixedSize, long transferId) throws IOException {
+        WritableDescriptor descriptor = writeBeginResumable(0, fixedSize, 0, transferId);
+        inputStream.skipNBytes(descriptor.startOffset());
+        descriptor.write(inputStream);
+        descriptor.writeEnd();
+    }
+
+    /**
+     * Write the whole file, skipping the part the remote has committed on an earlier attempt with the same transfer
+     * id.
+     *
+     * @param fileChannel To read from. Its position is changed.
+     * @param transferId  The id that stays the same for every attempt to send the same file.
+     * @throws IOException If an IO error occurs, or if the file is shortened while it is being written.
+     * @see #writeBeginResumable(long, long, long, long)
+     */
+    public void writeAll(@NotNull FileChannel fileChannel, long transferId) throws IOException {
+        WritableDescriptor descriptor = writeBeginResumable(0, fileChannel.size(), 0, transferId);
+        fileChannel.position(descriptor.startOffset());
+        descriptor.write(Channels.newInputStream(fileChannel));
+        descriptor.writeEnd();
+    }
+
+    /**
+     * Closes the channel when an operation takes longer than it is allowed to.
+     */
+    private final class Deadline implements Runnable {
+        /**
+         * The time in milliseconds the operation is allowed to take.
+         */
+        private final long deadline;
+
+        /**
+         * The handle to cancel the timer.
+         */
+        private final @NotNull HashedWheelTimer.Timeout timeout;
+
+        /**
+         * Whether the deadline has passed.
+         */
+        private volatile boolean expired;
+
+        /**
+         * Create a new instance and start the timer.
+         *
+         * @param deadline The time in milliseconds the operation is allowed to take.
+         */
+        Deadline(long deadline) {
+            this.deadline = deadline;
+            this.timeout = HashedWheelTimer.getDefault().newTimeout(this, deadline, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Stop the timer.
+         */
+        void cancel() {
+            timeout.cancel();
+        }
+
+        /**
+         * Turn the error that an operation failed with into a {@link DeadlineExceededException} if it was caused by
+         * the deadline.
+         *
+         * @param e The error that the operation failed with.
+         * @return The error to throw.
+         */
+        @NotNull IOException translate(@NotNull IOException e) {
+            if (!expired)
+                return e;
+
+            DeadlineExceededException exception = new DeadlineExceededException("The operation did not complete in "
+                    + deadline + " milliseconds.", deadline);
+            exception.initCause(e);
+            return exception;
+        }
+
+        @Override
+        public void run() {
+            expired = true;
+
+            try {
+                close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
     /**
      * A CoolSocket packet.
      */
@@ -541,6 +1728,11 @@ public class Channel implements Closeable {
          */
         protected long consumedLength;
 
+        /**
+         * The offset the data continues from when the transfer is resumed.
+         */
+        private long startOffset;
+
         /**
          * The total length to be delivered when the operation is complete.
          * <p>
@@ -562,6 +1754,31 @@ public class Channel implements Closeable {
          */
         protected int transactionCount;
 
+        /**
+         * The deadline of this operation, or null if there is none.
+         */
+        @Nullable Deadline deadline;
+
+        /**
+         * Whether the states have been exchanged for the beginning of this operation.
+         */
+        boolean began;
+
+        /**
+         * Whether this operation has completed or failed.
+         */
+        private boolean finished;
+
+        /**
+         * The reason to send to the writer when rejecting this operation, or null to accept it.
+         */
+        @Nullable String rejectionReason;
+
+        /**
+         * Whether the reader has cancelled this operation urgently, so that it no longer writes its state.
+         */
+        boolean urgentlyCancelled;
+
         /**
          * Create a new instance.
          *
@@ -587,25 +1804,72 @@ public class Channel implements Closeable {
             this.totalLength = totalLength;
             this.inverseExchangePoint = inverseExchangePoint;
             this.byteBuffer = byteBuffer;
+
+            activeDescriptorCount.incrementAndGet();
+        }
+
+        /**
+         * Return the available data length.
+         * <p>
+         * If chunked, this will return the data length available. This will usually not reflect the whole as the
+         * data is available as much as it is read.
+         * <p>
+         * If not chunked, this will return the data length left to be consumed as a whole.
+         * <p>
+         * If this returns {@link CoolSocket#LENGTH_UNSPECIFIED}, it will mean no data available and this description
+         * is closed. You can also use {@link #hasAvailable()} to check if there is data available.
+         *
+         * @return The available data length.
+         * @see #hasAvailable()
+         */
+        public long available() {
+            return flags.chunked() ? nextAvailable : (totalLength <= consumedLength ? LENGTH_UNSPECIFIED
+                    : totalLength - consumedLength);
+        }
+
+        /**
+         * Stop the deadline of this operation, if there is one, so that it can go on without a time limit.
+         * <p>
+         * The deadline is stopped automatically when the operation completes or fails.
+         */
+        public void clearDeadline() {
+            if (deadline != null)
+                deadline.cancel();
+        }
+
+        /**
+         * Update the state after data has been moved.
+         */
+        protected void onProgress() {
+            markActive();
+
+            if (!hasAvailable())
+                finish();
+        }
+
+        /**
+         * Update the state after an operation failed.
+         *
+         * @param e The error that the operation failed with.
+         * @return The error to throw.
+         */
+        protected @NotNull IOException onFailure(@NotNull IOException e) {
+            finish();
+            return deadline == null ? e : deadline.translate(e);
         }
 
         /**
-         * Return the available data length.
-         * <p>
-         * If chunked, this will return the data length available. This will usually not reflect the whole as the
-         * data is available as much as it is read.
-         * <p>
-         * If not chunked, this will return the data length left to be consumed as a whole.
-         * <p>
-         * If this returns {@link CoolSocket#LENGTH_UNSPECIFIED}, it will mean no data available and this description
-         * is closed. You can also use {@link #hasAvailable()} to check if there is data available.
+         * Mark this operation as no longer in progress.
          *
-         * @return The available data length.
-         * @see #hasAvailable()
+         * @see #isBusy()
          */
-        public long available() {
-            return flags.chunked() ? nextAvailable : (totalLength <= consumedLength ? LENGTH_UNSPECIFIED
-                    : totalLength - consumedLength);
+        void finish() {
+            if (finished)
+                return;
+
+            finished = true;
+            activeDescriptorCount.decrementAndGet();
+            clearDeadline();
         }
 
         /**
@@ -617,6 +1881,24 @@ public class Channel implements Closeable {
             return consumedLength;
         }
 
+        /**
+         * Get the offset the data starts at. This is only larger than 0 for a resumable transfer that continues where an
+         * earlier one left off, and the data before it is not transferred.
+         *
+         * @return The offset.
+         * @see Flags#FLAG_RESUMABLE
+         */
+        public long startOffset() {
+            return startOffset;
+        }
+
+        /**
+         * @return The channel this operation belongs to.
+         */
+        @NotNull Channel channel() {
+            return Channel.this;
+        }
+
         /**
          * Check whether there is more data to come.
          *
@@ -630,10 +1912,10 @@ public class Channel implements Closeable {
         /**
          * Whether the descriptor is for zero-length data.
          *
-         * @return True if the total length of the data is known and is 0.
+         * @return True if the total length of the data is known and is 0, or if a resumed transfer has nothing left.
          */
         protected boolean isZeroLength() {
-            return !flags.chunked() && totalLength == 0;
+            return !flags.chunked() && totalLength == startOffset;
         }
 
         /**
@@ -689,6 +1971,184 @@ public class Channel implements Closeable {
             writableByteChannel.write(byteBuffer);
         }
 
+        /**
+         * Send the ping that has been announced with the state, and measure the time until its answer arrives.
+         *
+         * @throws IOException If an IO error occurs, or the remote answers with something else.
+         */
+        private void sendPing() throws IOException {
+            long sentTime = System.nanoTime();
+
+            takeRequest(REQUEST_PING);
+            lastPingTime = sentTime;
+            pingSentTime = sentTime;
+
+            byteBuffer.clear();
+            byteBuffer.putLong(sentTime).flip();
+            writableByteChannel.write(byteBuffer);
+
+            readOrFail(byteBuffer, Integer.BYTES + Long.BYTES);
+            if (ProtocolRequest.from(byteBuffer.getInt()) != ProtocolRequest.Pong || byteBuffer.getLong() != sentTime)
+                throw new ProtocolException("The remote did not answer the ping.");
+
+            recordRtt(System.nanoTime() - sentTime);
+            pingSentTime = 0;
+        }
+
+        /**
+         * Answer the ping that has been announced with the state.
+         *
+         * @throws IOException If an IO error occurs.
+         */
+        private void answerPing() throws IOException {
+            readOrFail(byteBuffer, Long.BYTES);
+            long sentTime = byteBuffer.getLong();
+
+            byteBuffer.clear();
+            byteBuffer.putInt(ProtocolRequest.Pong.ordinal())
+                    .putLong(sentTime)
+                    .flip();
+            writableByteChannel.write(byteBuffer);
+        }
+
+        /**
+         * Send the transfer id, and continue from the offset the reader answers with.
+         *
+         * @param transferId The id of the transfer.
+         * @throws IOException If an IO error occurs, or the offset is out of bounds.
+         */
+        void requestResume(long transferId) throws IOException {
+            byteBuffer.clear();
+            byteBuffer.putLong(transferId).flip();
+            writableByteChannel.write(byteBuffer);
+
+            readOrFail(byteBuffer, Long.BYTES);
+            long offset = byteBuffer.getLong();
+
+            if (offset < 0 || offset > totalLength)
+                throw new ProtocolException("The remote sent an invalid offset to resume from.");
+
+            startOffset = offset;
+            consumedLength = offset;
+        }
+
+        /**
+         * Receive the transfer id, and answer with the offset to continue from.
+         *
+         * @param resumeStore The store to look the offset up in, or null to start over.
+         * @throws IOException If an IO error occurs.
+         */
+        void answerResume(@Nullable ResumeStore resumeStore) throws IOException {
+            readOrFail(byteBuffer, Long.BYTES);
+            long transferId = byteBuffer.getLong();
+            long offset = resumeStore == null ? 0 : resumeStore.getCommittedOffset(Channel.this, transferId,
+                    totalLength);
+
+            if (offset < 0 || offset > totalLength)
+                offset = 0;
+
+            byteBuffer.clear();
+            byteBuffer.putLong(offset).flip();
+            writableByteChannel.write(byteBuffer);
+
+            startOffset = offset;
+            consumedLength = offset;
+        }
+
+        /**
+         * Wait until the paused writer is allowed to continue, and tell it so. If the operation is cancelled or closed
+         * in the meantime, the request is sent with the next state instead.
+         *
+         * @throws IOException If the socket is closed while waiting.
+         */
+        private void awaitResume() throws IOException {
+            pausedThread = Thread.currentThread();
+            try {
+                while (!hasRequest(REQUEST_RESUME | REQUEST_CANCEL | REQUEST_CLOSE)) {
+                    if (socket.isClosed())
+                        throw new SocketException("Socket closed while the operation was paused.");
+
+                    LockSupport.parkNanos(this, PAUSE_CHECK_INTERVAL);
+                }
+            } finally {
+                pausedThread = null;
+            }
+
+            if (takeRequest(REQUEST_RESUME)) {
+                byteBuffer.clear();
+                byteBuffer.putInt(operationId)
+                        .putInt(ProtocolRequest.Resume.ordinal())
+                        .flip();
+                writableByteChannel.write(byteBuffer);
+            }
+        }
+
+        /**
+         * Cancel this read operation without waiting for the exchange point.
+         *
+         * @throws IOException If an IO error occurs.
+         * @see #setUrgentCancellation(boolean)
+         */
+        void sendUrgentCancellation() throws IOException {
+            urgentlyCancelled = true;
+
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 2);
+            buffer.putInt(Config.URGENT_CANCELLATION_MARKER)
+                    .putInt(operationId)
+                    .flip();
+            writableByteChannel.write(buffer);
+        }
+
+        /**
+         * Tell the reader that its urgent cancellation has arrived in place of the state it is waiting for, and cancel
+         * this write operation.
+         *
+         * @throws IOException        If an IO error occurs.
+         * @throws CancelledException Always, after the acknowledgement is sent.
+         */
+        private void acknowledgeUrgentCancellation() throws IOException {
+            byteBuffer.clear();
+            byteBuffer.putInt(operationId)
+                    .putInt(ProtocolRequest.Cancel.ordinal())
+                    .flip();
+            writableByteChannel.write(byteBuffer);
+            throw new CancelledException("The remote cancelled this operation urgently.", true);
+        }
+
+        /**
+         * Send the reason of the rejection that has been announced with the state.
+         *
+         * @throws IOException If an IO error occurs.
+         */
+        private void sendRejection() throws IOException {
+            byte[] reason = Objects.requireNonNull(rejectionReason).getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(reason.length, Config.MAX_REJECT_REASON_LENGTH);
+
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + length);
+            buffer.putInt(length)
+                    .put(reason, 0, length)
+                    .flip();
+            writableByteChannel.write(buffer);
+        }
+
+        /**
+         * Receive the reason of the rejection that has been announced with the state.
+         *
+         * @return The reason.
+         * @throws IOException If an IO error occurs, or the reason is longer than allowed.
+         */
+        private @NotNull String receiveRejection() throws IOException {
+            readOrFail(byteBuffer, Integer.BYTES);
+            int length = byteBuffer.getInt();
+
+            if (length < 0 || length > Config.MAX_REJECT_REASON_LENGTH)
+                throw new ProtocolException("The rejection reason has an invalid length.");
+
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            readOrFail(buffer, length);
+            return new String(buffer.array(), 0, length, StandardCharsets.UTF_8);
+        }
+
         /**
          * Exchange info with the remote and perform the most suitable action.
          *
@@ -700,14 +2160,23 @@ public class Channel implements Closeable {
             ProtocolRequest protocolRequest;
 
             if (write) {
-                if (isWaitingToCloseMutually())
+                if (hasRequest(REQUEST_CLOSE) || (!began && hasRequest(REQUEST_IDLE_CLOSE)))
                     protocolRequest = ProtocolRequest.Close;
+                else if (rejectionReason != null && !began)
+                    protocolRequest = protocolVersion >= Config.PROTOCOL_VERSION_REJECT ? ProtocolRequest.Reject
+                            : ProtocolRequest.Cancel;
                 else if (isWaitingCancellation(true))
                     protocolRequest = ProtocolRequest.Cancel;
                 else if (protocolVersion == 0 && !multichannel) {
                     protocolRequest = ProtocolRequest.InfoExchange;
                     exchange = InfoExchange.ProtocolVersion;
-                } else
+                } else if (isPingDue())
+                    protocolRequest = ProtocolRequest.Ping;
+                else if (this instanceof ReadableDescriptor && !multichannel
+                        && protocolVersion >= Config.PROTOCOL_VERSION_PAUSE && hasRequest(REQUEST_PAUSE)
+                        && takePauseRequest())
+                    protocolRequest = ProtocolRequest.Pause;
+                else
                     protocolRequest = ProtocolRequest.None;
 
                 byteBuffer.clear();
@@ -718,6 +2187,16 @@ public class Channel implements Closeable {
             } else {
                 readOrFail(byteBuffer, Integer.BYTES * 2);
                 int remoteOperationId = byteBuffer.getInt();
+
+                if (remoteOperationId == Config.URGENT_CANCELLATION_MARKER) {
+                    remoteOperationId = byteBuffer.getInt();
+                    if (operationId != remoteOperationId)
+                        throw new DescriptorMismatchException("The remote description is different than ours.",
+                                this, remoteOperationId);
+
+                    acknowledgeUrgentCancellation();
+                }
+
                 protocolRequest = ProtocolRequest.from(byteBuffer.getInt());
                 if (operationId != remoteOperationId)
                     throw new DescriptorMismatchException("The remote description is different than ours.", this,
@@ -732,7 +2211,15 @@ public class Channel implements Closeable {
                     }
                     throw new ClosedException("The connection closed.", !write);
                 case Cancel:
-                    throw new CancelledException("This operation has been cancelled.", !write);
+                    if (write && rejectionReason != null && !began)
+                        throw new RejectedException("This operation has been rejected.", rejectionReason, false);
+                    throw new CancelledException("This operation has been cancelled.", !write && !urgentlyCancelled);
+                case Reject:
+                    if (write) {
+                        sendRejection();
+                        throw new RejectedException("This operation has been rejected.", rejectionReason, false);
+                    }
+                    throw new RejectedException("The remote rejected this operation.", receiveRejection(), true);
                 case InfoExchange:
                     if (write) {
                         exchangeSend(exchange);
@@ -740,6 +2227,32 @@ public class Channel implements Closeable {
                     } else
                         exchangeSend(exchangeReceive());
                     break;
+                case Ping:
+                    if (write)
+                        sendPing();
+                    else
+                        answerPing();
+                    break;
+                case Pong:
+                    throw new ProtocolException("The remote answered a ping that was not sent.");
+                case Pause:
+                    if (write) {
+                        awaitResume();
+                        break;
+                    }
+
+                    // The reader may take its time, so its next state should not time out.
+                    int timeout = socket.getSoTimeout();
+                    socket.setSoTimeout(0);
+                    try {
+                        handleProtocolRequest(false);
+                    } finally {
+                        if (!socket.isClosed())
+                            socket.setSoTimeout(timeout);
+                    }
+                    return;
+                case Resume:
+                    break;
                 case None:
                 default:
                     return;
@@ -802,6 +2315,45 @@ public class Channel implements Closeable {
          * @throws IOException If an IO error occurs, or the input stream closes/ends before reading all the data.
          */
         public int read() throws IOException {
+            return read(byteBuffer);
+        }
+
+        /**
+         * Read the next part of the data into the given buffer instead of the internal one.
+         *
+         * @param target To read into.
+         * @return The length of data that has been read.
+         * @throws IOException If an IO error occurs.
+         */
+        private int read(@NotNull ByteBuffer target) throws IOException {
+            try {
+                int length = readChunk(target);
+                onProgress();
+                return length;
+            } catch (IOException e) {
+                throw onFailure(e);
+            }
+        }
+
+        /**
+         * Read the next part of the data.
+         *
+         * @return The length of data that has been read.
+         * @throws IOException If an IO error occurs.
+         */
+        private int readChunk() throws IOException {
+            return readChunk(byteBuffer);
+        }
+
+        /**
+         * Read the next part of the data into the given buffer.
+         *
+         * @param target To read into. The length prefixes and the states are still read using the internal buffer.
+         * @return The length of the data that has been read, or {@link CoolSocket#LENGTH_UNSPECIFIED} if the remote
+         * has ended the operation.
+         * @throws IOException If an IO error occurs.
+         */
+        private int readChunk(@NotNull ByteBuffer target) throws IOException {
             if (isZeroLength()) {
                 return 0;
             }
@@ -809,8 +2361,14 @@ public class Channel implements Closeable {
             verify();
             boolean chunked = flags.chunked();
 
+            if (urgentCancellation && !multichannel && !urgentlyCancelled && hasRequest(REQUEST_CANCEL)
+                    && protocolVersion >= Config.PROTOCOL_VERSION_URGENT_CANCELLATION
+                    && takeRequest(REQUEST_CANCEL))
+                sendUrgentCancellation();
+
             if (nextAvailable <= 0) {
-                if (!multichannel && transactionCount++ == inverseExchangePoint) {
+                // After an urgent cancellation, the writer answers in place of the state the reader would write.
+                if (!multichannel && !urgentlyCancelled && transactionCount++ == inverseExchangePoint) {
                     writeState();
                     transactionCount = 0;
                 } else {
@@ -828,12 +2386,15 @@ public class Channel implements Closeable {
                 }
             }
 
-            byteBuffer.clear();
-            int length = (int) Math.min(byteBuffer.remaining(),
+            target.clear();
+            int length = (int) Math.min(target.remaining(),
                     Math.min(nextAvailable, available()));
-            byteBuffer.limit(length);
-            length = readableByteChannel.read(byteBuffer);
-            byteBuffer.flip();
+            target.limit(length);
+            length = readSocket(target);
+            target.flip();
+
+            if (length == -1)
+                throw new SocketException("Socket is closed or could not read the data.");
 
             consumedLength += length;
             nextAvailable -= length;
@@ -883,6 +2444,23 @@ public class Channel implements Closeable {
          */
         public void write(byte[] bytes, int offset, int length)
                 throws IOException {
+            try {
+                writeChunk(bytes, offset, length);
+                onProgress();
+            } catch (IOException e) {
+                throw onFailure(e);
+            }
+        }
+
+        /**
+         * Write the given part of the data.
+         *
+         * @param bytes  To write.
+         * @param offset To offset from the start.
+         * @param length The length to read from the bytes and then write.
+         * @throws IOException If an IO error occurs.
+         */
+        private void writeChunk(byte[] bytes, int offset, int length) throws IOException {
             if (isZeroLength()) {
                 return;
             }
@@ -892,18 +2470,14 @@ public class Channel implements Closeable {
             checkBounds(bytes.length, offset, length);
 
             boolean chunked = flags.chunked();
-            int consume = length - offset;
+            int consume = length;
 
             if (!chunked && consume > available()) {
                 throw new SizeOverflowException("Trying write more than the value reported to the remote.",
                         available(), consume);
             }
 
-            if (!multichannel && transactionCount++ == inverseExchangePoint) {
-                readState();
-                transactionCount = 0;
-            } else
-                writeState();
+            exchangeChunkState();
 
             if (chunked)
                 totalLength += consume;
@@ -914,7 +2488,147 @@ public class Channel implements Closeable {
             byteBuffer.putLong(consume);
             byteBuffer.flip();
             writableByteChannel.write(byteBuffer);
-            outputStream.write(bytes, offset, length);
+            writeLimited(bytes, offset, length);
+        }
+
+        /**
+         * Exchange the state that comes before each chunk.
+         *
+         * @throws IOException If an IO error occurs.
+         */
+        private void exchangeChunkState() throws IOException {
+            if (!multichannel && transactionCount++ == inverseExchangePoint) {
+                // The state read here also carries an urgent cancellation, so there is nothing to poll for.
+                readState();
+                transactionCount = 0;
+                return;
+            }
+
+            // Between the exchange points, the reader only sends an urgent cancellation.
+            if (urgentCancellation && !multichannel && inputStream.available() > 0)
+                readState();
+
+            writeState();
+        }
+
+        /**
+         * Write the frame of the given message as the only chunk of this operation.
+         * <p>
+         * The frame is written to the {@link java.nio.channels.SocketChannel} of the socket with a gathering write
+         * when there is one, unless the data has to go through the rate limiters or the corked buffer.
+         *
+         * @param message To write. The operation should have begun with its flags and length.
+         * @throws IOException If an IO error occurs.
+         */
+        private void writePrepared(@NotNull PreparedMessage message) throws IOException {
+            if (isZeroLength())
+                return;
+
+            verify();
+            exchangeChunkState();
+            consumedLength += message.length;
+
+            ByteBuffer[] frame = message.frame();
+            writeFrame(frame[0], frame[1]);
+        }
+
+        /**
+         * Write the remaining bytes of a buffer that doesn't have an accessible array as a chunk.
+         *
+         * @param buffer To write.
+         * @throws IOException If an IO error occurs.
+         */
+        private void writeBuffer(@NotNull ByteBuffer buffer) throws IOException {
+            if (isZeroLength())
+                return;
+
+            verify();
+
+            int length = buffer.remaining();
+            boolean chunked = flags.chunked();
+
+            if (!chunked && length > available())
+                throw new SizeOverflowException("Trying write more than the value reported to the remote.",
+                        available(), length);
+
+            exchangeChunkState();
+
+            if (chunked)
+                totalLength += length;
+
+            consumedLength += length;
+
+            byteBuffer.clear();
+            byteBuffer.putLong(length);
+            byteBuffer.flip();
+            writeFrame(byteBuffer, buffer);
+        }
+
+        /**
+         * Write a length prefix and the data that follows it.
+         * <p>
+         * They are written to the {@link SocketChannel} of the socket with a gathering write when there is one, unless
+         * the data has to go through the rate limiters or the corked buffer. In that case, the data is written from its
+         * array when it has an accessible one, or it is copied through the quantum buffer of the channel otherwise.
+         *
+         * @param prefix The length prefix.
+         * @param data   The data.
+         * @throws IOException If an IO error occurs.
+         */
+        private void writeFrame(@NotNull ByteBuffer prefix, @NotNull ByteBuffer data) throws IOException {
+            TokenBucket[] limiters = rateLimiters;
+            SocketChannel socketChannel = socket.getChannel();
+
+            if (socketChannel != null && limiters.length == 0 && !outputStream.isCorked()) {
+                // The state may still be waiting to be sent if this was corked a moment ago.
+                outputStream.drain();
+
+                ByteBuffer[] frame = {prefix, data};
+                while (prefix.hasRemaining() || data.hasRemaining())
+                    socketChannel.write(frame);
+            } else {
+                writableByteChannel.write(prefix);
+
+                if (data.hasArray()) {
+                    writeLimited(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                    data.position(data.limit());
+                    return;
+                }
+
+                byte[] quantum = quantumBuffer;
+                if (quantum == null)
+                    quantum = quantumBuffer = new byte[Config.RATE_LIMIT_QUANTUM];
+
+                while (data.hasRemaining()) {
+                    int len = Math.min(data.remaining(), quantum.length);
+                    data.get(quantum, 0, len);
+                    writeLimited(quantum, 0, len);
+                }
+            }
+        }
+
+        /**
+         * Write the remaining bytes of the given buffer, and move its position to its limit.
+         * <p>
+         * The buffer is written as a single chunk. A direct buffer is written to the {@link SocketChannel} of the
+         * socket without being copied when there is one.
+         *
+         * @param buffer To write.
+         * @throws IOException If an IO error occurs.
+         */
+        public void write(@NotNull ByteBuffer buffer) throws IOException {
+            if (buffer.hasArray()) {
+                write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+                return;
+            }
+
+            try {
+                writeBuffer(buffer);
+                onProgress();
+            } catch (IOException e) {
+                throw onFailure(e);
+            }
         }
 
         /**
@@ -946,21 +2660,34 @@ public class Channel implements Closeable {
             if (!hasAvailable())
                 return;
 
-            writeState();
-            byteBuffer.clear();
-            byteBuffer.putLong(LENGTH_UNSPECIFIED);
-            byteBuffer.flip();
-            writableByteChannel.write(byteBuffer);
+            try {
+                // The end is a boundary like the others, so it may fall on the exchange point.
+                if (!multichannel && transactionCount++ == inverseExchangePoint) {
+                    readState();
+                    transactionCount = 0;
+                } else
+                    writeState();
+
+                byteBuffer.clear();
+                byteBuffer.putLong(LENGTH_UNSPECIFIED);
+                byteBuffer.flip();
+                writableByteChannel.write(byteBuffer);
 
-            nextAvailable = LENGTH_UNSPECIFIED;
+                nextAvailable = LENGTH_UNSPECIFIED;
 
-            outputStream.flush();
+                outputStream.flush();
+                onProgress();
+            } catch (IOException e) {
+                throw onFailure(e);
+            }
 
             // If not chunked, then the size must be known, and if the transferred size is smaller than reported, this
             // is an error.
-            if (!flags.chunked())
+            if (!flags.chunked()) {
+                finish();
                 throw new SizeUnderflowException("The write operation should not be ended. The written byte length" +
                         " is below what was reported.", totalLength, consumedLength);
+            }
         }
     }
 }
@@ -0,0 +1,262 @@
+package org.monora.coolsocket.core.session;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.server.HashedWheelTimer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The output stream of a channel that can hold back the small writes and send them together.
+ * <p>
+ * When uncorked, the writes go straight to the socket. When corked, they are collected in a buffer that is written
+ * when it fills, when {@link #drain()} is called, or when the data in it has waited for the flush delay. A flush that
+ * comes before the delay only makes sure that the delay is watched for, so that the end of an operation doesn't
+ * force out a small packet of its own.
+ *
+ * @see Channel#cork(int, long)
+ */
+final class CorkedOutputStream extends OutputStream {
+    private static final Logger logger = Logger.getLogger(CorkedOutputStream.class.getName());
+
+    /**
+     * The timer flushing the buffers that have waited long enough. The default timer is too coarse for this.
+     */
+    private static final HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS,
+            HashedWheelTimer.DEFAULT_WHEEL_SIZE);
+
+    /**
+     * The executor writing the buffers for the timer, so that a slow socket doesn't hold up the timer, which is shared
+     * by all the corked channels.
+     */
+    private static final @NotNull ExecutorService flushExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "CoolSocket Cork Flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The output stream of the socket.
+     */
+    private final @NotNull OutputStream out;
+
+    /**
+     * The lock guarding the buffer.
+     */
+    private final @NotNull ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The data waiting to be written, or null when uncorked.
+     */
+    private volatile byte @Nullable [] buffer;
+
+    /**
+     * The length of the data in the buffer.
+     */
+    private volatile int count;
+
+    /**
+     * The time in nanoseconds the data can wait in the buffer.
+     */
+    private long flushDelay;
+
+    /**
+     * The time in nanoseconds the oldest data in the buffer was written.
+     */
+    private long bufferStartTime;
+
+    /**
+     * The scheduled flush of the buffer, or null if there is none.
+     */
+    private @Nullable HashedWheelTimer.Timeout scheduledFlush;
+
+    /**
+     * Create a new instance.
+     *
+     * @param out The output stream of the socket.
+     */
+    CorkedOutputStream(@NotNull OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Start collecting the writes.
+     *
+     * @param bufferSize The length of the data to collect before writing it.
+     * @param flushDelay The time in nanoseconds the data can wait.
+     * @throws IOException If the data collected with the previous limits cannot be written.
+     */
+    void cork(int bufferSize, long flushDelay) throws IOException {
+        lock.lock();
+        try {
+            drainBuffer();
+            this.buffer = new byte[bufferSize];
+            this.flushDelay = flushDelay;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the collected data, and send the writes straight to the socket from now on.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    void uncork() throws IOException {
+        lock.lock();
+        try {
+            drainBuffer();
+            buffer = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return True if the writes are being collected.
+     */
+    boolean isCorked() {
+        return buffer != null;
+    }
+
+    /**
+     * @return True if there is collected data waiting to be written.
+     */
+    boolean hasPending() {
+        return count > 0;
+    }
+
+    /**
+     * Write the collected data now.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    void drain() throws IOException {
+        lock.lock();
+        try {
+            drainBuffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the collected data unless another thread is writing.
+     *
+     * @return True if the data was written, or there was none.
+     */
+    boolean tryDrain() {
+        if (!lock.tryLock())
+            return false;
+
+        try {
+            drainBuffer();
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.FINE, "The collected data could not be written.", e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte @NotNull [] b, int off, int len) throws IOException {
+        lock.lock();
+        try {
+            byte[] buffer = this.buffer;
+
+            if (buffer == null) {
+                out.write(b, off, len);
+                return;
+            }
+
+            if (len > buffer.length - count)
+                drainBuffer();
+
+            if (len >= buffer.length) {
+                out.write(b, off, len);
+                return;
+            }
+
+            if (count == 0) {
+                bufferStartTime = System.nanoTime();
+                scheduledFlush = timer.newTimeout(() -> flushExecutor.execute(this::flushScheduled), flushDelay,
+                        TimeUnit.NANOSECONDS);
+            }
+
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the collected data if it has waited for the flush delay. Otherwise, it is written when the delay passes.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            if (buffer == null)
+                out.flush();
+            else if (count > 0 && System.nanoTime() - bufferStartTime >= flushDelay)
+                drainBuffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the collected data when the delay passes. This runs on the flush executor, never on the timer.
+     * <p>
+     * A writer may have written the data while this was waiting for the lock, and started collecting again, in which
+     * case the new data has its own flush scheduled, and is left alone until its delay passes.
+     */
+    private void flushScheduled() {
+        lock.lock();
+        try {
+            if (count > 0 && System.nanoTime() - bufferStartTime >= flushDelay)
+                drainBuffer();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "The collected data could not be written.", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the collected data. The caller should hold the lock.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    private void drainBuffer() throws IOException {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel();
+            scheduledFlush = null;
+        }
+
+        if (count == 0)
+            return;
+
+        int length = count;
+        count = 0;
+        out.write(buffer, 0, length);
+        out.flush();
+    }
+}
@@ -0,0 +1,28 @@
+package org.monora.coolsocket.core.session;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Thrown when an operation doesn't complete before its deadline. The channel is closed when this happens because the
+ * remote cannot be told where the operation has been left off.
+ *
+ * @see Channel#writeBegin(long, long, long)
+ * @see Channel#readBegin(int, int, long)
+ */
+public class DeadlineExceededException extends SessionException {
+    /**
+     * The time in milliseconds the operation was allowed to take.
+     */
+    public final long deadline;
+
+    /**
+     * Create a new instance.
+     *
+     * @param message  The explanation for this error.
+     * @param deadline The time in milliseconds the operation was allowed to take.
+     */
+    public DeadlineExceededException(@Nullable String message, long deadline) {
+        super(message);
+        this.deadline = deadline;
+    }
+}
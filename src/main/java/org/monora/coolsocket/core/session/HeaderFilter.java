@@ -0,0 +1,25 @@
+package org.monora.coolsocket.core.session;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.response.Flags;
+
+/**
+ * Decides whether an operation should be read after its header arrives, so that the unwanted data is refused before
+ * the writer sends it.
+ * <p>
+ * This is not consulted in multichannel mode because the reader doesn't answer the writer there.
+ *
+ * @see Channel#setHeaderFilter(HeaderFilter)
+ */
+public interface HeaderFilter {
+    /**
+     * Check the header of an operation.
+     *
+     * @param channel     The channel the operation arrived on.
+     * @param flags       The flags of the operation.
+     * @param totalLength The length of the data, which is only known when the data is not chunked.
+     * @return Null to accept the operation, or the reason to reject it which will be sent to the writer.
+     */
+    @Nullable String onHeader(@NotNull Channel channel, @NotNull Flags flags, long totalLength);
+}
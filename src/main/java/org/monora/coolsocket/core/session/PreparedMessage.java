@@ -0,0 +1,84 @@
+package org.monora.coolsocket.core.session;
+
+import org.jetbrains.annotations.NotNull;
+import org.monora.coolsocket.core.response.Flags;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A message that is framed once and can be sent many times using {@link Channel#writeAll(PreparedMessage)}.
+ * <p>
+ * The payload is sent as a single chunk whose length prefix is encoded along with it, so sending only takes the state
+ * exchanges of the operation and a gathering write of the frame. The header is still written for each send, since it
+ * carries the id of the operation. The buffers are never modified after they are created, so an instance can be sent
+ * on many channels at the same time.
+ */
+public final class PreparedMessage {
+    /**
+     * The flags the message is sent with.
+     */
+    public final long flags;
+
+    /**
+     * The length of the payload.
+     */
+    public final int length;
+
+    /**
+     * The length prefix of the chunk.
+     */
+    private final @NotNull ByteBuffer prefix;
+
+    /**
+     * The payload.
+     */
+    private final @NotNull ByteBuffer payload;
+
+    /**
+     * Create a new instance with no flags that keeps the payload on the heap.
+     *
+     * @param payload The payload to send. This is copied, so it can be reused.
+     */
+    public PreparedMessage(byte @NotNull [] payload) {
+        this(0, ByteBuffer.wrap(payload), false);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param flags   The flags to send the message with.
+     * @param payload The remaining bytes of the buffer to send. This is copied, and its position is not changed.
+     * @param direct  True to keep the payload in a direct buffer, which can be written to a socket that has a
+     *                {@link java.nio.channels.SocketChannel} without being copied again.
+     * @throws IllegalArgumentException If the flags ask for a chunked or resumable operation.
+     */
+    public PreparedMessage(long flags, @NotNull ByteBuffer payload, boolean direct) {
+        if ((flags & (Flags.FLAG_DATA_CHUNKED | Flags.FLAG_RESUMABLE)) != 0)
+            throw new IllegalArgumentException("A prepared message has a known length and cannot be resumed.");
+
+        this.flags = flags;
+        this.length = payload.remaining();
+
+        ByteBuffer prefix = direct ? ByteBuffer.allocateDirect(Long.BYTES) : ByteBuffer.allocate(Long.BYTES);
+        this.prefix = prefix.putLong(length).flip().asReadOnlyBuffer();
+
+        ByteBuffer copy = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+        this.payload = copy.put(payload.duplicate()).flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the frame to write, which is the length prefix and the payload, with their own positions.
+     *
+     * @return The frame.
+     */
+    @NotNull ByteBuffer @NotNull [] frame() {
+        return new ByteBuffer[]{prefix.duplicate(), payload.duplicate()};
+    }
+
+    /**
+     * @return True if the payload is kept in a direct buffer.
+     */
+    public boolean isDirect() {
+        return payload.isDirect();
+    }
+}
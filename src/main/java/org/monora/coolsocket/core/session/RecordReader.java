@@ -0,0 +1,111 @@
+package org.monora.coolsocket.core.session;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.protocol.ProtocolException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the records written by a {@link RecordWriter} one by one.
+ * <p>
+ * The records are returned as read-only views of an internal buffer rather than as copies, so a record is only valid
+ * until the next call to {@link #next()}.
+ *
+ * @see RecordWriter
+ */
+public class RecordReader {
+    /**
+     * The descriptor to read the records from.
+     */
+    private final @NotNull Channel.ReadableDescriptor descriptor;
+
+    /**
+     * The longest record that is accepted.
+     */
+    private final int maxRecordLength;
+
+    /**
+     * The received data that hasn't been returned yet.
+     */
+    private final @NotNull ByteBuffer buffer;
+
+    /**
+     * The data the descriptor has read that hasn't been moved to the buffer yet, or null before the first read.
+     */
+    private @Nullable ByteBuffer source;
+
+    /**
+     * Create a new instance.
+     *
+     * @param descriptor      The chunked descriptor to read from.
+     * @param maxRecordLength The longest record that is accepted.
+     * @throws IllegalArgumentException If the descriptor is not chunked, or the length is not valid.
+     */
+    public RecordReader(@NotNull Channel.ReadableDescriptor descriptor, int maxRecordLength) {
+        if (!descriptor.flags.chunked())
+            throw new IllegalArgumentException("The records can only be read from a chunked descriptor.");
+
+        if (maxRecordLength < 0)
+            throw new IllegalArgumentException("The maximum record length cannot be a negative number.");
+
+        this.descriptor = descriptor;
+        this.maxRecordLength = maxRecordLength;
+        this.buffer = ByteBuffer.allocate(Math.max(Integer.BYTES + maxRecordLength, descriptor.byteBuffer.capacity()));
+        this.buffer.flip();
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return The record, which is valid until the next call, or null if the remote has ended the operation.
+     * @throws IOException If an IO error occurs, or the remote sends a record that is too long or incomplete.
+     */
+    public @Nullable ByteBuffer next() throws IOException {
+        while (true) {
+            if (buffer.remaining() >= Integer.BYTES) {
+                int length = buffer.getInt(buffer.position());
+                if (length < 0 || length > maxRecordLength)
+                    throw new ProtocolException("The record length " + length + " is not valid.");
+
+                if (buffer.remaining() >= Integer.BYTES + length) {
+                    int start = buffer.position() + Integer.BYTES;
+                    buffer.position(start + length);
+                    return buffer.slice(start, length).asReadOnlyBuffer();
+                }
+            }
+
+            if (!fill()) {
+                if (buffer.hasRemaining())
+                    throw new ProtocolException("The operation has ended in the middle of a record.");
+
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Move more data into the buffer, reading from the remote if needed.
+     *
+     * @return False if the operation has ended.
+     * @throws IOException If an IO error occurs.
+     */
+    private boolean fill() throws IOException {
+        while (source == null || !source.hasRemaining()) {
+            if (!descriptor.hasAvailable())
+                return false;
+
+            descriptor.read();
+            source = descriptor.byteBuffer;
+        }
+
+        buffer.compact();
+        int length = Math.min(buffer.remaining(), source.remaining());
+        buffer.put(buffer.position(), source, source.position(), length);
+        buffer.position(buffer.position() + length);
+        source.position(source.position() + length);
+        buffer.flip();
+        return true;
+    }
+}
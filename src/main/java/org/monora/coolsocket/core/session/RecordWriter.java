@@ -0,0 +1,246 @@
+package org.monora.coolsocket.core.session;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.config.Config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes many small length-prefixed records into one chunked write operation, so that they don't each pay for
+ * beginning and ending an operation.
+ * <p>
+ * The records are collected in a batch that is written as a single chunk when it is full, when the oldest record in it
+ * has waited for the flush interval, or when {@link #flush()} is called. The interval is checked when a record is
+ * written, and also on the given scheduler if there is one, so that the last records of a quiet stream aren't held
+ * back. Each record is written as its length as an int followed by its bytes.
+ * <p>
+ * The methods are synchronized, so the records can be written from more than one thread.
+ *
+ * @see RecordReader
+ */
+public class RecordWriter implements Closeable {
+    /**
+     * The default batch size.
+     */
+    public static final int DEFAULT_BATCH_SIZE = Config.DEFAULT_BUFFER_SIZE * 2;
+
+    /**
+     * The descriptor to write the batches to.
+     */
+    private final @NotNull Channel.WritableDescriptor descriptor;
+
+    /**
+     * The batch being filled.
+     */
+    private final @NotNull ByteBuffer batch;
+
+    /**
+     * The time in nanoseconds a record can wait in the batch.
+     */
+    private final long flushInterval;
+
+    /**
+     * The scheduler flushing the batches that wait too long, or null to only check when a record is written.
+     */
+    private final @Nullable ScheduledExecutorService scheduler;
+
+    /**
+     * The time in nanoseconds the oldest record in the batch was written.
+     */
+    private long batchStartTime;
+
+    /**
+     * The scheduled flush of the current batch, or null if there is none.
+     */
+    private @Nullable ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * The error the scheduled flush has failed with, which is thrown by the next call.
+     */
+    private @Nullable IOException scheduledFlushError;
+
+    /**
+     * Whether this has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Create a new instance with the default batch size that flushes the records within the given interval.
+     *
+     * @param descriptor    The chunked descriptor to write to.
+     * @param flushInterval The time in milliseconds a record can wait in the batch.
+     */
+    public RecordWriter(@NotNull Channel.WritableDescriptor descriptor, long flushInterval) {
+        this(descriptor, DEFAULT_BATCH_SIZE, flushInterval, null);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param descriptor    The chunked descriptor to write to.
+     * @param batchSize     The length of the data to collect before writing it as a chunk.
+     * @param flushInterval The time in milliseconds a record can wait in the batch.
+     * @param scheduler     The scheduler to flush the batches that wait too long on, or null to only check the
+     *                      interval when a record is written.
+     * @throws IllegalArgumentException If the descriptor is not chunked, or the sizes are not valid.
+     */
+    public RecordWriter(@NotNull Channel.WritableDescriptor descriptor, int batchSize, long flushInterval,
+                        @Nullable ScheduledExecutorService scheduler) {
+        if (!descriptor.flags.chunked())
+            throw new IllegalArgumentException("The records can only be written to a chunked descriptor.");
+
+        if (batchSize < Integer.BYTES || flushInterval < 0)
+            throw new IllegalArgumentException("The batch size or the flush interval is not valid.");
+
+        this.descriptor = descriptor;
+        this.batch = ByteBuffer.allocate(batchSize);
+        this.flushInterval = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Write the given record.
+     *
+     * @param record To write.
+     * @throws IOException If an IO error occurs.
+     */
+    public void write(byte @NotNull [] record) throws IOException {
+        write(record, 0, record.length);
+    }
+
+    /**
+     * Write the given part of the array as a record.
+     *
+     * @param record To write.
+     * @param offset Where the record starts.
+     * @param length The length of the record.
+     * @throws IOException If an IO error occurs.
+     */
+    public void write(byte @NotNull [] record, int offset, int length) throws IOException {
+        write(ByteBuffer.wrap(record, offset, length));
+    }
+
+    /**
+     * Write the remaining bytes of the given buffer as a record, and move its position to its limit.
+     *
+     * @param record To write.
+     * @throws IOException If an IO error occurs.
+     */
+    public synchronized void write(@NotNull ByteBuffer record) throws IOException {
+        checkOpen();
+
+        int length = record.remaining();
+        if (Integer.BYTES + length > batch.remaining())
+            flushBatch();
+
+        if (Integer.BYTES + length > batch.capacity()) {
+            // Too long to batch, so it goes out on its own.
+            descriptor.write(ByteBuffer.allocate(Integer.BYTES).putInt(length).flip());
+            descriptor.write(record);
+            return;
+        }
+
+        if (batch.position() == 0)
+            onBatchStarted();
+
+        batch.putInt(length)
+                .put(record);
+
+        if (!batch.hasRemaining() || System.nanoTime() - batchStartTime >= flushInterval)
+            flushBatch();
+    }
+
+    /**
+     * Write the records that are waiting in the batch.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        flushBatch();
+    }
+
+    /**
+     * Write the records that are waiting in the batch, and end the write operation.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+
+        try {
+            checkOpen();
+            flushBatch();
+            descriptor.writeEnd();
+        } finally {
+            closed = true;
+        }
+    }
+
+    /**
+     * Throw the error of the scheduled flush, or an error if this is closed.
+     *
+     * @throws IOException If this cannot be used.
+     */
+    private void checkOpen() throws IOException {
+        if (scheduledFlushError != null)
+            throw scheduledFlushError;
+
+        if (closed)
+            throw new IOException("The record writer is closed.");
+    }
+
+    /**
+     * Start the timer for the new batch.
+     */
+    private void onBatchStarted() {
+        batchStartTime = System.nanoTime();
+
+        if (scheduler != null)
+            scheduledFlush = scheduler.schedule(this::flushScheduled, flushInterval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Flush the batch if it is still waiting after the interval.
+     */
+    private synchronized void flushScheduled() {
+        if (closed || batch.position() == 0 || System.nanoTime() - batchStartTime < flushInterval)
+            return;
+
+        try {
+            flushBatch();
+        } catch (IOException e) {
+            scheduledFlushError = e;
+        }
+    }
+
+    /**
+     * Write the batch as a chunk.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    private void flushBatch() throws IOException {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        if (batch.position() == 0)
+            return;
+
+        batch.flip();
+        try {
+            descriptor.write(batch);
+        } finally {
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.monora.coolsocket.core.session;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Thrown when the reader refuses an operation after seeing its header, before any of the data is sent.
+ * <p>
+ * Since the operation ends before it starts, the channel can still be used for the next operation.
+ *
+ * @see HeaderFilter
+ */
+public class RejectedException extends CancelledException {
+    /**
+     * The reason given by the reader, or null if it is not known, e.g., when the remote uses an older version of the
+     * protocol which can only cancel the operation.
+     */
+    public final @Nullable String reason;
+
+    /**
+     * Create a new instance.
+     *
+     * @param message         The explanation for this error.
+     * @param reason          The reason given by the reader.
+     * @param remoteRequested True if the remote rejected the operation, or false if you did.
+     */
+    public RejectedException(@Nullable String message, @Nullable String reason, boolean remoteRequested) {
+        super(message, remoteRequested);
+        this.reason = reason;
+    }
+}
@@ -0,0 +1,27 @@
+package org.monora.coolsocket.core.session;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Tells where the resumable transfers should continue from on the receiving side.
+ * <p>
+ * When a writer begins a resumable transfer, the reader looks up the transfer id here and sends the returned offset
+ * back, so that the writer skips the data the reader has already committed, e.g., to a file, on an earlier
+ * connection.
+ *
+ * @see Channel#setResumeStore(ResumeStore)
+ * @see Channel#writeBeginResumable(long, long, long, long)
+ */
+@FunctionalInterface
+public interface ResumeStore {
+    /**
+     * Get the length of the data the receiver has committed for the given transfer.
+     *
+     * @param channel     The channel the transfer is received from.
+     * @param transferId  The id the writer gave to the transfer.
+     * @param totalLength The total length of the data.
+     * @return The offset to continue from, or 0 to receive the data from the start. The offsets that are negative or
+     * larger than the total length are treated as 0.
+     */
+    long getCommittedOffset(@NotNull Channel channel, long transferId, long totalLength);
+}
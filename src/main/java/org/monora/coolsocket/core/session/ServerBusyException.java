@@ -0,0 +1,28 @@
+package org.monora.coolsocket.core.session;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Thrown when the remote is too busy to serve this side, and it has closed or is closing the connection.
+ * <p>
+ * The remote tells how long to wait before retrying, so that the clients don't all come back at once.
+ *
+ * @see Channel#sendBusy(long)
+ */
+public class ServerBusyException extends SessionException {
+    /**
+     * The time in milliseconds to wait before retrying.
+     */
+    public final long retryAfter;
+
+    /**
+     * Create a new instance.
+     *
+     * @param message    The explanation for this error.
+     * @param retryAfter The time in milliseconds to wait before retrying.
+     */
+    public ServerBusyException(@Nullable String message, long retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
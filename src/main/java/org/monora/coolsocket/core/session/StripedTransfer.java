@@ -0,0 +1,361 @@
+package org.monora.coolsocket.core.session;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.monora.coolsocket.core.config.Config;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.monora.coolsocket.core.CoolSocket.LENGTH_UNSPECIFIED;
+
+/**
+ * Sends one fixed-length payload over many channels to the same remote at the same time, so that it isn't limited by
+ * the congestion window of a single connection or by a single copying thread.
+ * <p>
+ * The payload is split into stripes of the given size, and each channel takes the next stripe as soon as it is done
+ * with the previous one, so the faster connections carry more of them. Each stripe is sent as a small operation that
+ * holds its offset followed by an operation that holds its data, and each channel ends with the offset
+ * {@link org.monora.coolsocket.core.CoolSocket#LENGTH_UNSPECIFIED}. The receiver writes the stripes to the target by
+ * their offsets in the order they arrive.
+ * <p>
+ * If a channel fails, all the channels are closed so that the others don't wait for it, and the error is thrown.
+ */
+public class StripedTransfer {
+    /**
+     * The default stripe size.
+     */
+    public static final int DEFAULT_STRIPE_SIZE = 1024 * 1024;
+
+    /**
+     * The length of the data that is read from a file at a time while sending.
+     */
+    private static final int FILE_BUFFER_SIZE = 8 * Config.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * The length of each stripe.
+     */
+    private final int stripeSize;
+
+    /**
+     * The executor running a task for each channel.
+     */
+    private final @NotNull Executor executor;
+
+    /**
+     * Create a new instance that uses a new thread for each channel.
+     *
+     * @param stripeSize The length of each stripe.
+     */
+    public StripedTransfer(int stripeSize) {
+        this(stripeSize, runnable -> {
+            Thread thread = new Thread(runnable, "CoolSocket Striped Transfer");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param stripeSize The length of each stripe.
+     * @param executor   The executor running a task for each channel. It should be able to run all of them at the
+     *                   same time.
+     */
+    public StripedTransfer(int stripeSize, @NotNull Executor executor) {
+        if (stripeSize < 1)
+            throw new IllegalArgumentException("The stripe size should be larger than 0.");
+
+        this.stripeSize = stripeSize;
+        this.executor = executor;
+    }
+
+    /**
+     * Send the whole file.
+     *
+     * @param channels    To send the stripes over.
+     * @param fileChannel To read from. Its position is not changed.
+     * @return The report of the transfer.
+     * @throws IOException If an IO error occurs on any of the channels, or while reading the file.
+     */
+    public @NotNull Report send(@NotNull List<@NotNull Channel> channels, @NotNull FileChannel fileChannel)
+            throws IOException {
+        return send(channels, fileChannel.size(), (descriptor, offset, length) -> {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, FILE_BUFFER_SIZE));
+            long end = offset + length;
+
+            while (offset < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - offset));
+
+                int len = fileChannel.read(buffer, offset);
+                if (len == -1)
+                    throw new IOException("The file is shorter than it was when the transfer started.");
+
+                buffer.flip();
+                descriptor.write(buffer);
+                offset += len;
+            }
+        });
+    }
+
+    /**
+     * Send the remaining bytes of the given buffer. The offsets start at the position of the buffer, which is not
+     * changed.
+     *
+     * @param channels To send the stripes over.
+     * @param buffer   To send.
+     * @return The report of the transfer.
+     * @throws IOException If an IO error occurs on any of the channels.
+     */
+    public @NotNull Report send(@NotNull List<@NotNull Channel> channels, @NotNull ByteBuffer buffer)
+            throws IOException {
+        final int start = buffer.position();
+
+        return send(channels, buffer.remaining(), (descriptor, offset, length) -> {
+            ByteBuffer stripe = buffer.duplicate();
+            stripe.limit(start + (int) (offset + length));
+            stripe.position(start + (int) offset);
+            descriptor.write(stripe);
+        });
+    }
+
+    /**
+     * Receive the stripes into the given file.
+     *
+     * @param channels    To receive the stripes from.
+     * @param fileChannel To write to. Its position is not changed.
+     * @return The report of the transfer.
+     * @throws IOException If an IO error occurs on any of the channels, or while writing the file.
+     */
+    public @NotNull Report receive(@NotNull List<@NotNull Channel> channels, @NotNull FileChannel fileChannel)
+            throws IOException {
+        return receive(channels, (offset, data) -> {
+            while (data.hasRemaining())
+                offset += fileChannel.write(data, offset);
+        });
+    }
+
+    /**
+     * Receive the stripes into the given buffer. The offsets start at the position of the buffer, which is not
+     * changed.
+     *
+     * @param channels To receive the stripes from.
+     * @param buffer   To write to. It should have enough room for the whole payload.
+     * @return The report of the transfer.
+     * @throws IOException If an IO error occurs on any of the channels, or the payload doesn't fit in the buffer.
+     */
+    public @NotNull Report receive(@NotNull List<@NotNull Channel> channels, @NotNull ByteBuffer buffer)
+            throws IOException {
+        final int start = buffer.position();
+
+        return receive(channels, (offset, data) -> {
+            if (offset > buffer.limit() - start - data.remaining())
+                throw new IOException("The payload doesn't fit in the buffer.");
+
+            ByteBuffer target = buffer.duplicate();
+            target.position(start + (int) offset);
+            target.put(data);
+        });
+    }
+
+    /**
+     * Send the stripes of a payload.
+     *
+     * @param channels To send the stripes over.
+     * @param length   The length of the payload.
+     * @param source   To write the stripes with.
+     * @return The report of the transfer.
+     * @throws IOException If an IO error occurs.
+     */
+    private @NotNull Report send(@NotNull List<@NotNull Channel> channels, long length, @NotNull Source source)
+            throws IOException {
+        final AtomicLong nextOffset = new AtomicLong();
+        final AtomicInteger stripeCount = new AtomicInteger();
+
+        return run(channels, channel -> {
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+            long offset;
+
+            while ((offset = nextOffset.getAndAdd(stripeSize)) < length) {
+                long stripeLength = Math.min(stripeSize, length - offset);
+
+                header.clear();
+                channel.writeAll(header.putLong(offset).array());
+
+                Channel.WritableDescriptor descriptor = channel.writeBegin(0, stripeLength);
+                source.write(descriptor, offset, stripeLength);
+                descriptor.writeEnd();
+                stripeCount.incrementAndGet();
+            }
+
+            header.clear();
+            channel.writeAll(header.putLong(LENGTH_UNSPECIFIED).array());
+            return 0;
+        }, stripeCount, length);
+    }
+
+    /**
+     * Receive the stripes of a payload.
+     *
+     * @param channels To receive the stripes from.
+     * @param sink     To write the stripes into.
+     * @return The report of the transfer.
+     * @throws IOException If an IO error occurs.
+     */
+    private @NotNull Report receive(@NotNull List<@NotNull Channel> channels, @NotNull Sink sink)
+            throws IOException {
+        final AtomicInteger stripeCount = new AtomicInteger();
+
+        return run(channels, channel -> {
+            long received = 0;
+
+            while (true) {
+                long offset = ByteBuffer.wrap(channel.readAll(Long.BYTES).getBytes()).getLong();
+                if (offset == LENGTH_UNSPECIFIED)
+                    return received;
+
+                if (offset < 0)
+                    throw new IOException("The remote sent an invalid stripe offset.");
+
+                Channel.ReadableDescriptor descriptor = channel.readBegin();
+                if (descriptor.flags.chunked())
+                    throw new IOException("The remote sent a stripe without a length.");
+
+                while (descriptor.hasAvailable()) {
+                    int len = descriptor.read();
+                    if (len > 0) {
+                        sink.write(offset + descriptor.consumedLength() - len, descriptor.byteBuffer);
+                        received += len;
+                    }
+                }
+
+                stripeCount.incrementAndGet();
+            }
+        }, stripeCount, LENGTH_UNSPECIFIED);
+    }
+
+    /**
+     * Run the given task for each channel at the same time, and wait for all of them.
+     *
+     * @param channels    The channels.
+     * @param task        The task that returns the length of the data it received.
+     * @param stripeCount The counter the task increments for each stripe.
+     * @param length      The length of the payload, or {@link org.monora.coolsocket.core.CoolSocket#LENGTH_UNSPECIFIED}
+     *                    to use the sum of the lengths the tasks received.
+     * @return The report of the transfer.
+     * @throws IOException If any of the tasks fail.
+     */
+    private @NotNull Report run(@NotNull List<@NotNull Channel> channels, @NotNull Task task,
+                                @NotNull AtomicInteger stripeCount, long length) throws IOException {
+        if (channels.isEmpty())
+            throw new IllegalArgumentException("There should be at least one channel.");
+
+        final CountDownLatch latch = new CountDownLatch(channels.size());
+        final AtomicReference<@Nullable IOException> error = new AtomicReference<>();
+        final AtomicLong received = new AtomicLong();
+        final long startTime = System.nanoTime();
+
+        for (Channel channel : channels) {
+            executor.execute(() -> {
+                try {
+                    received.addAndGet(task.run(channel));
+                } catch (IOException | RuntimeException e) {
+                    if (error.compareAndSet(null, e instanceof IOException ? (IOException) e : new IOException(e)))
+                        closeAll(channels);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            closeAll(channels);
+            throw new InterruptedIOException("Interrupted while waiting for the stripes.");
+        }
+
+        IOException e = error.get();
+        if (e != null)
+            throw e;
+
+        return new Report(length == LENGTH_UNSPECIFIED ? received.get() : length, stripeCount.get(),
+                channels.size(), System.nanoTime() - startTime);
+    }
+
+    /**
+     * Close the given channels without throwing an error.
+     *
+     * @param channels To close.
+     */
+    private static void closeAll(@NotNull List<@NotNull Channel> channels) {
+        for (Channel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * The outcome of a transfer.
+     */
+    public static class Report {
+        /**
+         * The length of the payload.
+         */
+        public final long length;
+
+        /**
+         * The number of stripes.
+         */
+        public final int stripeCount;
+
+        /**
+         * The number of channels.
+         */
+        public final int channelCount;
+
+        /**
+         * The time in nanoseconds the transfer took.
+         */
+        public final long elapsedTime;
+
+        Report(long length, int stripeCount, int channelCount, long elapsedTime) {
+            this.length = length;
+            this.stripeCount = stripeCount;
+            this.channelCount = channelCount;
+            this.elapsedTime = elapsedTime;
+        }
+
+        /**
+         * The aggregate throughput of all the channels.
+         *
+         * @return The bytes per second.
+         */
+        public double throughput() {
+            return elapsedTime == 0 ? 0 : length * 1e9 / elapsedTime;
+        }
+    }
+
+    private interface Task {
+        long run(@NotNull Channel channel) throws IOException;
+    }
+
+    private interface Source {
+        void write(@NotNull Channel.WritableDescriptor descriptor, long offset, long length) throws IOException;
+    }
+
+    private interface Sink {
+        void write(long offset, @NotNull ByteBuffer data) throws IOException;
+    }
+}
@@ -0,0 +1,128 @@
+package org.monora.coolsocket.core.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free token bucket that refills at a fixed rate and holds a limited number of tokens.
+ * <p>
+ * Instead of counting tokens, it keeps the time at which the bucket would become full again (the generic cell rate
+ * algorithm), so taking tokens is a single compare-and-set and there is no refill thread.
+ */
+public class TokenBucket {
+    /**
+     * The time in nanoseconds it takes to refill one token.
+     */
+    private final double nanosPerToken;
+
+    /**
+     * The time in nanoseconds it takes to refill the bucket from empty to full.
+     */
+    private final long burstTime;
+
+    /**
+     * The time when the bucket will be full again if no more tokens are taken.
+     */
+    private final AtomicLong fullTime;
+
+    /**
+     * Create a new instance that starts full.
+     *
+     * @param tokensPerSecond The refill rate.
+     * @param capacity        The number of tokens the bucket can hold, i.e., the largest burst it allows.
+     */
+    public TokenBucket(double tokensPerSecond, long capacity) {
+        if (tokensPerSecond <= 0)
+            throw new IllegalArgumentException("The rate should be a positive number.");
+
+        if (capacity < 1)
+            throw new IllegalArgumentException("The capacity should be at least 1.");
+
+        this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / tokensPerSecond;
+        this.burstTime = cost(capacity);
+        this.fullTime = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Take the given number of tokens, waiting until they are available if needed.
+     *
+     * @param tokens The number of tokens to take.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public void acquire(long tokens) throws InterruptedException {
+        long wait = reserve(tokens);
+
+        if (wait <= 0)
+            return;
+
+        long deadline = System.nanoTime() + wait;
+        while ((wait = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, wait);
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+
+    /**
+     * The time it takes to refill the given number of tokens.
+     *
+     * @param tokens The number of tokens.
+     * @return The time in nanoseconds.
+     */
+    private long cost(long tokens) {
+        return (long) Math.ceil(tokens * nanosPerToken);
+    }
+
+    /**
+     * Check whether the bucket is full, meaning it hasn't been used for a while.
+     *
+     * @return True if it is full.
+     */
+    public boolean isFull() {
+        return fullTime.get() - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Take the given number of tokens even if they are not available, and return how long the caller should wait
+     * before using them. The tokens taken this way are paid in order, so the callers waiting on the same bucket take
+     * turns.
+     *
+     * @param tokens The number of tokens to take.
+     * @return The time in nanoseconds to wait, or zero or less when there is no need to wait.
+     */
+    public long reserve(long tokens) {
+        long cost = cost(tokens);
+        long now = System.nanoTime();
+        long current, next;
+
+        do {
+            current = fullTime.get();
+            next = (current - now > 0 ? current : now) + cost;
+        } while (!fullTime.compareAndSet(current, next));
+
+        return next - now - burstTime;
+    }
+
+    /**
+     * Take the given number of tokens only if they are available.
+     *
+     * @param tokens The number of tokens to take.
+     * @return True if the tokens were taken, or false if there weren't enough tokens.
+     */
+    public boolean tryAcquire(long tokens) {
+        long cost = cost(tokens);
+        long now = System.nanoTime();
+        long current, next;
+
+        do {
+            current = fullTime.get();
+            next = (current - now > 0 ? current : now) + cost;
+
+            if (next - now > burstTime)
+                return false;
+        } while (!fullTime.compareAndSet(current, next));
+
+        return true;
+    }
+}
@@ -1,24 +1,56 @@
 package org.monora.coolsocket.core;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.monora.coolsocket.core.client.ClientHandler;
+import org.monora.coolsocket.core.client.RoutingClientHandler;
+import org.monora.coolsocket.core.response.Flags;
+import org.monora.coolsocket.core.server.BusyRejectedConnectionHandler;
+import org.monora.coolsocket.core.server.ChannelGroup;
+import org.monora.coolsocket.core.server.ChannelSelector;
 import org.monora.coolsocket.core.server.ConnectionManager;
 import org.monora.coolsocket.core.server.ConnectionManagerFactory;
 import org.monora.coolsocket.core.server.DefaultConnectionManager;
+import org.monora.coolsocket.core.server.DefaultConnectionManagerFactory;
+import org.monora.coolsocket.core.server.DrainListener;
+import org.monora.coolsocket.core.server.PreparedMessageCache;
+import org.monora.coolsocket.core.server.ShardedConnectionManager;
+import org.monora.coolsocket.core.server.ShardedConnectionManagerFactory;
+import org.monora.coolsocket.core.server.TrafficShaper;
 import org.monora.coolsocket.core.session.Channel;
 import org.monora.coolsocket.core.session.CancelledException;
 import org.monora.coolsocket.core.session.ClosedException;
+import org.monora.coolsocket.core.session.PreparedMessage;
+import org.monora.coolsocket.core.session.ServerBusyException;
 import org.monora.coolsocket.core.variant.Connections;
+import org.monora.coolsocket.core.variant.RoamingChildCoolSocket;
 import org.monora.coolsocket.core.variant.DefaultCoolSocket;
 import org.monora.coolsocket.core.variant.factory.TestConfigFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.Socket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ClientManagementTest {
     public static final String MSG = "HEY!";
@@ -125,6 +157,9 @@ public class ClientManagementTest {
             Assert.assertEquals("Number of connections should be same.", connections.length,
                     session.getConnectionManager().getConnectionCountByAddress(localhost));
 
+            Assert.assertEquals("Number of connections should be same.", connections.length,
+                    session.getConnectionManager().getActiveConnectionCount());
+
             for (Channel channel : connections) {
                 try {
                     channel.closeMutually();
@@ -140,6 +175,740 @@ public class ClientManagementTest {
                 session.getConnectionManager().getActiveConnectionList().size());
     }
 
+    @Test
+    public void rejectsOverflowConnectionsTest() throws IOException, InterruptedException {
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final CountDownLatch handledLatch = new CountDownLatch(1);
+        final CountDownLatch rejectedLatch = new CountDownLatch(1);
+        DefaultConnectionManagerFactory factory = new DefaultConnectionManagerFactory(1, 1, 0, 0);
+        factory.setRejectedConnectionHandler((coolSocket, channel) -> rejectedLatch.countDown());
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    handledLatch.countDown();
+                    releaseLatch.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        };
+
+        coolSocket.setConnectionManagerFactory(factory);
+        coolSocket.start();
+
+        try (Channel busyChannel = Connections.open(); Channel rejectedChannel = Connections.open()) {
+            handledLatch.await();
+            rejectedLatch.await();
+
+            try {
+                rejectedChannel.readAll();
+                Assert.fail("The overflowing connection should have been closed.");
+            } catch (SocketException ignored) {
+            }
+
+            CoolSocket.Session session = coolSocket.getSession();
+            Assert.assertNotNull(session);
+
+            DefaultConnectionManager manager = (DefaultConnectionManager) session.getConnectionManager();
+            Assert.assertEquals("One connection should be rejected.", 1, manager.getRejectedCount());
+            Assert.assertEquals("The queue should be empty.", 0, manager.getQueueDepth());
+            Assert.assertEquals("One connection should reach the handler.", 1, manager.getHandledCount());
+        } finally {
+            releaseLatch.countDown();
+            coolSocket.stop();
+        }
+    }
+
+    @Test
+    public void shardedManagerAggregatesConnectionsTest() throws IOException, InterruptedException {
+        final int shardCount = 4;
+        coolSocket.setConnectionManagerFactory(new ShardedConnectionManagerFactory(shardCount,
+                ShardedConnectionManager.SHARD_BY_ROUND_ROBIN, new CustomConnectionManagerFactory(true,
+                ConnectionManager.CLOSING_CONTRACT_CLOSE_IMMEDIATELY)));
+        coolSocket.start();
+
+        CoolSocket.Session session = coolSocket.getSession();
+        Assert.assertNotNull(session);
+
+        ShardedConnectionManager manager = (ShardedConnectionManager) session.getConnectionManager();
+        Channel[] channels = new Channel[shardCount * 2];
+        InetAddress localhost = InetAddress.getByName(TestConfigFactory.SOCKET_ADDRESS_HOST);
+
+        try {
+            for (int i = 0; i < channels.length; i++) {
+                channels[i] = Connections.open();
+                Assert.assertEquals(MSG, channels[i].readAll().getAsString());
+            }
+
+            Assert.assertEquals("All connections should be counted.", channels.length,
+                    manager.getActiveConnectionList().size());
+            Assert.assertEquals("All connections should be counted.", channels.length,
+                    manager.getConnectionCountByAddress(localhost));
+
+            for (ConnectionManager shard : manager.getShards())
+                Assert.assertEquals("Each shard should get the same share.", 2, shard.getActiveConnectionCount());
+
+            Assert.assertSame("A group should be shared by all the shards.", manager.getChannelGroup("room"),
+                    manager.getShards().get(0).getChannelGroup("room"));
+        } finally {
+            coolSocket.stop();
+
+            for (Channel channel : channels)
+                if (channel != null)
+                    channel.close();
+        }
+
+        Assert.assertEquals("Connections should be closed on all shards.", 0, manager.getActiveConnectionCount());
+    }
+
+    @Test(timeout = 10000)
+    public void closesIdleRoamingConnectionsTest() throws IOException, InterruptedException {
+        RoamingChildCoolSocket roamingCoolSocket = new RoamingChildCoolSocket(true);
+        DefaultConnectionManagerFactory factory = new DefaultConnectionManagerFactory();
+        factory.setIdleTimeout(300);
+        roamingCoolSocket.setConnectionManagerFactory(factory);
+        roamingCoolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            Channel serverChannel = roamingCoolSocket.connectionsQueue.take();
+
+            // Keep the connection busy for longer than the idle timeout.
+            for (int i = 0; i < 4; i++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        serverChannel.writeAll(MSG.getBytes());
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+                thread.start();
+                Assert.assertEquals(MSG, channel.readAll().getAsString());
+                thread.join();
+                Thread.sleep(150);
+            }
+
+            Assert.assertFalse("The active connection should stay open.", serverChannel.getSocket().isClosed());
+
+            while (!serverChannel.getSocket().isClosed()) {
+                Thread.sleep(50);
+            }
+
+            CoolSocket.Session session = roamingCoolSocket.getSession();
+            Assert.assertNotNull(session);
+            Assert.assertEquals("The idle connection should be counted.", 1,
+                    ((DefaultConnectionManager) session.getConnectionManager()).getIdleClosedCount());
+        } finally {
+            roamingCoolSocket.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void drainLetsOngoingOperationsCompleteTest() throws IOException, InterruptedException {
+        final String message = "Almost there";
+        final AtomicReference<String> received = new AtomicReference<>();
+        final CountDownLatch readingLatch = new CountDownLatch(1);
+        final List<Integer> phaseList = new CopyOnWriteArrayList<>();
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel activeConnection) {
+                try {
+                    Channel.ReadableDescriptor descriptor = activeConnection.readBegin();
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    readingLatch.countDown();
+
+                    while (descriptor.read() != -1) {
+                        outputStream.write(descriptor.byteBuffer.array(), 0, descriptor.byteBuffer.remaining());
+                    }
+
+                    received.set(outputStream.toString());
+
+                    while (activeConnection.getSocket().isConnected())
+                        activeConnection.readAll();
+                } catch (ClosedException ignored) {
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+
+        DefaultConnectionManagerFactory factory = new DefaultConnectionManagerFactory();
+        factory.setDrainTimeouts(4000, 8000);
+        factory.setDrainListener((phase, remainingCount, totalCount, elapsedTime) -> phaseList.add(phase));
+        coolSocket.setConnectionManagerFactory(factory);
+        coolSocket.start();
+
+        CoolSocket.Session session = coolSocket.getSession();
+        Assert.assertNotNull(session);
+        session.getConnectionManager().setClosingContract(true, ConnectionManager.CLOSING_CONTRACT_DRAIN);
+
+        try (Channel busyChannel = Connections.open(); Channel idleChannel = Connections.open()) {
+            Channel.WritableDescriptor descriptor = busyChannel.writeBegin(0);
+            descriptor.write(message.getBytes(), 0, 6);
+            readingLatch.await();
+
+            long startTime = System.nanoTime();
+            Thread stopThread = new Thread(() -> {
+                try {
+                    coolSocket.stop();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            });
+            stopThread.start();
+
+            Thread.sleep(200);
+            descriptor.write(message.getBytes(), 6, message.length() - 6);
+            descriptor.writeEnd();
+
+            // The next operations should be refused.
+            for (Channel channel : new Channel[]{busyChannel, idleChannel}) {
+                try {
+                    channel.writeAll(message.getBytes());
+                    Assert.fail("The idle connection should be closed mutually.");
+                } catch (ClosedException ignored) {
+                }
+            }
+
+            stopThread.join();
+
+            Assert.assertEquals("The ongoing operation should complete.", message, received.get());
+            Assert.assertTrue("The connections should close before the deadlines.",
+                    System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(4));
+            Assert.assertEquals("Draining should be done.", DrainListener.PHASE_DONE,
+                    (int) phaseList.get(phaseList.size() - 1));
+            Assert.assertFalse("Nothing should be cancelled.", phaseList.contains(DrainListener.PHASE_CANCEL));
+        }
+    }
+
+    @Test
+    public void busyServerTellsWhenToRetryTest() throws IOException, InterruptedException {
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final CountDownLatch handledLatch = new CountDownLatch(1);
+        DefaultConnectionManagerFactory factory = new DefaultConnectionManagerFactory(1, 1, 0, 0);
+        factory.setRejectedConnectionHandler(new BusyRejectedConnectionHandler(1000, 0));
+
+        coolSocket.setClientHandler(new ClientHandler() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    handledLatch.countDown();
+                    releaseLatch.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        coolSocket.setConnectionManagerFactory(factory);
+        coolSocket.start();
+
+        try (Channel busyChannel = Connections.open()) {
+            handledLatch.await();
+
+            try (Channel writingChannel = Connections.open()) {
+                writingChannel.writeAll(MSG.getBytes());
+                Assert.fail("The writer should be told that the server is busy.");
+            } catch (ServerBusyException e) {
+                Assert.assertEquals("The hint should be delivered.", 1000, e.retryAfter);
+            }
+
+            try (Channel readingChannel = Connections.open()) {
+                readingChannel.readAll();
+                Assert.fail("The reader should be told that the server is busy.");
+            } catch (ServerBusyException e) {
+                Assert.assertEquals("The hint should be delivered.", 1000, e.retryAfter);
+            }
+        } finally {
+            releaseLatch.countDown();
+        }
+    }
+
+    @Test
+    public void trafficShaperSharesBandwidthTest() throws IOException, InterruptedException {
+        final byte[] data = new byte[128 * 1024];
+        final CountDownLatch connectedLatch = new CountDownLatch(2);
+        final CountDownLatch finishedLatch = new CountDownLatch(2);
+        final List<Long> finishTimeList = new CopyOnWriteArrayList<>();
+        DefaultConnectionManagerFactory factory = new DefaultConnectionManagerFactory();
+        factory.setTrafficShaper(new TrafficShaper(512 * 1024, TrafficShaper.UNLIMITED));
+
+        coolSocket.setConnectionManagerFactory(factory);
+        coolSocket.setClientHandler(new ClientHandler() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    connectedLatch.countDown();
+                    connectedLatch.await();
+                    channel.writeAll(data);
+                    finishTimeList.add(System.nanoTime());
+                } catch (IOException | InterruptedException ignored) {
+                } finally {
+                    finishedLatch.countDown();
+                }
+            }
+        });
+        coolSocket.start();
+
+        long startTime = System.nanoTime();
+        try (Channel firstChannel = Connections.open(); Channel secondChannel = Connections.open()) {
+            Thread thread = new Thread(() -> {
+                try {
+                    firstChannel.readAll(0);
+                } catch (IOException ignored) {
+                }
+            });
+            thread.start();
+            Assert.assertEquals("The data should arrive in full.", data.length,
+                    secondChannel.readAll(0).getBytes().length);
+            thread.join();
+        }
+
+        finishedLatch.await(5, TimeUnit.SECONDS);
+        Assert.assertEquals("Both writers should finish.", 2, finishTimeList.size());
+
+        long elapsedTime = TimeUnit.NANOSECONDS.toMillis(Math.max(finishTimeList.get(0), finishTimeList.get(1))
+                - startTime);
+        long gap = TimeUnit.NANOSECONDS.toMillis(Math.abs(finishTimeList.get(0) - finishTimeList.get(1)));
+
+        Assert.assertTrue("The writers should share the limit, took " + elapsedTime + " ms.", elapsedTime >= 300);
+        Assert.assertTrue("The writers should get fair shares, finished " + gap + " ms apart.", gap < 150);
+    }
+
+    @Test
+    public void routesHaveSeparateExecutorsTest() throws IOException, InterruptedException {
+        final CountDownLatch bulkStartedLatch = new CountDownLatch(1);
+        final CountDownLatch bulkReleaseLatch = new CountDownLatch(1);
+        ExecutorService controlExecutor = RoutingClientHandler.newBoundedExecutor(1, 4);
+        ExecutorService bulkExecutor = RoutingClientHandler.newBoundedExecutor(1, 4);
+        RoutingClientHandler router = new RoutingClientHandler();
+
+        router.setRoute(1, (channel, descriptor) -> {
+            try {
+                while (descriptor.hasAvailable())
+                    descriptor.read();
+                channel.writeAll("control".getBytes());
+            } finally {
+                channel.close();
+            }
+        }, controlExecutor);
+        router.setRoute(2, (channel, descriptor) -> {
+            try {
+                bulkStartedLatch.countDown();
+                bulkReleaseLatch.await();
+                while (descriptor.hasAvailable())
+                    descriptor.read();
+                channel.writeAll("bulk".getBytes());
+            } finally {
+                channel.close();
+            }
+        }, bulkExecutor);
+
+        coolSocket.setClientHandler(router);
+        coolSocket.start();
+
+        try (Channel bulkChannel = Connections.open()) {
+            writeOnRoute(bulkChannel, 2);
+            bulkStartedLatch.await();
+
+            for (int i = 0; i < 3; i++) {
+                try (Channel controlChannel = Connections.open()) {
+                    writeOnRoute(controlChannel, 1);
+                    Assert.assertEquals("The control route should not wait for the bulk route.", "control",
+                            controlChannel.readAll().getAsString());
+                }
+            }
+
+            try (Channel unroutedChannel = Connections.open()) {
+                writeOnRoute(unroutedChannel, 3);
+                unroutedChannel.readAll();
+                Assert.fail("The channel without a route should be closed.");
+            } catch (SocketException ignored) {
+            }
+
+            bulkReleaseLatch.countDown();
+            Assert.assertEquals("The bulk route should answer when released.", "bulk",
+                    bulkChannel.readAll().getAsString());
+        } finally {
+            bulkReleaseLatch.countDown();
+            controlExecutor.shutdown();
+            bulkExecutor.shutdown();
+        }
+    }
+
+    private static void writeOnRoute(Channel channel, int route) throws IOException {
+        byte[] bytes = MSG.getBytes();
+        Channel.WritableDescriptor descriptor = channel.writeBegin(Flags.withRoute(0, route), bytes.length);
+        descriptor.write(bytes);
+        descriptor.writeEnd();
+    }
+
+    @Test
+    public void hotRestartKeepsConnectionsTest() throws IOException, InterruptedException {
+        coolSocket.setClientHandler(new TagClientHandler("first"));
+        coolSocket.start();
+
+        CoolSocket.Session session = coolSocket.getSession();
+        Assert.assertNotNull("The session should be available.", session);
+        ConnectionManager firstManager = session.getConnectionManager();
+        int port = coolSocket.getLocalPort();
+
+        try (Channel channel = Connections.open()) {
+            channel.writeAll(MSG.getBytes());
+            Assert.assertEquals("The first handler should respond.", "first", channel.readAll().getAsString());
+
+            coolSocket.setClientHandler(new TagClientHandler("second"));
+            coolSocket.hotRestart();
+
+            Assert.assertSame("The session should not change.", session, coolSocket.getSession());
+            Assert.assertNotSame("The connection manager should be replaced.", firstManager,
+                    session.getConnectionManager());
+            Assert.assertEquals("The port should not change.", port, coolSocket.getLocalPort());
+            Assert.assertTrue("The previous manager should be kept for its connection.",
+                    session.getRetiredConnectionManagers().contains(firstManager));
+
+            channel.writeAll(MSG.getBytes());
+            Assert.assertEquals("The connection should stay with the first handler.", "first",
+                    channel.readAll().getAsString());
+
+            // The first one may be taken by the retired listener which is fine as long as it is answered.
+            for (int i = 0; i < 2; i++) {
+                try (Channel newChannel = Connections.open()) {
+                    newChannel.writeAll(MSG.getBytes());
+                    Assert.assertEquals("The new connections should be handled by the new handler.", "second",
+                            newChannel.readAll().getAsString());
+                }
+            }
+
+            Assert.assertEquals("The connection should still be open on the previous manager.", 1,
+                    firstManager.getActiveConnectionCount());
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!session.getRetiredConnectionManagers().isEmpty() && System.currentTimeMillis() < deadline)
+            Thread.sleep(20);
+
+        Assert.assertTrue("The previous manager should be closed after its connections exit.",
+                session.getRetiredConnectionManagers().isEmpty());
+        Assert.assertTrue("The server should still be listening.", coolSocket.isListening());
+    }
+
+    @Test(timeout = 10000)
+    public void hotRestartClosesRetiredManagerOnceEmptyTest() throws IOException, InterruptedException {
+        assertRetiredManagerClosedOnceEmpty(true);
+    }
+
+    @Test
+    public void hotRestartPollsRetiredManagerNotReportingEmptyTest() throws IOException, InterruptedException {
+        assertRetiredManagerClosedOnceEmpty(false);
+    }
+
+    private void assertRetiredManagerClosedOnceEmpty(boolean reportsEmpty) throws IOException, InterruptedException {
+        final BlockingQueue<ConnectionManager> closedQueue = new LinkedBlockingQueue<>();
+        coolSocket.setConnectionManagerFactory(new ConnectionManagerFactory() {
+            @Override
+            public @NotNull ConnectionManager createConnectionManager() {
+                DefaultConnectionManager connectionManager = new DefaultConnectionManager() {
+                    @Override
+                    public void closeAll() {
+                        closedQueue.add(this);
+                        super.closeAll();
+                    }
+
+                    @Override
+                    public boolean setEmptyListener(@Nullable Runnable emptyListener) {
+                        return reportsEmpty && super.setEmptyListener(emptyListener);
+                    }
+                };
+                connectionManager.setClosingContract(true, ConnectionManager.CLOSING_CONTRACT_CLOSE_IMMEDIATELY);
+                return connectionManager;
+            }
+        });
+        coolSocket.setClientHandler(new TagClientHandler("first"));
+        coolSocket.start();
+
+        CoolSocket.Session session = coolSocket.getSession();
+        Assert.assertNotNull("The session should be available.", session);
+        ConnectionManager firstManager = session.getConnectionManager();
+
+        try {
+            try (Channel channel = Connections.open()) {
+                channel.writeAll(MSG.getBytes());
+                Assert.assertEquals("The first handler should respond.", "first", channel.readAll().getAsString());
+
+                coolSocket.setClientHandler(new TagClientHandler("second"));
+                coolSocket.hotRestart();
+
+                // Let the retired listener take its last connection, so that it exits.
+                for (int i = 0; i < 2; i++) {
+                    try (Channel newChannel = Connections.open()) {
+                        newChannel.writeAll(MSG.getBytes());
+                        newChannel.readAll();
+                    }
+                }
+
+                Assert.assertNull("The previous manager should be kept while it has a connection.",
+                        closedQueue.poll(200, TimeUnit.MILLISECONDS));
+            }
+
+            // Nothing asks for the retired managers here, so only the exit of the last connection can close it.
+            Assert.assertSame("The previous manager should be closed once its connections exit.", firstManager,
+                    closedQueue.poll(5, TimeUnit.SECONDS));
+            Assert.assertTrue("The previous manager should no longer be retained.",
+                    session.getRetiredConnectionManagers().isEmpty());
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    @Test
+    public void parkedChannelsDoNotHoldThreadsTest() throws IOException, InterruptedException {
+        final int channelCount = 50;
+        final int roundCount = 3;
+        final Set<Thread> threadSet = ConcurrentHashMap.newKeySet();
+
+        TestConfigFactory configFactory = new TestConfigFactory();
+        configFactory.setSelectable(true);
+        coolSocket.setConfigFactory(configFactory);
+
+        try (ChannelSelector selector = new ChannelSelector(2)) {
+            coolSocket.setClientHandler(new ClientHandler() {
+                @Override
+                public void onConnected(@NotNull Channel channel) {
+                    try {
+                        byte[] message = channel.readAll().getAsString().getBytes();
+                        channel.writeAll(message);
+                        threadSet.add(Thread.currentThread());
+                        selector.park(channel, this);
+                    } catch (IOException e) {
+                        try {
+                            channel.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+            });
+            coolSocket.start();
+
+            List<Channel> channelList = new ArrayList<>();
+            try {
+                for (int i = 0; i < channelCount; i++)
+                    channelList.add(Connections.open());
+
+                for (int round = 0; round < roundCount; round++) {
+                    for (int i = 0; i < channelCount; i++) {
+                        String message = MSG + i + ":" + round;
+                        Channel channel = channelList.get(i);
+                        channel.writeAll(message.getBytes());
+                        Assert.assertEquals("The channel should be answered after parking.", message,
+                                channel.readAll().getAsString());
+                    }
+
+                    long deadline = System.currentTimeMillis() + 5000;
+                    while (selector.getParkedCount() < channelCount && System.currentTimeMillis() < deadline)
+                        Thread.sleep(10);
+
+                    Assert.assertEquals("All the channels should be parked between the messages.", channelCount,
+                            selector.getParkedCount());
+                }
+
+                Assert.assertEquals("The server threads should be released.", 0,
+                        coolSocket.getSession().getConnectionManager().getActiveConnectionCount());
+                Assert.assertTrue("The parked channels should share a few threads.",
+                        threadSet.size() < channelCount);
+            } finally {
+                for (Channel channel : channelList)
+                    channel.close();
+            }
+        }
+    }
+
+    @Test
+    public void preparedRepliesAreCachedByRequestTest() throws IOException, InterruptedException {
+        final PreparedMessageCache cache = new PreparedMessageCache(2, PreparedMessageCache.UNLIMITED);
+
+        TestConfigFactory configFactory = new TestConfigFactory();
+        configFactory.setSelectable(true);
+        coolSocket.setConfigFactory(configFactory);
+        coolSocket.setClientHandler(new ClientHandler() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    while (true) {
+                        byte[] request = channel.readAll().getBytes();
+                        channel.writeAll(cache.get(request, r -> new PreparedMessage(0,
+                                ByteBuffer.wrap(("Reply to " + new String(r)).getBytes()), true)));
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+        });
+        coolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            for (String request : new String[]{"a", "b", "a", "c", "b", "c"}) {
+                channel.writeAll(request.getBytes());
+                Assert.assertEquals("The prepared reply should be received.", "Reply to " + request,
+                        channel.readAll().getAsString());
+            }
+        }
+
+        Assert.assertEquals("The recently used replies should be reused.", 2, cache.getHitCount());
+        Assert.assertEquals("The evicted replies should be prepared again.", 4, cache.getMissCount());
+        Assert.assertEquals("The cache should keep its limit.", 2, cache.size());
+        Assert.assertEquals("The cache should count the payloads it keeps.", 20, cache.getLength());
+    }
+
+    @Test
+    public void preparedMessageCacheRefusesOversizedRepliesTest() {
+        PreparedMessageCache cache = new PreparedMessageCache(0, 10);
+        Assert.assertTrue("A reply within the limit should be kept.", cache.put("a".getBytes(),
+                new PreparedMessage("12345".getBytes())));
+        Assert.assertTrue("A reply within the limit should be kept.", cache.put("b".getBytes(),
+                new PreparedMessage("12345".getBytes())));
+        Assert.assertFalse("A reply over the limit should not be kept.", cache.put("c".getBytes(),
+                new PreparedMessage("12345678901".getBytes())));
+
+        Assert.assertEquals("The other replies should not be removed for it.", 2, cache.size());
+        Assert.assertEquals("The cache should count the payloads it keeps.", 10, cache.getLength());
+
+        Assert.assertFalse("A replacement over the limit should not be kept.", cache.put("a".getBytes(),
+                new PreparedMessage("12345678901".getBytes())));
+        Assert.assertNull("The replaced reply should not be given.", cache.get("a".getBytes()));
+        Assert.assertEquals("The cache should count the payloads it keeps.", 5, cache.getLength());
+    }
+
+    @Test(timeout = 10000)
+    public void broadcastDisconnectsMemberFailingUncheckedTest() throws Exception {
+        coolSocket.setClientHandler(new ClientHandler() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                channel.setRoaming(true);
+            }
+        });
+        coolSocket.start();
+
+        Socket socket = new Socket() {
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return new FilterOutputStream(super.getOutputStream()) {
+                    @Override
+                    public void write(byte @NotNull [] b, int off, int len) {
+                        throw new IllegalStateException("The member cannot be written to.");
+                    }
+                };
+            }
+        };
+        socket.connect(TestConfigFactory.SOCKET_ADDRESS);
+
+        ChannelGroup group = new ChannelGroup("room");
+
+        try (Channel channel = Channel.wrap(socket)) {
+            channel.setMultichannel(true);
+            group.join(channel);
+            Assert.assertEquals("The message should be queued for the member.", 1,
+                    group.broadcast(new PreparedMessage(MSG.getBytes())));
+
+            while (group.size() > 0)
+                Thread.sleep(10);
+
+            Assert.assertEquals("The failing member should be disconnected.", 1, group.getDisconnectedCount());
+            Assert.assertTrue("The failing member should be closed.", channel.getSocket().isClosed());
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void broadcastReachesMembersDespiteSlowMemberTest() throws Exception {
+        final int fastCount = 4;
+        final int messageCount = ChannelGroup.DEFAULT_QUEUE_CAPACITY + 36;
+        final BlockingQueue<Channel> joinedQueue = new LinkedBlockingQueue<>();
+
+        coolSocket.setClientHandler(new ClientHandler() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                channel.setRoaming(true);
+                coolSocket.getSession().getConnectionManager().getChannelGroup("room").join(channel);
+                joinedQueue.add(channel);
+            }
+        });
+        coolSocket.start();
+
+        ChannelGroup group = coolSocket.getSession().getConnectionManager().getChannelGroup("room");
+        Assert.assertSame("The same group should be returned for the same name.", group,
+                coolSocket.getSession().getConnectionManager().getChannelGroup("room"));
+
+        List<Channel> channelList = new ArrayList<>();
+        List<Thread> readerList = new ArrayList<>();
+        AtomicInteger[] receivedCounts = new AtomicInteger[fastCount];
+        AtomicReference<Throwable> readerError = new AtomicReference<>();
+
+        try {
+            // Never reads, so its queue fills up.
+            channelList.add(Connections.open());
+            joinedQueue.take();
+
+            for (int i = 0; i < fastCount; i++) {
+                Channel channel = Connections.open();
+                AtomicInteger receivedCount = receivedCounts[i] = new AtomicInteger();
+                channelList.add(channel);
+                joinedQueue.take();
+
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int j = 0; j < messageCount; j++) {
+                            Assert.assertEquals("The messages should arrive in order.", MSG + j,
+                                    channel.readAll().getAsString());
+                            receivedCount.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        readerError.set(e);
+                    }
+                });
+                thread.start();
+                readerList.add(thread);
+            }
+
+            for (int i = 0; i < messageCount; i++) {
+                group.broadcast(new PreparedMessage((MSG + i).getBytes()));
+
+                // Keep the fast members within their queues, so only the slow one overflows.
+                for (AtomicInteger receivedCount : receivedCounts)
+                    while (receivedCount.get() <= i && readerError.get() == null)
+                        Thread.sleep(1);
+            }
+
+            for (Thread thread : readerList)
+                thread.join();
+
+            Assert.assertNull("The fast members should receive every message.", readerError.get());
+            Assert.assertEquals("The slow member should be disconnected.", 1, group.getDisconnectedCount());
+            Assert.assertEquals("The fast members should stay in the group.", fastCount, group.size());
+            Assert.assertEquals("Every fast member should be sent every message.", (long) fastCount * messageCount,
+                    group.getSentCount());
+        } finally {
+            for (Channel channel : channelList)
+                channel.close();
+        }
+    }
+
+    public static class TagClientHandler implements ClientHandler {
+        private final String tag;
+
+        public TagClientHandler(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public void onConnected(@NotNull Channel channel) {
+            try {
+                while (channel.getSocket().isConnected()) {
+                    channel.readAll();
+                    channel.writeAll(tag.getBytes());
+                }
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
     public static class LoopClientHandler implements ClientHandler {
         @Override
         public void onConnected(@NotNull Channel channel) {
@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 import org.junit.Assert;
 import org.junit.Test;
 import org.monora.coolsocket.core.config.Config;
+import org.monora.coolsocket.core.response.Flags;
 import org.monora.coolsocket.core.session.Channel;
 import org.monora.coolsocket.core.session.CancelledException;
 import org.monora.coolsocket.core.session.ClosedException;
@@ -13,8 +14,12 @@ import org.monora.coolsocket.core.variant.StaticMessageCoolSocket;
 
 import java.io.IOException;
 import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 public class CommandExecutionTest {
+    private final Logger logger = Logger.getLogger(CommandExecutionTest.class.getName());
+
     @Test(expected = CancelledException.class)
     public void cancellationDuringWriteBeginTest() throws IOException, InterruptedException {
         CoolSocket coolSocket = new DefaultCoolSocket() {
@@ -163,6 +168,43 @@ public class CommandExecutionTest {
         }
     }
 
+    @Test
+    public void pingMeasuresRoundTripTimeTest() throws IOException, InterruptedException {
+        final String message = "Are you still there?";
+        final int rounds = 5;
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel activeConnection) {
+                try {
+                    for (int i = 0; i < rounds; i++) {
+                        activeConnection.writeAll(activeConnection.readAll().getBytes());
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            Assert.assertEquals("There should be no measurement before a ping.", 0, channel.getSmoothedRtt());
+
+            for (int i = 0; i < rounds; i++) {
+                channel.ping();
+                channel.writeAll(message.getBytes());
+                Assert.assertEquals("The message should be intact.", message, channel.readAll().getAsString());
+            }
+
+            Assert.assertTrue("The round-trip time should be measured.", channel.getSmoothedRtt() > 0);
+            Assert.assertTrue("The suggested timeout should follow the measurements.",
+                    channel.getSuggestedTimeout() >= 1000);
+            Assert.assertFalse("The remote is responsive.", channel.isPeerUnresponsive());
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
     @Test(expected = ClosedException.class)
     public void closeSafelyTest() throws IOException, InterruptedException {
         final String message = "It is a long way home but a fun one.";
@@ -332,4 +374,127 @@ public class CommandExecutionTest {
             coolSocket.stop();
         }
     }
+
+    @Test(timeout = 10000)
+    public void urgentCancellationReachesWriterWithinChunksTest() throws IOException, InterruptedException {
+        long[] regular = measureReaderCancellation(false);
+        long[] urgent = measureReaderCancellation(true);
+
+        logger.info(String.format("Cancellation during read: regular %d chunks in %.2f ms, urgent %d chunks in " +
+                        "%.2f ms", regular[0], regular[1] / 1e6, urgent[0], urgent[1] / 1e6));
+
+        Assert.assertTrue("The writer should stop within a few chunks, wrote " + urgent[0] + ".", urgent[0] < 16);
+        Assert.assertTrue("The urgent cancellation should be seen earlier.", urgent[0] < regular[0]);
+    }
+
+    @Test(timeout = 10000)
+    public void urgentCancellationKeepsNormalTransfersIntactTest() throws IOException, InterruptedException {
+        final byte[] data = new byte[2000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) i;
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                channel.setUrgentCancellation(true);
+                try {
+                    Channel.WritableDescriptor descriptor = channel.writeBegin(0, data.length);
+                    for (int i = 0; i < data.length; i += 100) {
+                        // Give the reader's state time to arrive before the writer reaches the exchange point.
+                        Thread.sleep(10);
+                        descriptor.write(data, i, 100);
+                    }
+                    descriptor.writeEnd();
+                } catch (IOException | InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            channel.setUrgentCancellation(true);
+
+            // Many exchange points pass, so the writer polls right where the reader sends its state.
+            Channel.ReadableDescriptor descriptor = channel.readBegin(Config.DEFAULT_BUFFER_SIZE, 4);
+            byte[] received = new byte[data.length];
+            int position = 0;
+
+            while (descriptor.hasAvailable()) {
+                int len = descriptor.read();
+                if (len > 0) {
+                    System.arraycopy(descriptor.byteBuffer.array(), 0, received, position, len);
+                    position += len;
+                }
+            }
+
+            Assert.assertEquals("The whole data should be received.", data.length, position);
+            Assert.assertArrayEquals("The data should be received intact.", data, received);
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    /**
+     * Cancel a long read and measure how long it takes the writer to stop.
+     *
+     * @param urgent Whether to use urgent cancellation.
+     * @return The number of chunks the writer wrote after the cancellation, and the time in nanoseconds the reader
+     * waited for its exception.
+     */
+    private long[] measureReaderCancellation(boolean urgent) throws IOException, InterruptedException {
+        final String message = "Nothing more to send.";
+        final byte[] chunk = new byte[8192];
+        final AtomicInteger chunksAfterCancellation = new AtomicInteger(-1);
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                channel.setUrgentCancellation(urgent);
+                try {
+                    Channel.WritableDescriptor descriptor = channel.writeBegin(Flags.FLAG_DATA_CHUNKED);
+                    try {
+                        while (true) {
+                            descriptor.write(chunk);
+                            if (chunksAfterCancellation.get() >= 0)
+                                chunksAfterCancellation.incrementAndGet();
+                        }
+                    } catch (CancelledException e) {
+                        channel.writeAll(message.getBytes());
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            channel.setUrgentCancellation(urgent);
+            Channel.ReadableDescriptor descriptor = channel.readBegin();
+            long readLength = 0;
+            long cancelTime = 0;
+
+            try {
+                while (true) {
+                    readLength += descriptor.read();
+                    if (cancelTime == 0 && readLength >= 1024 * 1024) {
+                        chunksAfterCancellation.set(0);
+                        cancelTime = System.nanoTime();
+                        channel.cancel();
+                    }
+                }
+            } catch (CancelledException e) {
+                Assert.assertFalse("The cancellation should be ours.", e.remoteRequested);
+            }
+
+            long latency = System.nanoTime() - cancelTime;
+
+            Assert.assertEquals("The channel should remain usable.", message, channel.readAll().getAsString());
+            return new long[]{chunksAfterCancellation.get(), latency};
+        } finally {
+            coolSocket.stop();
+        }
+    }
 }
@@ -4,11 +4,19 @@ import org.jetbrains.annotations.NotNull;
 import org.junit.Assert;
 import org.junit.Test;
 import org.monora.coolsocket.core.config.Config;
+import org.monora.coolsocket.core.response.Flags;
+import org.monora.coolsocket.core.response.Response;
 import org.monora.coolsocket.core.response.SizeMismatchException;
 import org.monora.coolsocket.core.response.SizeOverflowException;
 import org.monora.coolsocket.core.response.SizeUnderflowException;
+import org.monora.coolsocket.core.session.CancelledException;
 import org.monora.coolsocket.core.session.Channel;
 import org.monora.coolsocket.core.session.DescriptorClosedException;
+import org.monora.coolsocket.core.session.RecordReader;
+import org.monora.coolsocket.core.session.RecordWriter;
+import org.monora.coolsocket.core.session.RejectedException;
+import org.monora.coolsocket.core.session.StripedTransfer;
+import org.monora.coolsocket.core.util.TokenBucket;
 import org.monora.coolsocket.core.variant.Connections;
 import org.monora.coolsocket.core.variant.DefaultCoolSocket;
 
@@ -16,10 +24,30 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 public class DataTransactionTest {
@@ -67,6 +95,639 @@ public class DataTransactionTest {
         }
     }
 
+    @Test
+    public void rateLimiterSlowsDownWritesTest() throws IOException, InterruptedException {
+        final byte[] data = new byte[256 * 1024];
+        Arrays.fill(data, (byte) 7);
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    channel.addRateLimiter(new TokenBucket(512 * 1024, Config.RATE_LIMIT_QUANTUM));
+                    channel.writeAll(data);
+                } catch (IOException ignored) {
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            long startTime = System.nanoTime();
+            byte[] received = channel.readAll(0).getBytes();
+            long elapsedTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+            Assert.assertArrayEquals("The data should match.", data, received);
+            Assert.assertTrue("The write should take about half a second, took " + elapsedTime + " ms.",
+                    elapsedTime >= 400);
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    @Test(timeout = 3000)
+    public void rejectedHeaderStopsWriterEarlyTest() throws IOException, InterruptedException {
+        final String reason = "No thanks.";
+        final String message = "Hello!";
+        final String[] rejectedReason = new String[1];
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    channel.writeAll(new byte[1024 * 1024]);
+                } catch (RejectedException e) {
+                    rejectedReason[0] = e.reason;
+                    try {
+                        channel.writeAll(message.getBytes());
+                    } catch (IOException ignored) {
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            channel.setHeaderFilter((activeChannel, flags, totalLength) -> totalLength > 1024 ? reason : null);
+
+            try {
+                channel.readAll(0);
+                Assert.fail("The operation should have been rejected.");
+            } catch (RejectedException e) {
+                Assert.assertFalse("The rejection should be local.", e.remoteRequested);
+                Assert.assertEquals("The reason should match.", reason, e.reason);
+            }
+
+            Assert.assertEquals("The channel should remain usable.", message, channel.readAll().getAsString());
+            Assert.assertEquals("The writer should receive the reason.", reason, rejectedReason[0]);
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    @Test(timeout = 3000, expected = SizeOverflowException.class)
+    public void readAllRejectsLongDataBeforeItIsSentTest() throws IOException, InterruptedException {
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    channel.writeAll(new byte[1024 * 1024]);
+                } catch (IOException ignored) {
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            channel.readAll(1024);
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void failedReadsDoNotLeaveChannelBusyTest() throws IOException, InterruptedException {
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    Channel.WritableDescriptor descriptor = channel.writeBegin(0);
+                    for (int i = 0; i < 8; i++)
+                        descriptor.write(new byte[8192]);
+                    descriptor.writeEnd();
+                } catch (IOException ignored) {
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try {
+            try (Channel channel = Connections.open()) {
+                channel.setHeaderFilter((activeChannel, flags, totalLength) -> {
+                    throw new IllegalStateException("The filter failed.");
+                });
+
+                try {
+                    channel.readAll(0);
+                    Assert.fail("The error of the filter should be thrown.");
+                } catch (IllegalStateException ignored) {
+                }
+
+                Assert.assertFalse("A failing header filter should not leave the channel busy.", channel.isBusy());
+            }
+
+            // The length of chunked data is only known as it is read.
+            try (Channel channel = Connections.open()) {
+                try {
+                    channel.readAll(1024);
+                    Assert.fail("The data should be too long.");
+                } catch (SizeOverflowException ignored) {
+                }
+
+                Assert.assertFalse("An overflowing read should not leave the channel busy.", channel.isBusy());
+            }
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void pausedWriterWaitsForResumeTest() throws IOException, InterruptedException {
+        final int chunkCount = 64;
+        final long pauseTime = 600;
+        final AtomicLong longestGap = new AtomicLong();
+        final AtomicReference<IOException> writerError = new AtomicReference<>();
+        final CountDownLatch finishedLatch = new CountDownLatch(1);
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    // Shorter than the pause, so a timed read would fail.
+                    channel.getSocket().setSoTimeout(200);
+
+                    byte[] chunk = new byte[8192];
+                    Channel.WritableDescriptor descriptor = channel.writeBegin(0);
+                    long lastTime = System.nanoTime();
+
+                    for (int i = 0; i < chunkCount; i++) {
+                        descriptor.write(chunk);
+                        long now = System.nanoTime();
+                        longestGap.set(Math.max(longestGap.get(), now - lastTime));
+                        lastTime = now;
+                    }
+
+                    descriptor.writeEnd();
+                } catch (IOException e) {
+                    writerError.set(e);
+                } finally {
+                    finishedLatch.countDown();
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            Channel.ReadableDescriptor descriptor = channel.readBegin(Config.DEFAULT_BUFFER_SIZE, 4);
+            long readLength = 0;
+            boolean paused = false;
+            int len;
+
+            do {
+                len = descriptor.read();
+                if (len > 0)
+                    readLength += len;
+
+                if (!paused && readLength >= 16 * 8192) {
+                    paused = true;
+                    channel.pause();
+                    new Thread(() -> {
+                        try {
+                            Thread.sleep(pauseTime);
+                        } catch (InterruptedException ignored) {
+                        }
+                        channel.resume();
+                    }).start();
+                }
+            } while (descriptor.hasAvailable());
+
+            Assert.assertTrue("The writer should have finished.", finishedLatch.await(1, TimeUnit.SECONDS));
+            Assert.assertNull("The writer should not time out while paused.", writerError.get());
+            Assert.assertEquals("The data should be received in full.", chunkCount * 8192L, readLength);
+            Assert.assertTrue("The writer should have waited for the reader.",
+                    TimeUnit.NANOSECONDS.toMillis(longestGap.get()) >= pauseTime - 100);
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void resumableTransferContinuesAfterReconnectTest() throws IOException, InterruptedException {
+        final long transferId = 42;
+        final byte[] data = new byte[1024 * 1024];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (i * 31);
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    channel.writeAll(new ByteArrayInputStream(data), data.length, transferId);
+                } catch (IOException ignored) {
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        try {
+            // The first connection drops after receiving a part of the data.
+            try (Channel channel = Connections.open()) {
+                Channel.ReadableDescriptor descriptor = channel.readBegin();
+                while (received.size() < data.length / 3) {
+                    int len = descriptor.read();
+                    received.write(descriptor.byteBuffer.array(), 0, len);
+                }
+            }
+
+            final long committed = received.size();
+
+            try (Channel channel = Connections.open()) {
+                channel.setResumeStore((activeChannel, id, totalLength) -> id == transferId ? committed : 0);
+
+                Channel.ReadableDescriptor descriptor = channel.readBegin();
+                Assert.assertEquals("The transfer should continue from the committed offset.", committed,
+                        descriptor.startOffset());
+
+                while (descriptor.hasAvailable()) {
+                    int len = descriptor.read();
+                    received.write(descriptor.byteBuffer.array(), 0, len);
+                }
+            }
+
+            Assert.assertArrayEquals("The resumed data should match.", data, received.toByteArray());
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void stripedTransferReassemblesPayloadTest() throws IOException, InterruptedException {
+        final int channelCount = 4;
+        final byte[] data = new byte[8 * 1024 * 1024];
+        new Random(7).nextBytes(data);
+
+        final BlockingQueue<Channel> serverChannels = new LinkedBlockingQueue<>();
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                channel.setRoaming(true);
+                serverChannels.add(channel);
+            }
+        };
+
+        coolSocket.start();
+
+        Path target = Files.createTempFile("striped", ".bin");
+        List<Channel> clientChannels = new ArrayList<>();
+        List<Channel> receivingChannels = new ArrayList<>();
+
+        try (FileChannel fileChannel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < channelCount; i++) {
+                clientChannels.add(Connections.open());
+                receivingChannels.add(serverChannels.take());
+            }
+
+            StripedTransfer stripedTransfer = new StripedTransfer(256 * 1024);
+            AtomicReference<StripedTransfer.Report> sendReport = new AtomicReference<>();
+            AtomicReference<IOException> sendError = new AtomicReference<>();
+            Thread senderThread = new Thread(() -> {
+                try {
+                    sendReport.set(stripedTransfer.send(clientChannels, ByteBuffer.wrap(data)));
+                } catch (IOException e) {
+                    sendError.set(e);
+                }
+            });
+
+            senderThread.start();
+            StripedTransfer.Report report = stripedTransfer.receive(receivingChannels, fileChannel);
+            senderThread.join();
+
+            Assert.assertNull("The sender should not fail.", sendError.get());
+            Assert.assertEquals("The whole payload should be received.", data.length, report.length);
+            Assert.assertEquals("All the stripes should be received.", 32, report.stripeCount);
+            Assert.assertEquals("Both sides should count the same stripes.", report.stripeCount,
+                    sendReport.get().stripeCount);
+            Assert.assertArrayEquals("The payload should be reassembled in order.", data, Files.readAllBytes(target));
+
+            Logger.getAnonymousLogger().fine(String.format("Striped transfer over %d channels: %.1f MB/s",
+                    channelCount, report.throughput() / 1e6));
+        } finally {
+            for (Channel channel : clientChannels)
+                channel.close();
+            for (Channel channel : receivingChannels)
+                channel.close();
+
+            Files.deleteIfExists(target);
+            coolSocket.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void recordStreamBatchesAndFlushesRecordsTest() throws IOException, InterruptedException {
+        final int recordCount = 5000;
+        final byte[] lastRecord = "last".getBytes();
+        final CountDownLatch lastRecordLatch = new CountDownLatch(1);
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try (RecordWriter writer = new RecordWriter(channel.writeBegin(0),
+                        RecordWriter.DEFAULT_BATCH_SIZE, 50, scheduler)) {
+                    for (int i = 0; i < recordCount; i++)
+                        writer.write(newRecord(i));
+
+                    // Only the scheduler can send this one, since the writer waits before closing.
+                    writer.write(lastRecord);
+                    lastRecordLatch.await();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            RecordReader reader = new RecordReader(channel.readBegin(), 64 * 1024);
+
+            for (int i = 0; i < recordCount; i++) {
+                ByteBuffer record = reader.next();
+                Assert.assertNotNull("The record should be received.", record);
+                Assert.assertTrue("The record should not be copied.", record.isReadOnly());
+                Assert.assertEquals("The record should match.", ByteBuffer.wrap(newRecord(i)), record);
+            }
+
+            Assert.assertEquals("The last record should be flushed after the interval.", ByteBuffer.wrap(lastRecord),
+                    reader.next());
+            lastRecordLatch.countDown();
+            Assert.assertNull("The stream should end after the writer is closed.", reader.next());
+        } finally {
+            scheduler.shutdown();
+            coolSocket.stop();
+        }
+    }
+
+    private static byte @NotNull [] newRecord(int index) {
+        // Every thousandth record is too long to be batched.
+        byte[] record = new byte[index % 1000 == 999 ? 40000 : index % 200];
+        Arrays.fill(record, (byte) index);
+        return record;
+    }
+
+    @Test(timeout = 10000)
+    public void relayForwardsOperationsTest() throws Exception {
+        final byte[] data = new byte[1024 * 1024];
+        new Random(11).nextBytes(data);
+        final long flags = Flags.withRoute(0, 7);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Channel[] front = openPair(server);
+            Channel[] back = openPair(server);
+
+            AtomicReference<Throwable> originError = new AtomicReference<>();
+            Thread originThread = new Thread(() -> {
+                try {
+                    Channel.WritableDescriptor descriptor = front[0].writeBegin(flags, data.length);
+                    descriptor.write(data);
+                    descriptor.writeEnd();
+
+                    descriptor = front[0].writeBegin(Flags.FLAG_DATA_CHUNKED);
+                    for (int i = 0; i < data.length; i += 100000)
+                        descriptor.write(data, i, Math.min(100000, data.length - i));
+                    descriptor.writeEnd();
+                } catch (Throwable e) {
+                    originError.set(e);
+                }
+            });
+
+            AtomicLong relayedLength = new AtomicLong();
+            AtomicReference<Throwable> gatewayError = new AtomicReference<>();
+            Thread gatewayThread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2; i++)
+                        relayedLength.addAndGet(Channel.relay(front[1].readBegin(), back[0]));
+                } catch (Throwable e) {
+                    gatewayError.set(e);
+                }
+            });
+
+            originThread.start();
+            gatewayThread.start();
+
+            try {
+                Response fixed = back[1].readAll(0);
+                Assert.assertEquals("The route should be forwarded.", 7, fixed.flags.route());
+                Assert.assertFalse("The fixed length should be forwarded.", fixed.flags.chunked());
+                Assert.assertArrayEquals("The fixed data should be forwarded intact.", data, fixed.getBytes());
+
+                Response chunked = back[1].readAll(0);
+                Assert.assertTrue("The chunked flag should be forwarded.", chunked.flags.chunked());
+                Assert.assertArrayEquals("The chunked data should be forwarded intact.", data, chunked.getBytes());
+
+                originThread.join();
+                gatewayThread.join();
+
+                Assert.assertNull("The origin should not fail.", originError.get());
+                Assert.assertNull("The gateway should not fail.", gatewayError.get());
+                Assert.assertEquals("The relay should report what it forwarded.", data.length * 2L,
+                        relayedLength.get());
+            } finally {
+                for (Channel channel : front)
+                    channel.close();
+                for (Channel channel : back)
+                    channel.close();
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void rateLimitedChannelWritesDirectBuffersIntactTest() throws Exception {
+        final byte[] data = new byte[100000];
+        new Random(13).nextBytes(data);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Channel[] pair = openPair(server);
+            pair[0].addRateLimiter(new TokenBucket(64 * 1024 * 1024, Config.RATE_LIMIT_QUANTUM));
+
+            AtomicReference<Throwable> writerError = new AtomicReference<>();
+            Thread writerThread = new Thread(() -> {
+                try {
+                    Channel.WritableDescriptor descriptor = pair[0].writeBegin(Flags.FLAG_DATA_CHUNKED);
+                    for (int i = 0; i < 2; i++) {
+                        // A direct buffer has no array to write from, so it is copied through the quantum buffer.
+                        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+                        buffer.put(data).flip();
+                        descriptor.write(buffer);
+                    }
+                    descriptor.writeEnd();
+                } catch (Throwable e) {
+                    writerError.set(e);
+                }
+            });
+
+            writerThread.start();
+
+            try {
+                byte[] expected = new byte[data.length * 2];
+                System.arraycopy(data, 0, expected, 0, data.length);
+                System.arraycopy(data, 0, expected, data.length, data.length);
+
+                Assert.assertArrayEquals("The data should arrive intact.", expected, pair[1].readAll(0).getBytes());
+
+                writerThread.join();
+                Assert.assertNull("The writer should not fail.", writerError.get());
+            } finally {
+                for (Channel channel : pair)
+                    channel.close();
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void relayForwardsEmptyOperationsTest() throws Exception {
+        final byte[] data = "after the empty ones".getBytes();
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Channel[] front = openPair(server);
+            Channel[] back = openPair(server);
+
+            AtomicReference<Throwable> originError = new AtomicReference<>();
+            Thread originThread = new Thread(() -> {
+                try {
+                    front[0].writeAll(new byte[0]);
+
+                    // An empty direct buffer still goes as a chunk with its length prefix.
+                    Channel.WritableDescriptor descriptor = front[0].writeBegin(Flags.FLAG_DATA_CHUNKED);
+                    descriptor.write(ByteBuffer.allocateDirect(0));
+                    descriptor.writeEnd();
+
+                    front[0].writeAll(data);
+                } catch (Throwable e) {
+                    originError.set(e);
+                }
+            });
+
+            AtomicLong relayedLength = new AtomicLong();
+            AtomicReference<Throwable> gatewayError = new AtomicReference<>();
+            Thread gatewayThread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 3; i++)
+                        relayedLength.addAndGet(Channel.relay(front[1].readBegin(), back[0]));
+                } catch (Throwable e) {
+                    gatewayError.set(e);
+                }
+            });
+
+            originThread.start();
+            gatewayThread.start();
+
+            try {
+                Response empty = back[1].readAll(0);
+                Assert.assertFalse("The empty fixed length should be forwarded.", empty.flags.chunked());
+                Assert.assertEquals("The empty message should stay empty.", 0, empty.length);
+
+                Response emptyChunked = back[1].readAll(0);
+                Assert.assertTrue("The chunked flag should be forwarded.", emptyChunked.flags.chunked());
+                Assert.assertEquals("The empty chunk should stay empty.", 0, emptyChunked.length);
+
+                Response next = back[1].readAll(0);
+                Assert.assertArrayEquals("The channels should stay in sync after the empty operations.", data,
+                        next.getBytes());
+
+                originThread.join();
+                gatewayThread.join();
+
+                Assert.assertNull("The origin should not fail.", originError.get());
+                Assert.assertNull("The gateway should not fail.", gatewayError.get());
+                Assert.assertEquals("The relay should report what it forwarded.", data.length, relayedLength.get());
+            } finally {
+                for (Channel channel : front)
+                    channel.close();
+                for (Channel channel : back)
+                    channel.close();
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void relayPassesCancellationToSourceTest() throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Channel[] front = openPair(server);
+            Channel[] back = openPair(server);
+
+            front[0].setUrgentCancellation(true);
+            front[1].setUrgentCancellation(true);
+
+            AtomicReference<Throwable> originError = new AtomicReference<>();
+            Thread originThread = new Thread(() -> {
+                try {
+                    Channel.WritableDescriptor descriptor = front[0].writeBegin(Flags.FLAG_DATA_CHUNKED);
+                    byte[] chunk = new byte[8192];
+                    for (int i = 0; i < 100000; i++)
+                        descriptor.write(chunk);
+                    descriptor.writeEnd();
+                } catch (Throwable e) {
+                    originError.set(e);
+                }
+            });
+
+            AtomicReference<Throwable> gatewayError = new AtomicReference<>();
+            Thread gatewayThread = new Thread(() -> {
+                try {
+                    Channel.relay(front[1].readBegin(), back[0]);
+                } catch (Throwable e) {
+                    gatewayError.set(e);
+                }
+            });
+
+            originThread.start();
+            gatewayThread.start();
+
+            try {
+                Channel.ReadableDescriptor descriptor = back[1].readBegin(Config.DEFAULT_BUFFER_SIZE, 4);
+                descriptor.read();
+                back[1].cancel();
+
+                try {
+                    while (descriptor.hasAvailable())
+                        descriptor.read();
+                    Assert.fail("The target should see its own cancellation.");
+                } catch (CancelledException ignored) {
+                }
+
+                originThread.join();
+                gatewayThread.join();
+
+                Assert.assertTrue("The gateway should fail with the cancellation of the target.",
+                        gatewayError.get() instanceof CancelledException);
+                Assert.assertTrue("The cancellation should reach the origin.",
+                        originError.get() instanceof CancelledException);
+            } finally {
+                for (Channel channel : front)
+                    channel.close();
+                for (Channel channel : back)
+                    channel.close();
+            }
+        }
+    }
+
+    /**
+     * Connect two channels through the given server, both backed by socket channels.
+     *
+     * @param server To accept the connection with.
+     * @return The connecting and the accepted channels.
+     */
+    private static Channel @NotNull [] openPair(@NotNull ServerSocketChannel server) throws IOException {
+        SocketChannel client = SocketChannel.open(server.getLocalAddress());
+        SocketChannel accepted = server.accept();
+        return new Channel[]{Channel.wrap(client.socket()), Channel.wrap(accepted.socket())};
+    }
+
     @Test(expected = SizeMismatchException.class)
     public void exceedingInternalCacheGivesError() throws IOException, InterruptedException {
         CoolSocket coolSocket = new DefaultCoolSocket() {
@@ -6,11 +6,23 @@ import org.junit.Test;
 import org.monora.coolsocket.core.response.Response;
 import org.monora.coolsocket.core.session.Channel;
 import org.monora.coolsocket.core.variant.*;
+import org.monora.coolsocket.core.variant.factory.TestConfigFactory;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
 import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class PlainTransactionTest {
     @Test
@@ -438,4 +450,215 @@ public class PlainTransactionTest {
             coolSocket.stop();
         }
     }
+
+    @Test(timeout = 10000)
+    public void streamsBothWaysAtOnceWhenMultichannelEnabled() throws Exception {
+        final int count = 256;
+        final AtomicReference<Throwable> serverError = new AtomicReference<>();
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel activeConnection) {
+                activeConnection.setMultichannel(true);
+                try {
+                    streamBothWays(activeConnection, count);
+                } catch (Throwable e) {
+                    serverError.set(e);
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            channel.setMultichannel(true);
+            streamBothWays(channel, count);
+        } finally {
+            coolSocket.stop();
+        }
+
+        Assert.assertNull("The server should receive the data intact.", serverError.get());
+    }
+
+    @Test(timeout = 10000)
+    public void corkedChannelCoalescesSmallWritesTest() throws Exception {
+        final int count = 200;
+        final AtomicReference<Throwable> serverError = new AtomicReference<>();
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel activeConnection) {
+                activeConnection.setMultichannel(true);
+                try {
+                    for (int i = 0; i < count * 2; i++)
+                        Assert.assertEquals("The message should match.", "Message " + i,
+                                activeConnection.readAll(0).getAsString());
+
+                    activeConnection.writeAll("Done".getBytes());
+                } catch (Throwable e) {
+                    serverError.set(e);
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        final AtomicInteger writeCount = new AtomicInteger();
+        Socket socket = new Socket() {
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return new FilterOutputStream(super.getOutputStream()) {
+                    @Override
+                    public void write(byte @NotNull [] b, int off, int len) throws IOException {
+                        writeCount.incrementAndGet();
+                        out.write(b, off, len);
+                    }
+                };
+            }
+        };
+
+        socket.connect(TestConfigFactory.SOCKET_ADDRESS);
+        socket.setSoTimeout(TestConfigFactory.TIMEOUT_READ);
+
+        try (Channel channel = Channel.wrap(socket)) {
+            channel.setMultichannel(true);
+            for (int i = 0; i < count; i++)
+                channel.writeAll(("Message " + i).getBytes());
+
+            int uncorkedWriteCount = writeCount.getAndSet(0);
+            channel.cork();
+            Assert.assertTrue("Nagle's algorithm should be disabled while corked.", channel.getSocket().getTcpNoDelay());
+
+            for (int i = count; i < count * 2; i++)
+                channel.writeAll(("Message " + i).getBytes());
+
+            // The reply is only sent after the last message, which is held back until the read or the delay.
+            Assert.assertEquals("The server should receive all the messages.", "Done",
+                    channel.readAll(0).getAsString());
+            Assert.assertTrue("The corked writes should be coalesced: " + writeCount.get() + " vs "
+                    + uncorkedWriteCount, writeCount.get() * 4 < uncorkedWriteCount);
+        } finally {
+            coolSocket.stop();
+        }
+
+        Assert.assertNull("The server should receive the messages intact.", serverError.get());
+    }
+
+    @Test(timeout = 10000)
+    public void corkedChannelFlushesOffTheTimerThreadTest() throws Exception {
+        final BlockingQueue<String> messageQueue = new LinkedBlockingQueue<>();
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel activeConnection) {
+                activeConnection.setMultichannel(true);
+                try {
+                    messageQueue.add(activeConnection.readAll(0).getAsString());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        final Set<String> writerSet = ConcurrentHashMap.newKeySet();
+        Socket socket = new Socket() {
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return new FilterOutputStream(super.getOutputStream()) {
+                    @Override
+                    public void write(byte @NotNull [] b, int off, int len) throws IOException {
+                        writerSet.add(Thread.currentThread().getName());
+                        out.write(b, off, len);
+                    }
+                };
+            }
+        };
+
+        socket.connect(TestConfigFactory.SOCKET_ADDRESS);
+        socket.setSoTimeout(TestConfigFactory.TIMEOUT_READ);
+
+        try (Channel channel = Channel.wrap(socket)) {
+            channel.setMultichannel(true);
+            channel.cork(1024, 1000);
+            writerSet.clear();
+            channel.writeAll("Message".getBytes());
+
+            // Nothing reads from the channel, so only the flush delay can send the message.
+            Assert.assertEquals("The message should be sent after the delay.", "Message",
+                    messageQueue.poll(5, TimeUnit.SECONDS));
+            Assert.assertFalse("The timer thread should not write to the socket: " + writerSet,
+                    writerSet.contains("CoolSocket Timer"));
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void corkedChannelExchangesRepliesTest() throws IOException, InterruptedException {
+        final int count = 50;
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel activeConnection) {
+                try {
+                    activeConnection.cork();
+                    for (int i = 0; i < count; i++)
+                        activeConnection.writeAll(activeConnection.readAll(0).getBytes());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            channel.cork(64, 100_000);
+            for (int i = 0; i < count; i++) {
+                channel.writeAll(("Echo " + i).getBytes());
+                Assert.assertEquals("The reply should not wait for the delay.", "Echo " + i,
+                        channel.readAll(0).getAsString());
+            }
+
+            channel.uncork();
+            Assert.assertFalse("The channel should be uncorked.", channel.isCorked());
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    /**
+     * Write the given number of payloads on a separate thread while reading the same number on this thread.
+     *
+     * @param channel To stream over.
+     * @param count   The number of payloads to send and receive.
+     */
+    private static void streamBothWays(Channel channel, int count) throws Exception {
+        AtomicReference<Throwable> writerError = new AtomicReference<>();
+        Thread writerThread = new Thread(() -> {
+            try {
+                byte[] payload = new byte[64 * 1024];
+                for (int i = 0; i < count; i++) {
+                    Arrays.fill(payload, (byte) i);
+                    channel.writeAll(payload);
+                }
+            } catch (Throwable e) {
+                writerError.set(e);
+            }
+        });
+
+        writerThread.start();
+
+        byte[] expected = new byte[64 * 1024];
+        for (int i = 0; i < count; i++) {
+            Arrays.fill(expected, (byte) i);
+            Assert.assertArrayEquals("The payload " + i + " should match.", expected, channel.readAll(0).getBytes());
+        }
+
+        writerThread.join();
+        if (writerError.get() != null)
+            throw new AssertionError("The writer should not fail.", writerError.get());
+    }
 }
@@ -3,12 +3,16 @@ package org.monora.coolsocket.core;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 import org.monora.coolsocket.core.session.Channel;
+import org.monora.coolsocket.core.session.DeadlineExceededException;
 import org.monora.coolsocket.core.session.DescriptorMismatchException;
 import org.monora.coolsocket.core.variant.Connections;
 import org.monora.coolsocket.core.variant.DefaultCoolSocket;
 
 import java.io.IOException;
 
+import static org.monora.coolsocket.core.config.Config.DEFAULT_BUFFER_SIZE;
+import static org.monora.coolsocket.core.config.Config.DEFAULT_INVERSE_EXCHANGE_POINT;
+
 public class SafetyTest {
     @Test(expected = DescriptorMismatchException.class)
     public void blockReadingFromForeignDescription() throws IOException, InterruptedException {
@@ -40,4 +44,36 @@ public class SafetyTest {
             coolSocket.stop();
         }
     }
+
+    @Test(expected = DeadlineExceededException.class, timeout = 5000)
+    public void stalledReadFailsAfterDeadline() throws IOException, InterruptedException {
+        final byte[] bytes = new byte[10];
+
+        CoolSocket coolSocket = new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    Channel.WritableDescriptor descriptor = channel.writeBegin(0, bytes.length * 2);
+                    descriptor.write(bytes);
+
+                    // stall before sending the rest
+                    Thread.sleep(3000);
+                } catch (IOException | InterruptedException ignored) {
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try (Channel channel = Connections.open()) {
+            Channel.ReadableDescriptor descriptor = channel.readBegin(DEFAULT_BUFFER_SIZE,
+                    DEFAULT_INVERSE_EXCHANGE_POINT, 300);
+
+            while (descriptor.hasAvailable()) {
+                descriptor.read();
+            }
+        } finally {
+            coolSocket.stop();
+        }
+    }
 }
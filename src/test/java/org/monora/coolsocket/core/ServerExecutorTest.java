@@ -0,0 +1,301 @@
+package org.monora.coolsocket.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+import org.monora.coolsocket.core.server.DefaultAdmissionController;
+import org.monora.coolsocket.core.server.DefaultServerExecutorFactory;
+import org.monora.coolsocket.core.server.MultiAcceptorServerExecutorFactory;
+import org.monora.coolsocket.core.server.ServerExecutorFactory;
+import org.monora.coolsocket.core.session.Channel;
+import org.monora.coolsocket.core.variant.Connections;
+import org.monora.coolsocket.core.variant.DefaultCoolSocket;
+import org.monora.coolsocket.core.variant.factory.TestConfigFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+public class ServerExecutorTest {
+    private static final int CHURN_THREADS = 4;
+
+    private static final int CHURN_CONNECTIONS_PER_THREAD = 250;
+
+    private final Logger logger = Logger.getLogger(ServerExecutorTest.class.getName());
+
+    /**
+     * Open and close short-lived connections from multiple threads, and return the time it took.
+     */
+    private static long churn(@NotNull ServerExecutorFactory factory) throws IOException, InterruptedException {
+        final byte[] message = "pong".getBytes();
+        final AtomicInteger completed = new AtomicInteger();
+        TestConfigFactory configFactory = new TestConfigFactory();
+        configFactory.setReusePort(true);
+
+        CoolSocket coolSocket = new CoolSocket(configFactory) {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    channel.writeAll(message);
+                } catch (IOException ignored) {
+                }
+            }
+        };
+
+        coolSocket.setServerExecutorFactory(factory);
+        coolSocket.start();
+
+        List<Thread> threadList = new ArrayList<>();
+        long startTime = System.nanoTime();
+
+        try {
+            for (int i = 0; i < CHURN_THREADS; i++) {
+                Thread thread = new Thread(() -> {
+                    for (int j = 0; j < CHURN_CONNECTIONS_PER_THREAD; j++) {
+                        try (Channel channel = Connections.open()) {
+                            channel.readAll();
+                            completed.incrementAndGet();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                });
+                threadList.add(thread);
+                thread.start();
+            }
+
+            for (Thread thread : threadList)
+                thread.join();
+        } finally {
+            coolSocket.stop();
+        }
+
+        Assert.assertEquals("Every connection should be served.", CHURN_THREADS * CHURN_CONNECTIONS_PER_THREAD,
+                completed.get());
+
+        return System.nanoTime() - startTime;
+    }
+
+    private static CoolSocket createHoldingServer() {
+        return new DefaultCoolSocket() {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    channel.readAll();
+                } catch (IOException ignored) {
+                }
+            }
+        };
+    }
+
+    @Test
+    public void admissionLimitsConnectionsPerAddressTest() throws IOException, InterruptedException {
+        DefaultAdmissionController admissionController = new DefaultAdmissionController(2,
+                DefaultAdmissionController.UNLIMITED, 0);
+        DefaultServerExecutorFactory factory = new DefaultServerExecutorFactory();
+        factory.setAdmissionController(admissionController);
+
+        CoolSocket coolSocket = createHoldingServer();
+        coolSocket.setServerExecutorFactory(factory);
+        coolSocket.start();
+
+        try (Channel first = Connections.open(); Channel second = Connections.open();
+             Channel third = Connections.open()) {
+            try {
+                third.readAll();
+                Assert.fail("The third connection should be rejected.");
+            } catch (SocketException ignored) {
+            }
+
+            Assert.assertEquals("Two connections should be admitted.", 2, admissionController.getAdmittedCount());
+            Assert.assertEquals("One connection should be rejected.", 1,
+                    admissionController.getRejectedByConnectionLimitCount());
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    @Test
+    public void admissionLimitsAcceptRateTest() throws IOException, InterruptedException {
+        DefaultAdmissionController admissionController = new DefaultAdmissionController(
+                DefaultAdmissionController.UNLIMITED, 0.1, 2);
+        DefaultServerExecutorFactory factory = new DefaultServerExecutorFactory();
+        factory.setAdmissionController(admissionController);
+
+        CoolSocket coolSocket = createHoldingServer();
+        coolSocket.setServerExecutorFactory(factory);
+        coolSocket.start();
+
+        try {
+            for (int i = 0; i < 2; i++) {
+                try (Channel channel = Connections.open()) {
+                    channel.writeAll(new byte[0]);
+                }
+            }
+
+            try (Channel channel = Connections.open()) {
+                channel.readAll();
+                Assert.fail("The connection exceeding the burst should be rejected.");
+            } catch (SocketException ignored) {
+            }
+
+            Assert.assertEquals("One connection should be rejected.", 1,
+                    admissionController.getRejectedByRateLimitCount());
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void connectionChurnTest() throws IOException, InterruptedException {
+        int total = CHURN_THREADS * CHURN_CONNECTIONS_PER_THREAD;
+        long single = churn(new DefaultServerExecutorFactory());
+        long multiple = churn(new MultiAcceptorServerExecutorFactory(CHURN_THREADS, 2));
+
+        logger.info(String.format("Connection churn: single acceptor %.0f conn/s, %d acceptors %.0f conn/s",
+                total * 1e9 / single, CHURN_THREADS, total * 1e9 / multiple));
+    }
+
+    @Test(timeout = 60000)
+    public void multiAcceptorHotRestartKeepsAcceptingTest() throws IOException, InterruptedException {
+        final byte[] message = "pong".getBytes();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        TestConfigFactory configFactory = new TestConfigFactory();
+        configFactory.setReusePort(true);
+        configFactory.setBacklog(128);
+
+        CoolSocket coolSocket = new CoolSocket(configFactory) {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    channel.writeAll(message);
+                } catch (IOException ignored) {
+                }
+            }
+        };
+
+        coolSocket.setServerExecutorFactory(new MultiAcceptorServerExecutorFactory(CHURN_THREADS, 2));
+        coolSocket.start();
+
+        List<Thread> threadList = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < CHURN_THREADS; i++) {
+                Thread thread = new Thread(() -> {
+                    for (int j = 0; j < CHURN_CONNECTIONS_PER_THREAD; j++) {
+                        try (Channel channel = Connections.open()) {
+                            channel.readAll();
+                            completed.incrementAndGet();
+                        } catch (IOException e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                });
+                threadList.add(thread);
+                thread.start();
+            }
+
+            // The connections waiting in the backlogs of the server sockets should survive the restarts.
+            for (int i = 0; i < 3; i++) {
+                Thread.sleep(50);
+                coolSocket.hotRestart();
+            }
+
+            for (Thread thread : threadList)
+                thread.join();
+        } finally {
+            coolSocket.stop();
+        }
+
+        Assert.assertEquals("No connection should be lost to the restarts.", 0, failed.get());
+        Assert.assertEquals("Every connection should be served.", CHURN_THREADS * CHURN_CONNECTIONS_PER_THREAD,
+                completed.get());
+    }
+
+    @Test(timeout = 20000)
+    public void multiAcceptorHotRestartRetiresWithoutConnectionsTest() throws IOException, InterruptedException {
+        TestConfigFactory configFactory = new TestConfigFactory();
+        configFactory.setReusePort(true);
+        configFactory.setAcceptTimeout(0);
+
+        CoolSocket coolSocket = new CoolSocket(configFactory);
+        coolSocket.setServerExecutorFactory(new MultiAcceptorServerExecutorFactory(CHURN_THREADS, 2));
+        coolSocket.start();
+
+        try {
+            coolSocket.hotRestart();
+
+            CoolSocket.Session session = coolSocket.getSession();
+            Assert.assertNotNull("The session should be available.", session);
+
+            // No connection arrives, and accept() doesn't time out, so the replaced acceptors should exit on their own.
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!session.getRetiredConnectionManagers().isEmpty() && System.currentTimeMillis() < deadline)
+                Thread.sleep(50);
+
+            Assert.assertTrue("The replaced executor should exit without a connection.",
+                    session.getRetiredConnectionManagers().isEmpty());
+
+            Assert.assertTrue("The session should keep listening.", coolSocket.isListening());
+        } finally {
+            coolSocket.stop();
+        }
+    }
+
+    @Test
+    public void listensOnMultipleAddressesTest() throws IOException, InterruptedException {
+        final byte[] message = "Hello".getBytes();
+        TestConfigFactory configFactory = new TestConfigFactory();
+        configFactory.addSocketAddress(new InetSocketAddress(TestConfigFactory.SOCKET_ADDRESS_HOST, 0));
+
+        CoolSocket coolSocket = new CoolSocket(configFactory) {
+            @Override
+            public void onConnected(@NotNull Channel channel) {
+                try {
+                    channel.writeAll(message);
+                } catch (IOException ignored) {
+                }
+            }
+        };
+
+        coolSocket.start();
+
+        try {
+            CoolSocket.Session session = coolSocket.getSession();
+            Assert.assertNotNull(session);
+            Assert.assertEquals("There should be a listener for each address.", 2, session.getListeners().size());
+
+            CoolSocket.Session.Listener secondary = session.getListeners().get(1);
+            SocketAddress secondaryAddress = secondary.getLocalSocketAddress();
+            Assert.assertNotNull(secondaryAddress);
+
+            try (Channel channel = Connections.open()) {
+                Assert.assertArrayEquals(message, channel.readAll().getBytes());
+            }
+
+            for (int i = 0; i < 2; i++) {
+                Socket socket = new Socket();
+                socket.connect(secondaryAddress);
+                socket.setSoTimeout(TestConfigFactory.TIMEOUT_READ);
+
+                try (Channel channel = Channel.wrap(socket)) {
+                    Assert.assertArrayEquals(message, channel.readAll().getBytes());
+                }
+            }
+
+            Assert.assertEquals("The primary listener should accept one connection.", 1,
+                    session.getListeners().get(0).getAcceptedCount());
+            Assert.assertEquals("The secondary listener should accept two connections.", 2,
+                    secondary.getAcceptedCount());
+        } finally {
+            coolSocket.stop();
+        }
+    }
+}
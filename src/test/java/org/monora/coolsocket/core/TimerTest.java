@@ -0,0 +1,63 @@
+package org.monora.coolsocket.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.monora.coolsocket.core.server.HashedWheelTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimerTest {
+    @Test(timeout = 10000)
+    public void runsTimeoutsThatAreNotCancelled() throws InterruptedException {
+        final int count = 200000;
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 64);
+        CountDownLatch latch = new CountDownLatch(count / 2);
+        AtomicInteger cancelledRuns = new AtomicInteger();
+        List<HashedWheelTimer.Timeout> cancelList = new ArrayList<>(count / 2);
+
+        try {
+            for (int i = 0; i < count; i++) {
+                // Some of them go around the wheel more than once.
+                long delay = 1000 + i % 1000;
+
+                if (i % 2 == 0)
+                    timer.newTimeout(latch::countDown, delay, TimeUnit.MILLISECONDS);
+                else
+                    cancelList.add(timer.newTimeout(cancelledRuns::incrementAndGet, delay, TimeUnit.MILLISECONDS));
+            }
+
+            for (HashedWheelTimer.Timeout timeout : cancelList)
+                Assert.assertTrue(timeout.cancel());
+
+            latch.await();
+
+            Assert.assertEquals("Cancelled timeouts should not run.", 0, cancelledRuns.get());
+
+            while (timer.getPendingTimeoutCount() > 0) {
+                Thread.sleep(10);
+            }
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void doesNotRunEarly() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8);
+        CountDownLatch latch = new CountDownLatch(1);
+        long startTime = System.nanoTime();
+
+        try {
+            timer.newTimeout(latch::countDown, 300, TimeUnit.MILLISECONDS);
+            latch.await();
+            Assert.assertTrue("The timeout should not run before its delay.",
+                    System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(300));
+        } finally {
+            timer.stop();
+        }
+    }
+}